@@ -0,0 +1,51 @@
+package pacman.bench;
+
+import pacman.model.*;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures whole game updates, with Pac-Man steered by a seeded random player,
+  * on each map.  A new game is started whenever the last one ends.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameModelBenchmark {
+	@Param({"level1", "level2", "level3", "level4"})
+	public String map;
+
+	private Simulation mySimulation;
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() throws IOException {
+		mySimulation = new Simulation();
+		mySimulation.addLevel(new ByteArrayInputStream(LevelData.read(map)));
+		mySimulation.setPlayer(new RandomPlayer(new Random(391)));
+		mySimulation.startGame();
+	}
+
+	/** One call of GameModel.update(). */
+	@Benchmark
+	public void update() {
+		if (mySimulation.isGameOver()  ||  !mySimulation.getModel().isInProgress())
+			mySimulation.startGame();
+		mySimulation.step();
+	}
+}
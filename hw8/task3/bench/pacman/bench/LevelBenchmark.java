@@ -0,0 +1,126 @@
+package pacman.bench;
+
+import pacman.model.*;
+import pacman.sprite.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the Level operations made for every sprite on every update (move
+  * checks and dot eating), and those made when a level starts (parsing and
+  * regenerating).
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+	@Param({"level1", "level2", "level3", "level4"})
+	public String map;
+
+	private byte[] myData;
+	private Level myLevel;
+	private int[] mySquares;
+	private int myNext = 0;
+	private PacMan myPacMan;
+	private Ghost myGhost;
+	private GameModel myModel;
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() throws IOException {
+		myData = LevelData.read(map);
+		myLevel = LevelData.load(myData);
+		mySquares = LevelData.openSquares(myLevel);
+		myPacMan = new PacMan(0, 0);
+		myGhost = Ghost.createBlinky(0, 0);
+		myModel = new GameModel();
+	}
+
+	/** A copy of the benchmark's level whose dots are all put back before every call,
+	  * so that each call finds a dot on any square that starts with one.
+	  */
+	@State(Scope.Thread)
+	public static class FreshLevel {
+		private Level myLevel;
+
+		@Setup(org.openjdk.jmh.annotations.Level.Trial)
+		public void setUp(LevelBenchmark bench) {
+			myLevel = LevelData.load(bench.myData);
+		}
+
+		/** Puts back the dot the last call ate; this is not timed. */
+		@Setup(org.openjdk.jmh.annotations.Level.Invocation)
+		public void restoreDots() {
+			myLevel.regenerate();
+		}
+	}
+
+	/** Moves the given sprite to the next open square, a pixel or two off the grid. */
+	private MovingSprite place(MovingSprite spr) {
+		myNext = (myNext + 2) % mySquares.length;
+		spr.setPosition(mySquares[myNext] + (myNext & 3), mySquares[myNext + 1]);
+		return spr;
+	}
+
+	/** Level.canMove for Pac-Man in all four directions. */
+	@Benchmark
+	public void canMovePacMan(Blackhole bh) {
+		MovingSprite pac = place(myPacMan);
+		bh.consume(myLevel.canMoveLeft(pac));
+		bh.consume(myLevel.canMoveRight(pac));
+		bh.consume(myLevel.canMoveUp(pac));
+		bh.consume(myLevel.canMoveDown(pac));
+	}
+
+	/** Level.canMove for a ghost in all four directions. */
+	@Benchmark
+	public void canMoveGhost(Blackhole bh) {
+		MovingSprite gh = place(myGhost);
+		bh.consume(myLevel.canMoveLeft(gh));
+		bh.consume(myLevel.canMoveRight(gh));
+		bh.consume(myLevel.canMoveUp(gh));
+		bh.consume(myLevel.canMoveDown(gh));
+	}
+
+	/** Level.collidesWithWall for Pac-Man where he stands. */
+	@Benchmark
+	public boolean collidesWithWall() {
+		return myLevel.collidesWithWall(place(myPacMan));
+	}
+
+	/** Level.checkDotsEaten for Pac-Man on an open square, with every dot of the
+	  * level still uneaten.
+	  */
+	@Benchmark
+	public void checkDotsEaten(FreshLevel fresh) {
+		fresh.myLevel.checkDotsEaten(myModel, (PacMan)place(myPacMan));
+	}
+
+	/** Level.regenerate, as done when a level starts. */
+	@Benchmark
+	public Level regenerate() {
+		myLevel.regenerate();
+		return myLevel;
+	}
+
+	/** Level.generateLevel parsing of the map's text. */
+	@Benchmark
+	public Level generateLevel() {
+		return Level.generateLevel(new ByteArrayInputStream(myData));
+	}
+}
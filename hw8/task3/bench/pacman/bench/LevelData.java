@@ -0,0 +1,79 @@
+package pacman.bench;
+
+import pacman.model.*;
+
+import java.io.*;
+import java.util.*;
+
+/** Level files shared by the benchmarks, read from disk once per fork so that
+  * no benchmark measures file I/O.
+  */
+final class LevelData {
+	private LevelData() {}
+
+	/** Returns the bytes of the given map in the levels directory. */
+	static byte[] read(String map) throws IOException {
+		InputStream in = new FileInputStream("levels/" + map + ".map");
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+				out.write(buffer, 0, count);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns a fully built level parsed from the given bytes. */
+	static Level load(byte[] data) {
+		Level level = Level.generateLevel(new ByteArrayInputStream(data));
+		level.regenerate();
+		return level;
+	}
+
+	/** Returns the pixel positions {x, y, x, y, ...} of every square in the given
+	  * level that is neither a wall nor a gate.
+	  */
+	static int[] openSquares(Level level) {
+		return openSquares(level, false);
+	}
+
+	/** Returns the pixel positions {x, y, x, y, ...} of every square in the given
+	  * level that is neither a wall nor a gate; if asked, only those a normal ghost
+	  * can get to from the maze's largest open area (not the cage, say).
+	  */
+	static int[] openSquares(Level level, boolean connectedOnly) {
+		DistanceTable table = level.getDistanceTable(true);
+		int bestX = 0, bestY = 0, bestCount = -1;
+		if (connectedOnly)
+			for (int x = 0;  x < level.getGridWidth();  x++)
+			for (int y = 0;  y < level.getGridHeight();  y++) {
+				int count = 0;
+				for (int x2 = 0;  x2 < level.getGridWidth();  x2++)
+				for (int y2 = 0;  y2 < level.getGridHeight();  y2++)
+					if (table.getDistance(x, y, x2, y2) != DistanceTable.UNREACHABLE)
+						count++;
+				if (count > bestCount) {
+					bestCount = count;
+					bestX = x;
+					bestY = y;
+				}
+			}
+
+		List<Integer> squares = new ArrayList<Integer>();
+		for (int x = 0;  x < level.getGridWidth();  x++)
+		for (int y = 0;  y < level.getGridHeight();  y++)
+			if (!level.isObstacle(x, y)
+					&&  (!connectedOnly  ||  table.getDistance(bestX, bestY, x, y) != DistanceTable.UNREACHABLE)) {
+				squares.add(x * Level.GRID_SIZE);
+				squares.add(y * Level.GRID_SIZE);
+			}
+
+		int[] result = new int[squares.size()];
+		for (int i = 0;  i < result.length;  i++)
+			result[i] = squares.get(i);
+		return result;
+	}
+}
@@ -0,0 +1,33 @@
+package pacman.bench;
+
+import pacman.model.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the Move flyweight lookups made whenever sprites move. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+	private int myDx = 0;
+
+	/** Move.newMove over the speeds sprites actually use. */
+	@Benchmark
+	public Move newMove() {
+		myDx = (myDx + 1) & 7;
+		return Move.newMove(myDx - 4, 0);
+	}
+
+	/** Move.times, as used to turn a direction into a move at a sprite's speed. */
+	@Benchmark
+	public void times(Blackhole bh) {
+		bh.consume(Move.LEFT.times(2));
+		bh.consume(Move.UP.times(4));
+	}
+}
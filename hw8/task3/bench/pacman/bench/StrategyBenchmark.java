@@ -0,0 +1,78 @@
+package pacman.bench;
+
+import pacman.model.*;
+import pacman.sprite.*;
+import pacman.strategy.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures how long ghosts take to decide where to go, between pairs of
+  * squares in each map's maze.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrategyBenchmark {
+	@Param({"level1", "level2", "level3", "level4"})
+	public String map;
+
+	private Level myLevel;
+	private int[] mySquares;
+	private int myNext = 0;
+	private Ghost myGhost;
+	private PacMan myTarget;
+	private SmartStrategy myStrategy;
+	private PathSearch mySearch;
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() throws IOException {
+		myLevel = LevelData.load(LevelData.read(map));
+		mySquares = LevelData.openSquares(myLevel, true);
+		myGhost = Ghost.createBlinky(0, 0);
+		myTarget = new PacMan(0, 0);
+		myStrategy = new SmartStrategy(myGhost);
+		mySearch = new AStarSearch();
+	}
+
+	/** Puts the ghost and its target on the next pair of open squares. */
+	private void placeBoth() {
+		myNext = (myNext + 2) % mySquares.length;
+		myGhost.setPosition(mySquares[myNext], mySquares[myNext + 1]);
+		int other = (myNext * 7 + 2) % mySquares.length & ~1;
+		myTarget.setPosition(mySquares[other], mySquares[other + 1]);
+	}
+
+	/** SmartStrategy.getMove when the ghost has no moves planned, so it has to
+	  * decide on a new square.
+	  */
+	@Benchmark
+	public Move smartGetMove() {
+		placeBoth();
+		myStrategy.notifyOfPacManDeath();  // forget any planned moves
+		return myStrategy.getMove(myLevel, myTarget);
+	}
+
+	/** A full A* search, as made when the distance table cannot help. */
+	@Benchmark
+	public int aStarSearch() {
+		placeBoth();
+		return mySearch.findPath(myLevel, myGhost.getGridX(), myGhost.getGridY(),
+			myTarget.getGridX(), myTarget.getGridY(), Move.NEUTRAL);
+	}
+}
@@ -0,0 +1,278 @@
+package pacman;
+
+import pacman.model.*;
+import pacman.sprite.*;
+import pacman.strategy.Strategy;
+
+import java.io.*;
+import java.util.*;
+
+/** Plays back every demo and replay in a directory headlessly and checks that each
+  * one plays the same way every time, by comparing the model's state hash (see
+  * GameModel.getStateHash) tick by tick.
+  *
+  * <p>Usage: java pacman.DesyncChecker [-write] [directory]
+  *     <br>or: java pacman.DesyncChecker -games n [-seed seed] [-budget squares] [level files]
+  *
+  * <p>Each .dem or .rpl file in the directory (demos/ by default) is played in two
+  * separate models side by side; the first tick at which their hashes differ is
+  * reported.  If a hash file (the demo's name plus .hsh) sits next to the demo, the
+  * hashes are also checked against the ones in it, which catches changes to the
+  * game that make old demos play differently.  With -write, the hash files are
+  * written (or rewritten) from this run instead.  The exit status is 1 if any demo
+  * diverged.
+  *
+  * <p>The hash files are written from playing the demo back, not while it was being
+  * recorded: a demo plays back in game-over mode, with no score kept, so its state
+  * never quite matches the game that was recorded.
+  *
+  * <p>With -games, it instead plays that many seeded games with a random player,
+  * each in two models side by side, and every second puts the second model
+  * through a keyframe (see GameModel.createKeyframe) and back; any state that a
+  * keyframe loses shows up as the two games' hashes coming apart.  A small
+  * -budget makes the ghosts' searches get cut short and carried on over later
+  * moves, so that keyframes are taken in the middle of them; that only happens on
+  * levels too large for distance tables, which can be given in place of the
+  * standard ones.  The first model also records its game (see
+  * GameModel.startRecordingGame), and once the game is over the recording is
+  * played back in a third model, which must end up with the same final hash.
+  */
+public class DesyncChecker {
+	private static final String[] LEVELS = {"levels/level1.map", "levels/level2.map", "levels/level3.map", "levels/level4.map"};
+	private static final long MAX_TICKS = 60L * 60 * GameModel.UPDATES_PER_SECOND;
+	private static final int ROUND_TRIP_INTERVAL = GameModel.UPDATES_PER_SECOND;
+
+	/** The first int of every hash file. */
+	public static final int HASH_MAGIC = 0x504D4853;  // "PMHS"
+
+	public static void main(String[] args) throws IOException {
+		// make sure nobody tries to open a display
+		System.setProperty("java.awt.headless", "true");
+
+		boolean write = false;
+		String dirName = "demos";
+		int numGames = 0;
+		long seed = 1;
+		int budget = Strategy.DEFAULT_WORK_BUDGET;
+		List<String> levels = new ArrayList<String>();
+		for (int i = 0;  i < args.length;  i++) {
+			if (args[i].equals("-write"))
+				write = true;
+			else if (args[i].equals("-games")  &&  i + 1 < args.length)
+				numGames = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seed")  &&  i + 1 < args.length)
+				seed = Long.parseLong(args[++i]);
+			else if (args[i].equals("-budget")  &&  i + 1 < args.length)
+				budget = Integer.parseInt(args[++i]);
+			else {
+				dirName = args[i];
+				levels.add(args[i]);
+			}
+		}
+
+		if (numGames > 0) {
+			String[] levelNames = levels.isEmpty()  ?  LEVELS  :  levels.toArray(new String[levels.size()]);
+			boolean allGood = true;
+			for (int game = 0;  game < numGames;  game++)
+				allGood &= checkGame(levelNames, seed + game, budget);
+			if (!allGood)
+				System.exit(1);
+			return;
+		}
+
+		File[] files = new File(dirName).listFiles();
+		if (files == null) {
+			System.err.println("usage: java pacman.DesyncChecker [-write] [directory]");
+			System.exit(1);
+		}
+		Arrays.sort(files);
+
+		boolean allGood = true;
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(".dem")  ||  name.endsWith(".rpl"))
+				allGood &= check(file, new File(file.getPath() + ".hsh"), write);
+		}
+		if (!allGood)
+			System.exit(1);
+	}
+
+	/** Plays the given demo in two models, checking their hashes against each other
+	  * and against the given hash file, or writing it.
+	  * @return true if the demo played the same way every time.
+	  */
+	public static boolean check(File demo, File hashFile, boolean write) throws IOException {
+		byte[] data = readFile(demo);
+		GameModel first = createModel(data);
+		GameModel second = createModel(data);
+		long[] expected = (!write  &&  hashFile.exists())  ?  readHashes(hashFile)  :  null;
+
+		long start = System.nanoTime();
+		List<Long> hashes = new ArrayList<Long>();
+		String problem = null;
+		while (isPlaying(first)  &&  hashes.size() < MAX_TICKS) {
+			first.update();
+			second.update();
+			long hash = first.getStateHash();
+			int tick = hashes.size() + 1;
+			hashes.add(hash);
+			if (hash != second.getStateHash()  ||  isPlaying(first) != isPlaying(second)) {
+				problem = "second playback diverges at tick " + tick;
+				break;
+			} else if (expected != null  &&  (tick > expected.length  ||  hash != expected[tick - 1])) {
+				problem = "diverges from " + hashFile.getName() + " at tick " + tick;
+				break;
+			}
+		}
+		if (problem == null  &&  expected != null  &&  hashes.size() != expected.length)
+			problem = "ends at tick " + hashes.size() + " instead of " + expected.length + " as in " + hashFile.getName();
+		long elapsed = System.nanoTime() - start;
+
+		if (problem == null  &&  write)
+			writeHashes(hashFile, hashes);
+
+		System.out.println(demo + ": " + hashes.size() + " ticks in " + (elapsed / 1000000) + " ms, hash "
+			+ Long.toHexString(hashes.isEmpty()  ?  0  :  hashes.get(hashes.size() - 1)) + ": "
+			+ ((problem != null)  ?  problem  :  write  ?  "wrote " + hashFile.getName()  :  "ok"));
+		return problem == null;
+	}
+
+	/** Returns true if the given model is still playing back a demo or game replay. */
+	private static boolean isPlaying(GameModel model) {
+		return model.isPlayingDemo()  ||  model.isReplayingGame();
+	}
+
+	/** Returns a new model with the standard levels that has started playing the given demo. */
+	private static GameModel createModel(byte[] demo) {
+		GameModel model = new GameModel();
+		addLevels(model, LEVELS);
+		model.playDemo(new ByteArrayInputStream(demo));
+		return model;
+	}
+
+	/** Adds the levels in the given files to the given model. */
+	private static void addLevels(GameModel model, String[] levels) {
+		for (int i = 0;  i < levels.length;  i++) {
+			try {
+				model.addLevel(new FileInputStream(levels[i]), GameModel.Type.PACMAN);
+			} catch (IOException ioe) {
+				throw new RuntimeException("can't read level " + levels[i] + ": " + ioe);
+			}
+		}
+	}
+
+	/** Plays a game with the given seed on the given levels in two models, the second
+	  * of which goes through a keyframe every second, checking that their hashes stay
+	  * the same.
+	  * @return true if the two games played the same way.
+	  */
+	public static boolean checkGame(String[] levels, long seed, int budget) throws IOException {
+		Simulation[] sims = new Simulation[2];
+		for (int i = 0;  i < sims.length;  i++) {
+			sims[i] = new Simulation();
+			addLevels(sims[i].getModel(), levels);
+			sims[i].getModel().setSeed(seed);
+			sims[i].setPlayer(new RandomPlayer(new Random(seed)));
+			sims[i].startGame();
+		}
+		GameModel first = sims[0].getModel();
+		GameModel second = sims[1].getModel();
+		ByteArrayOutputStream recording = new ByteArrayOutputStream();
+		first.startRecordingGame(recording);
+
+		long start = System.nanoTime();
+		long tick = 0;
+		String problem = null;
+		while (first.isInProgress()  &&  tick < MAX_TICKS) {
+			for (int i = 0;  i < sims.length;  i++) {
+				setWorkBudget(sims[i].getModel(), budget);
+				sims[i].step();
+			}
+			tick++;
+			if (tick % ROUND_TRIP_INTERVAL == 0)
+				second.restoreKeyframe(second.createKeyframe(tick));
+
+			if (first.getStateHash() != second.getStateHash()  ||  first.isInProgress() != second.isInProgress()) {
+				problem = "game restored from keyframes diverges at tick " + tick;
+				break;
+			}
+		}
+		first.waitForRecordings();
+		if (problem == null  &&  !first.isInProgress())
+			problem = checkReplay(levels, recording.toByteArray(), budget, first.getStateHash());
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println("game with seed " + seed + ": " + tick + " ticks in " + (elapsed / 1000000) + " ms, score "
+			+ sims[0].getScore() + ", hash " + Long.toHexString(first.getStateHash()) + ": "
+			+ ((problem != null)  ?  problem  :  "ok"));
+		return problem == null;
+	}
+
+	/** Plays back the given game replay, and returns what went wrong if it doesn't end
+	  * with the given hash, or null if it does.
+	  */
+	private static String checkReplay(String[] levels, byte[] replay, int budget, long hash) throws IOException {
+		Simulation sim = new Simulation();
+		addLevels(sim.getModel(), levels);
+		GameModel model = sim.getModel();
+		model.replayGame(new ReplayReader(new ByteArrayInputStream(replay)));
+		while (model.isReplayingGame()) {
+			setWorkBudget(model, budget);
+			sim.step();
+		}
+		if (model.getStateHash() != hash)
+			return "recorded game replays to hash " + Long.toHexString(model.getStateHash()) + " after " + sim.getNumTicks() + " ticks";
+		return null;
+	}
+
+	/** Sets the work budget of the strategy each ghost in the given model is using. */
+	private static void setWorkBudget(GameModel model, int budget) {
+		for (MovingSprite mspr : model.getMovingSprites()) {
+			if (mspr.type == Sprite.GHOST  &&  ((Ghost)mspr).getStrategy() != null)
+				((Ghost)mspr).getStrategy().setWorkBudget(budget);
+		}
+	}
+
+	/** Returns the hashes in the given hash file. */
+	private static long[] readHashes(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != HASH_MAGIC)
+				throw new IOException(file + " is not a hash file");
+			long[] hashes = new long[in.readInt()];
+			for (int i = 0;  i < hashes.length;  i++)
+				hashes[i] = in.readLong();
+			return hashes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Writes the given hashes to the given hash file. */
+	private static void writeHashes(File file, List<Long> hashes) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(HASH_MAGIC);
+			out.writeInt(hashes.size());
+			for (long hash : hashes)
+				out.writeLong(hash);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** Returns the contents of the given file. */
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+				out.write(buffer, 0, count);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package pacman;
+
+import pacman.model.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Plays many independent headless games at once, one per thread in a pool
+  * sized to the number of processors, and adds up how they went.
+  *
+  * <p>Usage: java pacman.GameRunner [numGames [numThreads [maxTicksPerGame [seed]]]]
+  *
+  * <p>Every game gets its own Simulation and GameModel, built from level
+  * templates that are read from disk and compiled only once.  Nothing in the model, sprite or strategy
+  * packages keeps mutable static state, so games never see one another and
+  * throughput should grow with the number of cores.  Each game has its own
+  * random number generator too; given a seed, game number i is played with seed
+  * + i, so the same games come out every time.  Subclasses can override
+  * createPlayer() to score their own bots.
+  */
+public class GameRunner {
+	private static final String[] LEVELS = {"levels/level1.map", "levels/level2.map", "levels/level3.map", "levels/level4.map"};
+	private static final long DEFAULT_MAX_TICKS = 60L * 60 * GameModel.UPDATES_PER_SECOND;
+
+	private List<LevelTemplate> myLevels = new ArrayList<LevelTemplate>();
+	private int myNumThreads;
+	private long myMaxTicks = DEFAULT_MAX_TICKS;
+	private Long mySeed = null;
+
+	// totals over all finished games
+	private int myNumGames = 0;
+	private long myTotalScore = 0;
+	private int myMaxScore = 0;
+	private long myTotalDeaths = 0;
+	private long myTotalLevelsCleared = 0;
+	private long myTotalTicks = 0;
+	private long myWallTime = 0;  // in ns
+
+	/** Constructs a new game runner that uses one thread per processor. */
+	public GameRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Constructs a new game runner that uses the given number of threads. */
+	public GameRunner(int numThreads) {
+		myNumThreads = Math.max(1, numThreads);
+	}
+
+	/** Adds the level in the given file to every game played by this runner. */
+	public void addLevel(String filename) throws IOException {
+		InputStream in = new FileInputStream(filename);
+		try {
+			myLevels.add(LevelTemplate.compile(in, GameModel.Type.PACMAN));
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Sets the most updates any one game may last before it is cut off. */
+	public void setMaxTicks(long maxTicks) {
+		myMaxTicks = maxTicks;
+	}
+
+	/** Sets the seed of the first game played; each game after it gets the next seed. */
+	public void setSeed(long seed) {
+		mySeed = seed;
+	}
+
+	/** Returns the seed of the given game (numbered from 0), or a new one each time
+	  * if no seed was set.
+	  */
+	protected long getSeed(int game) {
+		return (mySeed != null)  ?  mySeed + game  :  GameRandom.newSeed();
+	}
+
+	/** Returns the player who will steer Pac-Man in the given game (numbered from 0)
+	  * with the given seed.  By default this is a player that wanders randomly.
+	  */
+	protected Player createPlayer(int game, long seed) {
+		return new RandomPlayer(new Random(seed));
+	}
+
+	/** Builds a new simulation with its own copy of every level. */
+	protected Simulation createSimulation() {
+		Simulation sim = new Simulation();
+		for (LevelTemplate template : myLevels)
+			sim.addLevel(template);
+		return sim;
+	}
+
+	/** Plays the given number of games, spread across this runner's threads, and
+	  * adds their results to this runner's totals.
+	  */
+	public void runGames(int numGames) throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(myNumThreads);
+		try {
+			List<Future<Simulation>> results = new ArrayList<Future<Simulation>>();
+			long start = System.nanoTime();
+			for (int i = 0;  i < numGames;  i++) {
+				final int game = i;
+				results.add(pool.submit(new Callable<Simulation>() {
+					public Simulation call() {
+						long seed = getSeed(game);
+						Simulation sim = createSimulation();
+						sim.getModel().setSeed(seed);
+						sim.setPlayer(createPlayer(game, seed));
+						sim.startGame();
+						sim.runGame(myMaxTicks);
+						return sim;
+					}
+				}));
+			}
+
+			for (Future<Simulation> result : results)
+				addResult(result.get());
+			myWallTime += System.nanoTime() - start;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Adds the given finished game's results to this runner's totals. */
+	private void addResult(Simulation sim) {
+		int score = sim.getScore();
+		myNumGames++;
+		myTotalScore += score;
+		myMaxScore = Math.max(myMaxScore, score);
+		myTotalDeaths += sim.getNumDeaths();
+		myTotalLevelsCleared += sim.getNumLevelsCleared();
+		myTotalTicks += sim.getNumTicks();
+	}
+
+	/** Returns the number of games this runner has finished. */
+	public int getNumGames() {
+		return myNumGames;
+	}
+
+	/** Returns the sum of the scores of all finished games. */
+	public long getTotalScore() {
+		return myTotalScore;
+	}
+
+	/** Returns the best score of any finished game. */
+	public int getMaxScore() {
+		return myMaxScore;
+	}
+
+	/** Returns the total number of times Pac-Man died over all finished games. */
+	public long getTotalDeaths() {
+		return myTotalDeaths;
+	}
+
+	/** Returns the total number of levels cleared over all finished games. */
+	public long getTotalLevelsCleared() {
+		return myTotalLevelsCleared;
+	}
+
+	/** Returns the total number of model updates made over all finished games. */
+	public long getTotalTicks() {
+		return myTotalTicks;
+	}
+
+	/** Returns how many model updates were made per second of wall clock time, over all threads. */
+	public double getTicksPerSecond() {
+		return (myWallTime == 0)  ?  0.0  :  myTotalTicks * 1e9 / myWallTime;
+	}
+
+	/** Returns a string representation of this runner's totals. */
+	public String toString() {
+		double games = Math.max(1, myNumGames);
+		return myNumGames + " games on " + myNumThreads + " threads: " + myTotalTicks + " ticks in "
+			+ (myWallTime / 1000000) + " ms (" + (long)getTicksPerSecond() + " ticks/sec)\n"
+			+ "score: mean=" + (long)(myTotalScore / games) + ", max=" + myMaxScore
+			+ "; deaths: mean=" + (myTotalDeaths / games)
+			+ "; levels cleared: total=" + myTotalLevelsCleared;
+	}
+
+	public static void main(String[] args) throws Exception {
+		// make sure nobody tries to open a display
+		System.setProperty("java.awt.headless", "true");
+
+		int numGames   = (args.length > 0)  ?  Integer.parseInt(args[0])  :  Runtime.getRuntime().availableProcessors();
+		int numThreads = (args.length > 1)  ?  Integer.parseInt(args[1])  :  Runtime.getRuntime().availableProcessors();
+
+		GameRunner runner = new GameRunner(numThreads);
+		if (args.length > 2)
+			runner.setMaxTicks(Long.parseLong(args[2]));
+		if (args.length > 3)
+			runner.setSeed(Long.parseLong(args[3]));
+		for (int i = 0;  i < LEVELS.length;  i++)
+			runner.addLevel(LEVELS[i]);
+
+		runner.runGames(numGames);
+		System.out.println(runner);
+	}
+}
@@ -0,0 +1,117 @@
+package pacman;
+
+import pacman.model.*;
+
+import java.io.*;
+import java.util.Random;
+
+/** Runs games with no window, sound or keyboard, as fast as possible, and
+  * reports how many model updates per second were achieved.
+  *
+  * <p>Usage: java pacman.HeadlessMain [numGames [maxTicksPerGame]] [-demo file [-seek m:ss]] [-seed n] [-metrics] [-record dir]
+  *
+  * <p>With no demo file, Pac-Man wanders around the maze picking a new random
+  * direction every so often until he runs out of lives.  Each game's seed is
+  * printed with its results; with -seed, the games use the given seed and the
+  * ones after it, for both the ghosts and the wandering Pac-Man, so any game can
+  * be played again exactly by giving its seed.  With -metrics, the
+  * model's per-phase update timings are printed after each game.  The demo
+  * file may be a text demo or a binary replay (see ReplayConverter).  With
+  * -record, every game played is recorded as a game replay into the given directory;
+  * given as the demo file, a game replay plays the game over again, to the same
+  * score.  With -seek, the demo is not played through; instead it is played up to
+  * the given time with a ReplaySeeker, which then seeks back to the start and forward
+  * to the time again, and how long each seek took is printed, along with the score,
+  * lives and level reached.
+  */
+public class HeadlessMain {
+	private static final String[] LEVELS = {"levels/level1.map", "levels/level2.map", "levels/level3.map", "levels/level4.map"};
+	private static final long DEFAULT_MAX_TICKS = 60L * 60 * GameModel.UPDATES_PER_SECOND;
+
+	public static void main(String[] args) throws IOException {
+		// make sure nobody tries to open a display
+		System.setProperty("java.awt.headless", "true");
+
+		int numGames = 1;
+		long maxTicks = DEFAULT_MAX_TICKS;
+		String demoFile = null;
+		boolean metrics = false;
+		String recordingDirectory = null;
+		long seekTick = -1;
+		Long seed = null;
+		int numbers = 0;
+		for (int i = 0;  i < args.length;  i++) {
+			if (args[i].equals("-demo")  &&  i + 1 < args.length)
+				demoFile = args[++i];
+			else if (args[i].equals("-metrics"))
+				metrics = true;
+			else if (args[i].equals("-record")  &&  i + 1 < args.length)
+				recordingDirectory = args[++i];
+			else if (args[i].equals("-seek")  &&  i + 1 < args.length)
+				seekTick = parseTime(args[++i]);
+			else if (args[i].equals("-seed")  &&  i + 1 < args.length)
+				seed = Long.parseLong(args[++i]);
+			else if (numbers++ == 0)
+				numGames = Integer.parseInt(args[i]);
+			else
+				maxTicks = Long.parseLong(args[i]);
+		}
+
+		Simulation sim = new Simulation();
+		for (int i = 0;  i < LEVELS.length;  i++)
+			sim.addLevel(new FileInputStream(LEVELS[i]));
+		sim.getModel().getMetrics().setEnabled(metrics);
+		if (recordingDirectory != null)
+			sim.getModel().setRecordingDirectory(new File(recordingDirectory));
+
+		if (demoFile != null  &&  seekTick >= 0) {
+			seek(sim.getModel(), demoFile, seekTick);
+			return;
+		}
+
+		for (int game = 1;  game <= numGames;  game++) {
+			if (demoFile != null) {
+				sim.startDemo(new FileInputStream(demoFile));
+				sim.runDemo(maxTicks);
+			} else {
+				long gameSeed = (seed != null)  ?  seed + game - 1  :  GameRandom.newSeed();
+				sim.getModel().setSeed(gameSeed);
+				sim.setPlayer(new RandomPlayer(new Random(gameSeed)));
+				sim.startGame();
+				sim.runGame(maxTicks);
+			}
+			System.out.println("game " + game + " (seed " + sim.getModel().getSeed() + "): " + sim);
+			if (metrics) {
+				System.out.println("  " + sim.getModel().getMetrics());
+				sim.getModel().getMetrics().reset();
+			}
+		}
+		if (recordingDirectory != null)
+			sim.getModel().waitForRecordings();
+	}
+
+	/** Seeks to the given tick of the given demo file three times over (the first seek
+	  * has to play the demo, the others can use its keyframes) and prints the timings.
+	  */
+	private static void seek(GameModel model, String demoFile, long tick) throws IOException {
+		ReplaySeeker seeker = new ReplaySeeker(model, new FileInputStream(demoFile));
+		long[] ticks = {tick, 0, tick};
+		for (int i = 0;  i < ticks.length;  i++) {
+			long start = System.nanoTime();
+			long reached = seeker.seek(ticks[i]);
+			long elapsed = System.nanoTime() - start;
+			System.out.println("seek to tick " + ticks[i] + ": reached " + reached + " in "
+				+ (elapsed / 1000) + " us; score=" + seeker.getScore() + ", lives=" + seeker.getNumLives()
+				+ ", level=" + seeker.getLevelNumber());
+		}
+		System.out.println(seeker);
+	}
+
+	/** Returns the number of ticks in the given time, written as seconds or m:ss. */
+	private static long parseTime(String time) {
+		int colon = time.indexOf(':');
+		long seconds = (colon < 0)  ?  Long.parseLong(time)
+			:  Long.parseLong(time.substring(0, colon)) * 60 + Long.parseLong(time.substring(colon + 1));
+		return seconds * GameModel.UPDATES_PER_SECOND;
+	}
+}
@@ -8,6 +8,7 @@ import pacman.utility.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.util.concurrent.Executor;
 import javax.swing.*;
 
 
@@ -20,6 +21,13 @@ import javax.swing.*;
 public class PacManPanel extends Panel implements ActionListener, Listener {
     private static final long serialVersionUID = 0;
     
+	/** Runs tasks on the AWT event dispatch thread. */
+	private static final Executor EVENT_QUEUE = new Executor() {
+		public void execute(Runnable task) {
+			EventQueue.invokeLater(task);
+		}
+	};
+
 	private static final String[] myPacLevels = {"levels/level1.map", "levels/level2.map", "levels/level3.map", "levels/level4.map"};
 //	private static final String[] myPacLevels = {"levels/level1.map"};
 	private static final String[] myMrsPacLevels = {"levels/level2.map", "levels/level3.map", "levels/level4.map"};
@@ -94,6 +102,18 @@ public class PacManPanel extends Panel implements ActionListener, Listener {
 		myModel = new GameModel();
 		myModel.addListener(this);
 
+		// -Dpacman.metrics=N prints the model's update timings every N seconds
+		Integer metricsInterval = Integer.getInteger("pacman.metrics");
+		if (metricsInterval != null) {
+			myModel.getMetrics().setEnabled(true);
+			myModel.getMetrics().setDumpInterval(metricsInterval.intValue() * GameModel.UPDATES_PER_SECOND, System.out);
+		}
+
+		// -Dpacman.record=dir records every game played into that directory
+		String recordingDirectory = System.getProperty("pacman.record");
+		if (recordingDirectory != null)
+			myModel.setRecordingDirectory(new File(recordingDirectory));
+
 //		System.out.println("whee!");
 
 		// read in the level map data
@@ -149,7 +169,7 @@ public class PacManPanel extends Panel implements ActionListener, Listener {
 				f.setTitle("Saved Moves");
 				f.addWindowListener(new WindowAdapter() { public void windowClosing(WindowEvent we) {f.dispose();} });
 
-				TextArea area = new TextArea(/*myModel.getSavedMoves()*/);
+				TextArea area = new TextArea(myModel.getSavedMoves());
 				f.add(area);
 				f.setVisible(true);
 			} else if (command == "Insert Coin") {
@@ -327,7 +347,8 @@ public class PacManPanel extends Panel implements ActionListener, Listener {
 		myView.addMouseMotionListener(myMouser);
 		myView.add(myPopupMenu);
 
-		myModel.addListener(myView);
+		// the view plays sounds and repaints on the AWT event thread, not the model's thread
+		myModel.addListener(myView, EVENT_QUEUE);
 
 		// add it to layout
 		add(myView, BorderLayout.CENTER);
@@ -411,11 +432,11 @@ public class PacManPanel extends Panel implements ActionListener, Listener {
 						myModel.setPaused(b_pause);
 						break;
 					case KeyEvent.VK_R:
-//						if (myModel.isRecording())
-//							myModel.stopRecording();
-//						else
-//							myModel.startRecording();
-//						showStatus( (myModel.isRecording()  ?  "Start"  :  "Stopp") + "ing recording");
+						if (myModel.isRecording())
+							myModel.stopRecording();
+						else
+							myModel.startRecording();
+						showStatus( (myModel.isRecording()  ?  "Start"  :  "Stopp") + "ing recording");
 						break;
 					case KeyEvent.VK_S:
 						boolean b_sound = !myModel.wantsSound();
@@ -504,33 +525,46 @@ public class PacManPanel extends Panel implements ActionListener, Listener {
 
 	private class ModelUpdater extends Thread {
 
-		/** Runs the model.  Used to run the game in its own thread. */
+		/** Runs the model.  Used to run the game in its own thread.  Updates are
+		  * scheduled on a fixed time step, so the game keeps its speed no matter how
+		  * long updating and painting take; if the thread falls behind, it runs a few
+		  * extra updates before painting again.
+		  */
 		public void run() {
-			long startTime = System.currentTimeMillis();
+			FrameClock clock = new FrameClock(GameModel.UPDATES_PER_SECOND);
+			clock.start();
+			long startTime = System.nanoTime();
 			int fpsCounter = 0;
 
 			while (myModel.wantsToKeepRunning()) {
-				// time how long it takes to update, so that fps is relatively correct
-				if (myModel.getState() != GameModel.State.PAUSED) {
-					myModel.update();
-					myModel.notifyListeners(null, GameModel.Event.GAME_UPDATED);
-					myView.requestFocus();
+				int ticks = clock.getTicksDue();
+				if (ticks > 0) {
+					if (myModel.getState() != GameModel.State.PAUSED) {
+						// the view hears about all of this frame's events at once
+						myModel.beginBatch();
+						for (int i = 0;  i < ticks;  i++)
+							myModel.update();
+						myModel.setInterpolation(clock.getInterpolation());
+						myModel.notifyListeners(null, GameModel.Event.GAME_UPDATED);
+						myModel.endBatch();
+						myView.requestFocus();
+					}
+
+					fpsCounter++;
 				}
 
-				fpsCounter++;
-
-				long updateTime = System.currentTimeMillis();
+				long updateTime = System.nanoTime();
 
-				if (updateTime - startTime >= 1000) {
+				if (updateTime - startTime >= 1000000000L) {
 					// one second has passed
-					// if (SHOULD_PRINT_FPS)  System.out.println(fpsCounter + " fps");
+					if (GameModel.SHOULD_PRINT_FPS)  System.out.println(fpsCounter + " fps; " + clock);
 					startTime = updateTime;
 					myModel.setFPS(fpsCounter);
 					fpsCounter = 0;
 				}
 
 				try {
-					Thread.sleep(GameModel.REFRESH_DELAY);
+					clock.sleepUntilNextTick();
 				} catch (InterruptedException ie) {}
 			}
 
@@ -0,0 +1,175 @@
+package pacman;
+
+import pacman.model.*;
+import pacman.strategy.*;
+import pacman.utility.Utility;
+
+import java.io.*;
+import java.util.*;
+
+/** Times the path searches used by the smart strategies on every map in the
+  * levels directory, and prints how many searches per second each managed.
+  *
+  * <p>Usage: java pacman.PathBenchmark [levelDir [millisPerRun]]
+  *
+  * <p>Maps are read straight from their text, with or without the header line
+  * ("name columns rows") that the game itself needs, so that the old-style
+  * maps can be measured too.  Every search in a run goes between the same
+  * randomly chosen pairs of open squares.
+  */
+public class PathBenchmark {
+	private static final int NUM_PAIRS = 500;
+	private static final long SEED = 391;
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File((args.length > 0)  ?  args[0]  :  "levels");
+		long millis = (args.length > 1)  ?  Long.parseLong(args[1])  :  1000;
+
+		File[] files = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				return name.endsWith(".map");
+			}
+		});
+		if (files == null)
+			throw new FileNotFoundException(dir.toString());
+		Arrays.sort(files);
+
+		System.out.println("map                    size  open  QueueSearch/s  AStarSearch/s  speedup");
+		for (int i = 0;  i < files.length;  i++) {
+			Level map = readMap(files[i]);
+			int[] pairs = choosePairs(map);
+			if (pairs == null) {
+				System.out.println(files[i].getName() + ": fewer than two open squares; skipped");
+				continue;
+			}
+
+			checkPathLengths(map, pairs);
+			double before = time(new QueueSearch(), map, pairs, millis);
+			double after  = time(new AStarSearch(), map, pairs, millis);
+
+			System.out.println(padStringL(files[i].getName(), 20)
+				+ Utility.padStringR(map.getGridWidth() + "x" + map.getGridHeight(), 7)
+				+ Utility.padStringR("" + countOpen(map), 6)
+				+ Utility.padStringR("" + (long)before, 15)
+				+ Utility.padStringR("" + (long)after, 15)
+				+ Utility.padStringR(((long)(after / before * 10) / 10.0) + "x", 9));
+		}
+	}
+
+	/** Reads the map in the given file into a level. */
+	private static Level readMap(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		List<String> lines = new ArrayList<String>();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+		} finally {
+			reader.close();
+		}
+
+		// skip the header line if there is one
+		if (!lines.isEmpty()) {
+			StringTokenizer st = new StringTokenizer(lines.get(0));
+			if (st.countTokens() == 3) {
+				st.nextToken();
+				try {
+					Integer.parseInt(st.nextToken());
+					Integer.parseInt(st.nextToken());
+					lines.remove(0);
+				} catch (NumberFormatException nfe) {}
+			}
+		}
+		while (!lines.isEmpty()  &&  lines.get(lines.size() - 1).trim().length() == 0)
+			lines.remove(lines.size() - 1);
+
+		// some old maps draw their walls with lower-case x's
+		for (int i = 0;  i < lines.size();  i++)
+			lines.set(i, lines.get(i).replace('x', 'X'));
+
+		return new Level(LevelTemplate.compile(file.getName(), lines, GameModel.Type.PACMAN));
+	}
+
+	/** Returns the number of squares in the given map that are not walls. */
+	private static int countOpen(Level map) {
+		int count = 0;
+		for (int x = 0;  x < map.getGridWidth();  x++)
+		for (int y = 0;  y < map.getGridHeight();  y++)
+			if (!map.isWall(x, y))
+				count++;
+		return count;
+	}
+
+	/** Returns random pairs of open squares as {fromX, fromY, toX, toY, ...}, or null
+	  * if the map has too few open squares.
+	  */
+	private static int[] choosePairs(Level map) {
+		List<int[]> open = new ArrayList<int[]>();
+		for (int x = 0;  x < map.getGridWidth();  x++)
+		for (int y = 0;  y < map.getGridHeight();  y++)
+			if (!map.isWall(x, y))
+				open.add(new int[] {x, y});
+		if (open.size() < 2)
+			return null;
+
+		Random random = new Random(SEED);
+		int[] pairs = new int[4 * NUM_PAIRS];
+		for (int i = 0;  i < pairs.length;  i += 4) {
+			int[] from = open.get(random.nextInt(open.size()));
+			int[] to   = open.get(random.nextInt(open.size()));
+			pairs[i]     = from[0];
+			pairs[i + 1] = from[1];
+			pairs[i + 2] = to[0];
+			pairs[i + 3] = to[1];
+		}
+		return pairs;
+	}
+
+	/** Warns if the new search misses a path that the old one finds, or finds a longer one. */
+	private static void checkPathLengths(Level map, int[] pairs) {
+		PathSearch before = new QueueSearch();
+		PathSearch after = new AStarSearch();
+		int mismatches = 0;
+		for (int i = 0;  i < pairs.length;  i += 4) {
+			int a = before.findPath(map, pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3], Move.NEUTRAL);
+			int b = after.findPath(map, pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3], Move.NEUTRAL);
+			if (a >= 0  &&  (b < 0  ||  b > a))
+				mismatches++;
+		}
+		if (mismatches > 0)
+			System.out.println("warning: AStarSearch missed or lengthened " + mismatches + " paths");
+	}
+
+	/** Runs the given search over all pairs again and again for about the given
+	  * number of milliseconds, after a warm-up, and returns the searches per second.
+	  */
+	private static double time(PathSearch search, Level map, int[] pairs, long millis) {
+		long deadline = System.nanoTime() + millis * 1000000 / 4;
+		while (System.nanoTime() < deadline)
+			runPairs(search, map, pairs);
+
+		long searches = 0;
+		long start = System.nanoTime();
+		long now;
+		deadline = start + millis * 1000000;
+		do {
+			runPairs(search, map, pairs);
+			searches += pairs.length / 4;
+		} while ((now = System.nanoTime()) < deadline);
+
+		return searches * 1e9 / (now - start);
+	}
+
+	/** Searches between every pair once. */
+	private static void runPairs(PathSearch search, Level map, int[] pairs) {
+		for (int i = 0;  i < pairs.length;  i += 4)
+			search.findPath(map, pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3], Move.NEUTRAL);
+	}
+
+	/** Returns a left-justified string of the given length. */
+	private static String padStringL(String s, int n) {
+		while (s.length() < n)
+			s += " ";
+		return s;
+	}
+}
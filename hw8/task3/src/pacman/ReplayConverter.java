@@ -0,0 +1,83 @@
+package pacman;
+
+import pacman.model.*;
+
+import java.io.*;
+import java.util.*;
+
+/** Converts text demo files (like those in demos/) to the binary replay format.
+  *
+  * <p>Usage: java pacman.ReplayConverter file.dem ...
+  *
+  * <p>Each file.dem is written out as file.rpl next to it.  The sprites' runs are
+  * interleaved in the order they start, so that a replay being played back never
+  * has to read far ahead to find the next moves for any sprite.
+  */
+public class ReplayConverter {
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: java pacman.ReplayConverter file.dem ...");
+			System.exit(1);
+		}
+
+		for (int i = 0;  i < args.length;  i++) {
+			String inName = args[i];
+			String outName = (inName.endsWith(".dem")  ?  inName.substring(0, inName.length() - 4)  :  inName) + ".rpl";
+			convert(inName, outName);
+			System.out.println(inName + " (" + new File(inName).length() + " bytes) -> "
+				+ outName + " (" + new File(outName).length() + " bytes)");
+		}
+	}
+
+	/** Reads the text demo in the given file and writes it as a binary replay to the other given file. */
+	public static void convert(String inName, String outName) throws IOException {
+		BufferedReader input = new BufferedReader(new FileReader(inName));
+		String levelName = input.readLine();
+		if (levelName == null)
+			throw new IOException(inName + " is empty");
+
+		// read each sprite's moves, the same way GameModel.readDemo does
+		List<String> names = new ArrayList<String>();
+		List<MoveList> moves = new ArrayList<MoveList>();
+		String line;
+		while ((line = input.readLine()) != null) {
+			line = line.trim();
+			if (line.equals(""))
+				continue;
+			StringTokenizer st = new StringTokenizer(line, "\t:\f\r\n");
+			names.add(st.nextToken());
+			MoveList list = new MoveList();
+			while (st.hasMoreTokens()) {
+				Move mov = Move.parseMove(st.nextToken());
+				list.addMoves(mov, Integer.parseInt(st.nextToken()));
+			}
+			moves.add(list);
+		}
+		input.close();
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outName));
+		ReplayWriter writer = new ReplayWriter(out, levelName, 0, names.toArray(new String[names.size()]));
+
+		// write the runs in the order they start
+		int numSprites = moves.size();
+		int[] nextRun = new int[numSprites];
+		long[] startTick = new long[numSprites];
+		while (true) {
+			int sprite = -1;
+			for (int i = 0;  i < numSprites;  i++) {
+				if (nextRun[i] < moves.get(i).getNumRuns()
+						&&  (sprite < 0  ||  startTick[i] < startTick[sprite]))
+					sprite = i;
+			}
+			if (sprite < 0)
+				break;
+
+			MoveList list = moves.get(sprite);
+			int count = list.getRunCount(nextRun[sprite]);
+			writer.writeRun(sprite, list.getRunMove(nextRun[sprite]), count);
+			startTick[sprite] += count;
+			nextRun[sprite]++;
+		}
+		writer.close();
+	}
+}
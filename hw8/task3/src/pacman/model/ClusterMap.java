@@ -0,0 +1,393 @@
+package pacman.model;
+
+/** A level's grid cut into square clusters, with the ways between neighboring
+  * clusters and the distances across each cluster worked out ahead of time, so
+  * that a path across a very large maze can be planned from cluster to cluster
+  * (see ClusterSearch) rather than square by square.
+  *
+  * <p>Wherever a run of open squares lines up along the border of two clusters,
+  * one square on each side of the run's middle (or of both its ends, if it is
+  * long) becomes an entrance, and the two are joined by a one-step crossing.
+  * Every pair of entrances to a cluster is joined by the length of the shortest
+  * path between them that stays inside the cluster.  The entrances of all the
+  * clusters are numbered together as the nodes of one graph, with those links
+  * and crossings listed by node, so that a search over them can keep its state
+  * in arrays far smaller than the grid.  Only walls block; gates
+  * are passable, as they are to the path searches.  Borders wrap around the
+  * edges of the board like everything else.
+  *
+  * <p>When a wall is put up or knocked down, only the cluster it is in, and the
+  * neighbor it borders if it is on an edge, is worked out again, the next time
+  * the map is asked for.
+  */
+public class ClusterMap {
+	/** The width and height of a cluster, in grid squares. */
+	public static final int CLUSTER_SIZE = 16;
+
+	/** Levels with fewer grid squares than this have no cluster map; a flat search
+	  * over them is quick enough.
+	  */
+	public static final int MIN_SQUARES = 128 * 128;
+
+	/** Runs of open border squares at least this long get an entrance at each end. */
+	private static final int LONG_RUN = 6;
+
+	private static final Move[] DIRECTIONS = {Move.LEFT, Move.UP, Move.DOWN, Move.RIGHT};
+	private static final int MAX_CROSSINGS = 4 * CLUSTER_SIZE;
+
+	private long[] myWalls;          // one bit per grid square, numbered x * height + y
+	private int myGridWidth;
+	private int myGridHeight;
+	private int myClustersAcross;
+	private int myClustersDown;
+
+	// per cluster, numbered cx * myClustersDown + cy
+	private int[][] myEntrances;     // grid squares
+	private int[][] myCrossFrom;     // entrance each crossing leaves from
+	private int[][] myCrossTo;       // grid square each crossing leads to, in the next cluster
+	private int[][] myDistances;     // entrance x entrance, or DistanceTable.UNREACHABLE
+	private boolean[] myIsDirty;
+	private boolean myHasDirtyClusters = true;
+
+	private int[] myEntranceIndex;   // per grid square: index among its cluster's entrances, or -1
+
+	// the entrances of all the clusters numbered together as nodes, cluster by cluster,
+	// with the links across each cluster and the crossings out of it listed by node
+	private int myNumNodes = 0;
+	private int[] myFirstNode;       // per cluster, plus one past the last
+	private int[] myNodeSquares;
+	private int[] myLinkStart;       // per node, plus one past the last
+	private int[] myLinkTo;
+	private int[] myLinkCost;
+	private int[] myCrossingStart;   // per node, plus one past the last
+	private int[] myCrossingTo;
+
+	// scratch space for working out a cluster
+	private int[] myNewEntrances = new int[MAX_CROSSINGS];
+	private int[] myNewCrossFrom = new int[MAX_CROSSINGS];
+	private int[] myNewCrossTo = new int[MAX_CROSSINGS];
+	private int[] myLocalDistances = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+	private int[] myQueue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+
+	/** Constructs a new cluster map of a grid of the given size.  Nothing is worked
+	  * out until update() is called.
+	  * @param walls one bit per grid square, numbered x * height + y, set where
+	  *        there is a wall; markChanged must be called whenever a bit changes.
+	  */
+	ClusterMap(long[] walls, int gridWidth, int gridHeight) {
+		myWalls = walls;
+		myGridWidth = gridWidth;
+		myGridHeight = gridHeight;
+		myClustersAcross = (gridWidth + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		myClustersDown = (gridHeight + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+
+		int numClusters = myClustersAcross * myClustersDown;
+		myEntrances = new int[numClusters][];
+		myCrossFrom = new int[numClusters][];
+		myCrossTo = new int[numClusters][];
+		myDistances = new int[numClusters][];
+		myIsDirty = new boolean[numClusters];
+		myFirstNode = new int[numClusters + 1];
+		java.util.Arrays.fill(myIsDirty, true);
+
+		myEntranceIndex = new int[gridWidth * gridHeight];
+		java.util.Arrays.fill(myEntranceIndex, -1);
+	}
+
+	/** Notes that the wall bit of the given grid square has changed. */
+	void markChanged(int x, int y) {
+		int cx = x / CLUSTER_SIZE;
+		int cy = y / CLUSTER_SIZE;
+		markDirty(cx, cy);
+
+		// squares on a border are entrances to the cluster across it too
+		if (x == getLeft(cx))
+			markDirty(cx - 1, cy);
+		if (x == getLeft(cx) + getWidth(cx) - 1)
+			markDirty(cx + 1, cy);
+		if (y == getTop(cy))
+			markDirty(cx, cy - 1);
+		if (y == getTop(cy) + getHeight(cy) - 1)
+			markDirty(cx, cy + 1);
+	}
+
+	/** Marks the given cluster, wrapping around the board, to be worked out again. */
+	private void markDirty(int cx, int cy) {
+		cx = (cx + myClustersAcross) % myClustersAcross;
+		cy = (cy + myClustersDown) % myClustersDown;
+		myIsDirty[cx * myClustersDown + cy] = true;
+		myHasDirtyClusters = true;
+	}
+
+	/** Works out again every cluster whose walls have changed. */
+	void update() {
+		if (!myHasDirtyClusters)
+			return;
+
+		for (int c = 0;  c < myIsDirty.length;  c++)
+			if (myIsDirty[c]) {
+				build(c);
+				myIsDirty[c] = false;
+			}
+		myHasDirtyClusters = false;
+		numberNodes();
+	}
+
+	/** Numbers the entrances of all the clusters together, and lists the links and
+	  * crossings from each by node number, so that a search over them can keep its
+	  * state in small arrays.
+	  */
+	private void numberNodes() {
+		int numClusters = myEntrances.length;
+		int numLinks = 0, numCrossings = 0;
+		myNumNodes = 0;
+		for (int c = 0;  c < numClusters;  c++) {
+			myFirstNode[c] = myNumNodes;
+			myNumNodes += myEntrances[c].length;
+			numCrossings += myCrossTo[c].length;
+			for (int i = 0;  i < myDistances[c].length;  i++)
+				if (myDistances[c][i] > 0)
+					numLinks++;
+		}
+		myFirstNode[numClusters] = myNumNodes;
+
+		myNodeSquares = new int[myNumNodes];
+		myLinkStart = new int[myNumNodes + 1];
+		myLinkTo = new int[numLinks];
+		myLinkCost = new int[numLinks];
+		myCrossingStart = new int[myNumNodes + 1];
+		myCrossingTo = new int[numCrossings];
+
+		int node = 0, link = 0, crossing = 0;
+		for (int c = 0;  c < numClusters;  c++) {
+			int numEntrances = myEntrances[c].length;
+			for (int i = 0;  i < numEntrances;  i++, node++) {
+				myNodeSquares[node] = myEntrances[c][i];
+
+				myLinkStart[node] = link;
+				for (int j = 0;  j < numEntrances;  j++) {
+					int dist = myDistances[c][i * numEntrances + j];
+					if (dist > 0) {
+						myLinkTo[link] = myFirstNode[c] + j;
+						myLinkCost[link++] = dist;
+					}
+				}
+
+				myCrossingStart[node] = crossing;
+				for (int k = 0;  k < myCrossTo[c].length;  k++)
+					if (myCrossFrom[c][k] == i)
+						myCrossingTo[crossing++] = getNode(myCrossTo[c][k]);
+			}
+		}
+		myLinkStart[myNumNodes] = link;
+		myCrossingStart[myNumNodes] = crossing;
+	}
+
+	/** Returns the number of the cluster the given grid square is in. */
+	public int getClusterOf(int x, int y) {
+		return (x / CLUSTER_SIZE) * myClustersDown + y / CLUSTER_SIZE;
+	}
+
+	/** Returns the x grid coordinate of the left edge of clusters in the given column. */
+	public int getLeft(int cx) {
+		return cx * CLUSTER_SIZE;
+	}
+
+	/** Returns the y grid coordinate of the top edge of clusters in the given row. */
+	public int getTop(int cy) {
+		return cy * CLUSTER_SIZE;
+	}
+
+	/** Returns the width of clusters in the given column; the last may be narrower. */
+	public int getWidth(int cx) {
+		return Math.min(CLUSTER_SIZE, myGridWidth - cx * CLUSTER_SIZE);
+	}
+
+	/** Returns the height of clusters in the given row; the last may be shorter. */
+	public int getHeight(int cy) {
+		return Math.min(CLUSTER_SIZE, myGridHeight - cy * CLUSTER_SIZE);
+	}
+
+	/** Returns the column of clusters the given cluster is in. */
+	public int getColumn(int cluster) {
+		return cluster / myClustersDown;
+	}
+
+	/** Returns the row of clusters the given cluster is in. */
+	public int getRow(int cluster) {
+		return cluster % myClustersDown;
+	}
+
+	/** Returns the number of nodes (entrances to clusters) in this map. */
+	public int getNumNodes() {
+		return myNumNodes;
+	}
+
+	/** Returns the number of the first node of the given cluster; its nodes are
+	  * numbered from there up to the first node of the next cluster.
+	  */
+	public int getFirstNode(int cluster) {
+		return myFirstNode[cluster];
+	}
+
+	/** Returns the grid square, numbered x * height + y, of the given node. */
+	public int getSquare(int node) {
+		return myNodeSquares[node];
+	}
+
+	/** Returns the node at the given grid square, or -1 if it is not an entrance. */
+	public int getNode(int square) {
+		int index = myEntranceIndex[square];
+		return (index < 0)  ?  -1
+			:  myFirstNode[getClusterOf(square / myGridHeight, square % myGridHeight)] + index;
+	}
+
+	/** Returns the first of the given node's links to the other nodes of its cluster
+	  * that can be reached without leaving it; they run up to the next node's first.
+	  */
+	public int getFirstLink(int node) {
+		return myLinkStart[node];
+	}
+
+	/** Returns the node the given link leads to. */
+	public int getLinkTo(int link) {
+		return myLinkTo[link];
+	}
+
+	/** Returns the length of the shortest path inside the cluster along the given link. */
+	public int getLinkCost(int link) {
+		return myLinkCost[link];
+	}
+
+	/** Returns the first of the given node's one-step crossings into a neighboring
+	  * cluster; they run up to the next node's first.
+	  */
+	public int getFirstCrossing(int node) {
+		return myCrossingStart[node];
+	}
+
+	/** Returns the node, in the neighboring cluster, that the given crossing leads to. */
+	public int getCrossingTo(int crossing) {
+		return myCrossingTo[crossing];
+	}
+
+	/** Returns whether there is a wall at the given grid square. */
+	private boolean isWall(int x, int y) {
+		int square = x * myGridHeight + y;
+		return (myWalls[square >> 6] & (1L << (square & 63))) != 0;
+	}
+
+	/** Works out the entrances, crossings and distances of the given cluster. */
+	private void build(int cluster) {
+		int cx = getColumn(cluster), cy = getRow(cluster);
+		int left = getLeft(cx), top = getTop(cy);
+		int width = getWidth(cx), height = getHeight(cy);
+		int right = left + width - 1, bottom = top + height - 1;
+
+		if (myEntrances[cluster] != null)
+			for (int i = 0;  i < myEntrances[cluster].length;  i++)
+				myEntranceIndex[myEntrances[cluster][i]] = -1;
+
+		// find the crossings along each of the four borders
+		int numEntrances = 0, numCrossings = 0;
+		for (int side = 0;  side < 4;  side++) {
+			boolean isVertical = (side < 2);
+			int length = isVertical  ?  height  :  width;
+			int runStart = -1;
+			for (int p = 0;  p <= length;  p++) {
+				boolean open = (p < length)  &&  isBorderOpen(side, left, top, right, bottom, p);
+				if (open  &&  runStart < 0)
+					runStart = p;
+				else if (!open  &&  runStart >= 0) {
+					int[] picks = (p - runStart >= LONG_RUN)
+						?  new int[] {runStart, p - 1}
+						:  new int[] {(runStart + p - 1) / 2};
+					for (int i = 0;  i < picks.length;  i++) {
+						int own = getBorderSquare(side, left, top, right, bottom, picks[i], false);
+						int index = myEntranceIndex[own];
+						if (index < 0) {
+							index = numEntrances;
+							myEntranceIndex[own] = index;
+							myNewEntrances[numEntrances++] = own;
+						}
+						myNewCrossFrom[numCrossings] = index;
+						myNewCrossTo[numCrossings++] = getBorderSquare(side, left, top, right, bottom, picks[i], true);
+					}
+					runStart = -1;
+				}
+			}
+		}
+
+		myEntrances[cluster] = copy(myNewEntrances, numEntrances);
+		myCrossFrom[cluster] = copy(myNewCrossFrom, numCrossings);
+		myCrossTo[cluster] = copy(myNewCrossTo, numCrossings);
+
+		// breadth-first search inside the cluster from each entrance
+		int[] distances = new int[numEntrances * numEntrances];
+		for (int from = 0;  from < numEntrances;  from++) {
+			java.util.Arrays.fill(myLocalDistances, 0, width * height, DistanceTable.UNREACHABLE);
+			int start = myEntrances[cluster][from];
+			int local = (start / myGridHeight - left) * height + start % myGridHeight - top;
+			int head = 0, tail = 0;
+			myQueue[tail++] = local;
+			myLocalDistances[local] = 0;
+
+			while (head < tail) {
+				int curr = myQueue[head++];
+				int x = curr / height, y = curr % height;
+				for (int i = 0;  i < DIRECTIONS.length;  i++) {
+					int nx = x + DIRECTIONS[i].dx, ny = y + DIRECTIONS[i].dy;
+					if (nx < 0  ||  nx >= width  ||  ny < 0  ||  ny >= height
+							||  isWall(left + nx, top + ny))
+						continue;
+					int next = nx * height + ny;
+					if (myLocalDistances[next] == DistanceTable.UNREACHABLE) {
+						myLocalDistances[next] = myLocalDistances[curr] + 1;
+						myQueue[tail++] = next;
+					}
+				}
+			}
+
+			for (int to = 0;  to < numEntrances;  to++) {
+				int square = myEntrances[cluster][to];
+				distances[from * numEntrances + to] =
+					myLocalDistances[(square / myGridHeight - left) * height + square % myGridHeight - top];
+			}
+		}
+		myDistances[cluster] = distances;
+	}
+
+	/** Returns whether the given square along the given border of a cluster, and
+	  * the one across the border from it, are both open.  Sides are numbered
+	  * left, right, top, bottom.
+	  */
+	private boolean isBorderOpen(int side, int left, int top, int right, int bottom, int p) {
+		int own = getBorderSquare(side, left, top, right, bottom, p, false);
+		int across = getBorderSquare(side, left, top, right, bottom, p, true);
+		return !isWall(own / myGridHeight, own % myGridHeight)
+			&&  !isWall(across / myGridHeight, across % myGridHeight);
+	}
+
+	/** Returns the grid square at the given place along the given border of a
+	  * cluster, or the one across the border from it, wrapping around the board.
+	  */
+	private int getBorderSquare(int side, int left, int top, int right, int bottom, int p, boolean across) {
+		int x, y;
+		switch (side) {
+			case 0:   x = across  ?  left - 1    :  left;    y = top + p;  break;
+			case 1:   x = across  ?  right + 1   :  right;   y = top + p;  break;
+			case 2:   y = across  ?  top - 1     :  top;     x = left + p;  break;
+			default:  y = across  ?  bottom + 1  :  bottom;  x = left + p;  break;
+		}
+		x = (x + myGridWidth)  % myGridWidth;
+		y = (y + myGridHeight) % myGridHeight;
+		return x * myGridHeight + y;
+	}
+
+	/** Returns a copy of the first n elements of the given array. */
+	private static int[] copy(int[] array, int n) {
+		int[] result = new int[n];
+		System.arraycopy(array, 0, result, 0, n);
+		return result;
+	}
+}
@@ -4,21 +4,24 @@ import java.io.*;
 
 /** Represents a demo game that can be played back by the game model. */
 public class Demo {
-	private String myBuffer = "";
+	private byte[] myBuffer;
 	private String myName;
 	private Object myType;
 
 	/** Constructs a new demo game with the given name that reads its moves
-	  * from the given input stream.
+	  * from the given input stream, which may hold a text demo or a binary replay.
 	  */
 	public Demo(InputStream is, String name, Object type) {
 		myName = name;
 		myType = type;
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-			while (reader.ready()) {
-				myBuffer += reader.readLine() + "\n";
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int length;
+			while ((length = is.read(chunk)) > 0) {
+				buffer.write(chunk, 0, length);
 			}
+			myBuffer = buffer.toByteArray();
 		} catch (IOException ioe) {
 			throw new RuntimeException("Could not read demo: " + ioe);
 		}
@@ -26,7 +29,7 @@ public class Demo {
 
 	/** Returns a new full input stream from which to read this demo. */
 	public InputStream getStream() {
-		return new ByteArrayInputStream(myBuffer.getBytes());
+		return new ByteArrayInputStream(myBuffer);
 	}
 
 	/** Returns this demo's name. */
@@ -0,0 +1,190 @@
+package pacman.model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A table of the shortest distance, in grid squares, between every pair of
+  * open squares in a level.  Built once by breadth-first search from every
+  * square, it lets a ghost find its next step toward any target with a few
+  * array lookups instead of a path search.
+  *
+  * <p>Distances wrap around the edges of the board the same way sprites do
+  * when they run through a tunnel.  Walls are always closed; gates are closed
+  * too unless the table is built for sprites that may pass them (eaten or
+  * caged ghosts).
+  */
+public class DistanceTable {
+	/** Returned for squares that cannot be reached from one another. */
+	public static final int UNREACHABLE = -1;
+
+	/** Tables are not built for levels with more open squares than this, since
+	  * their size grows with the square of the number of open squares.
+	  */
+	public static final int MAX_OPEN_SQUARES = 2048;
+
+	/** The directions tried, in order, when choosing the next step; ties go to
+	  * the earlier direction, as in the arcade game.
+	  */
+	private static final Move[] DIRECTIONS = {Move.UP, Move.LEFT, Move.DOWN, Move.RIGHT};
+
+	/** Tables already built, keyed by the layout of the walls and gates they were built
+	  * from.  Tables never change once built, so every game playing the same maze can
+	  * share one no matter what thread it runs on.
+	  */
+	private static final int MAX_SHARED_TABLES = 64;
+	private static Map<String, DistanceTable> ourSharedTables = new ConcurrentHashMap<String, DistanceTable>();
+
+	private int myGridWidth;
+	private int myGridHeight;
+	private int[] myIndex;         // open square number of each grid square, or -1
+	private int myNumOpen;
+	private short[] myDistances;   // myNumOpen x myNumOpen
+
+	/** Returns a distance table for the given level, reusing the one built for any other
+	  * level with the same walls and gates if there is one.
+	  * @param gatesBlock whether ghost gates should be treated like walls.
+	  */
+	public static DistanceTable getTable(Level level, boolean gatesBlock) {
+		int w = level.getGridWidth();
+		int h = level.getGridHeight();
+		StringBuilder key = new StringBuilder(w * h + 16);
+		key.append(w).append('x').append(h).append(gatesBlock  ?  'g'  :  'w');
+		for (int x = 0;  x < w;  x++)
+		for (int y = 0;  y < h;  y++)
+			key.append(isOpen(level, x, y, gatesBlock)  ?  ' '  :  'X');
+
+		String layout = key.toString();
+		DistanceTable table = ourSharedTables.get(layout);
+		if (table == null) {
+			table = new DistanceTable(level, gatesBlock);
+			if (ourSharedTables.size() < MAX_SHARED_TABLES)
+				ourSharedTables.put(layout, table);
+		}
+		return table;
+	}
+
+	/** Returns whether the given grid square of the given level lets sprites through. */
+	private static boolean isOpen(Level level, int x, int y, boolean gatesBlock) {
+		return gatesBlock  ?  !level.isObstacle(x, y)  :  !level.isWall(x, y);
+	}
+
+	/** Constructs a new distance table for the given level.
+	  * @param gatesBlock whether ghost gates should be treated like walls.
+	  */
+	public DistanceTable(Level level, boolean gatesBlock) {
+		myGridWidth = level.getGridWidth();
+		myGridHeight = level.getGridHeight();
+		myIndex = new int[myGridWidth * myGridHeight];
+
+		// number the open squares
+		int[] squares = new int[myIndex.length];
+		for (int x = 0;  x < myGridWidth;  x++)
+		for (int y = 0;  y < myGridHeight;  y++) {
+			if (isOpen(level, x, y, gatesBlock)) {
+				squares[myNumOpen] = x * myGridHeight + y;
+				myIndex[x * myGridHeight + y] = myNumOpen++;
+			} else
+				myIndex[x * myGridHeight + y] = -1;
+		}
+
+		if (myNumOpen > MAX_OPEN_SQUARES)
+			throw new IllegalArgumentException("level too large for a distance table: " + myNumOpen + " open squares");
+
+		// find each open square's open neighbors once, rather than on every search
+		int[] neighbors = new int[myNumOpen * DIRECTIONS.length];
+		for (int curr = 0;  curr < myNumOpen;  curr++) {
+			int x = squares[curr] / myGridHeight;
+			int y = squares[curr] % myGridHeight;
+			for (int i = 0;  i < DIRECTIONS.length;  i++)
+				neighbors[curr * DIRECTIONS.length + i] = getOpenSquare(x + DIRECTIONS[i].dx, y + DIRECTIONS[i].dy);
+		}
+
+		// breadth-first search out from every open square
+		myDistances = new short[myNumOpen * myNumOpen];
+		Arrays.fill(myDistances, (short)UNREACHABLE);
+		int[] queue = new int[myNumOpen];
+		for (int from = 0;  from < myNumOpen;  from++) {
+			int row = from * myNumOpen;
+			int head = 0, tail = 0;
+			queue[tail++] = from;
+			myDistances[row + from] = 0;
+
+			while (head < tail) {
+				int curr = queue[head++];
+				short dist = (short)(myDistances[row + curr] + 1);
+
+				for (int i = curr * DIRECTIONS.length;  i < (curr + 1) * DIRECTIONS.length;  i++) {
+					int next = neighbors[i];
+					if (next >= 0  &&  myDistances[row + next] == UNREACHABLE) {
+						myDistances[row + next] = dist;
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+	}
+
+	/** Returns the open square number of the given grid square, wrapping around
+	  * the board's edges, or -1 if it is closed.
+	  */
+	private int getOpenSquare(int gx, int gy) {
+		gx = (gx + myGridWidth)  % myGridWidth;
+		gy = (gy + myGridHeight) % myGridHeight;
+		return myIndex[gx * myGridHeight + gy];
+	}
+
+	/** Returns whether the given grid square is open and on the board. */
+	public boolean isOpen(int gx, int gy) {
+		return 0 <= gx  &&  gx < myGridWidth  &&  0 <= gy  &&  gy < myGridHeight
+			&&  myIndex[gx * myGridHeight + gy] >= 0;
+	}
+
+	/** Returns the number of open squares in this table. */
+	public int getNumOpenSquares() {
+		return myNumOpen;
+	}
+
+	/** Returns the number of squares on the shortest path between the two given
+	  * grid squares, or UNREACHABLE if there is no such path.
+	  */
+	public int getDistance(int fromX, int fromY, int toX, int toY) {
+		if (!isOpen(fromX, fromY)  ||  !isOpen(toX, toY))
+			return UNREACHABLE;
+		return myDistances[myIndex[fromX * myGridHeight + fromY] * myNumOpen + myIndex[toX * myGridHeight + toY]];
+	}
+
+	/** Returns the one-square move (Move.UP, LEFT, DOWN or RIGHT) that starts a
+	  * shortest path from one grid square to another, or Move.NEUTRAL if the
+	  * squares are the same or there is no path.  A move that would reverse
+	  * the given current move is only chosen if it is the only way to go.
+	  */
+	public Move getNextMove(int fromX, int fromY, int toX, int toY, Move current) {
+		if (getDistance(fromX, fromY, toX, toY) <= 0)
+			return Move.NEUTRAL;
+
+		int column = myIndex[toX * myGridHeight + toY];
+		Move best = Move.NEUTRAL;
+		Move reverse = Move.NEUTRAL;
+		int bestDist = Integer.MAX_VALUE;
+		int reverseDist = Integer.MAX_VALUE;
+
+		for (int i = 0;  i < DIRECTIONS.length;  i++) {
+			int next = getOpenSquare(fromX + DIRECTIONS[i].dx, fromY + DIRECTIONS[i].dy);
+			if (next < 0)
+				continue;
+			int dist = myDistances[next * myNumOpen + column];
+			if (dist == UNREACHABLE)
+				continue;
+
+			if (DIRECTIONS[i].isOppositeDirectionTo(current)) {
+				reverse = DIRECTIONS[i];
+				reverseDist = dist;
+			} else if (dist < bestDist) {
+				best = DIRECTIONS[i];
+				bestDist = dist;
+			}
+		}
+
+		return (best == Move.NEUTRAL  &&  reverseDist != Integer.MAX_VALUE)  ?  reverse  :  best;
+	}
+}
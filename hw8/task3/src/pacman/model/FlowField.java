@@ -0,0 +1,164 @@
+package pacman.model;
+
+/** The shortest distance, in grid squares, from the squares of a level to one
+  * target square, found by breadth-first search out from the target.  Every
+  * ghost chasing the same target takes its next step from the one field, so a
+  * level too large for a DistanceTable still costs one search per move of the
+  * target rather than one path search per ghost per square.
+  *
+  * <p>The search is only carried as far as it needs to go: it stops as soon as
+  * the square asked about (and its neighbors) have their distances, and picks
+  * up where it left off when a ghost farther away asks.  Since ghosts are most
+  * often near Pac-Man, a new target usually costs a small patch of the maze
+  * rather than all of it.  Distances are stamped with the target they were
+  * found for, so changing targets does not have to clear the whole field.
+  *
+  * <p>Distances wrap around the edges of the board, and steps are chosen with
+  * the same ties and the same reluctance to reverse as in DistanceTable, so a
+  * ghost goes the same way whichever of the two it is steered by.
+  */
+public class FlowField {
+	/** The directions tried, in order, when choosing the next step. */
+	private static final Move[] DIRECTIONS = {Move.UP, Move.LEFT, Move.DOWN, Move.RIGHT};
+
+	private long[] myClosed;    // one bit per grid square, set where sprites cannot go
+	private int myGridWidth;
+	private int myGridHeight;
+	private int myTarget = -1;  // grid square the distances lead to, or -1 if none yet
+	private int myGeneration = 0;
+	private int[] myStamps;     // generation each square's distance was found in
+	private int[] myDistances;  // valid only where the stamp is the current generation
+	private int[] myQueue;      // squares found but not yet searched out from
+	private int myHead = 0;
+	private int myTail = 0;
+
+	/** Constructs a new flow field, with no target yet, for a level of the given size.
+	  * @param closed one bit per grid square, numbered x * height + y, set where
+	  *        sprites cannot go; it is read as the search goes, so the field must be
+	  *        thrown away if it changes.
+	  */
+	FlowField(long[] closed, int gridWidth, int gridHeight) {
+		myClosed = closed;
+		myGridWidth = gridWidth;
+		myGridHeight = gridHeight;
+		myStamps = new int[gridWidth * gridHeight];
+		myDistances = new int[gridWidth * gridHeight];
+		myQueue = new int[gridWidth * gridHeight];
+	}
+
+	/** Returns whether this field leads to the given grid square. */
+	public boolean isBuiltFor(int targetX, int targetY) {
+		return myTarget >= 0  &&  myTarget == targetX * myGridHeight + targetY;
+	}
+
+	/** Points this field at the given target square, forgetting all distances to
+	  * the old one.  No searching is done until a distance is asked for.
+	  */
+	void setTarget(int targetX, int targetY) {
+		myTarget = targetX * myGridHeight + targetY;
+		myHead = 0;
+		myTail = 0;
+		if (++myGeneration == 0) {
+			// stamps have wrapped all the way around; start them over
+			java.util.Arrays.fill(myStamps, 0);
+			myGeneration = 1;
+		}
+
+		if (!isClosed(myTarget)) {
+			myStamps[myTarget] = myGeneration;
+			myDistances[myTarget] = 0;
+			myQueue[myTail++] = myTarget;
+		}
+	}
+
+	/** Carries the search on until every square at most the given distance from
+	  * the target has been searched out from, or there is nowhere left to go.
+	  * Every square one farther than that then has its distance too.
+	  */
+	private void searchThrough(int distance) {
+		while (myHead < myTail  &&  myDistances[myQueue[myHead]] <= distance) {
+			int curr = myQueue[myHead++];
+			int x = curr / myGridHeight;
+			int y = curr % myGridHeight;
+			int dist = myDistances[curr] + 1;
+
+			for (int i = 0;  i < DIRECTIONS.length;  i++) {
+				int next = getSquare(x + DIRECTIONS[i].dx, y + DIRECTIONS[i].dy);
+				if (myStamps[next] != myGeneration  &&  !isClosed(next)) {
+					myStamps[next] = myGeneration;
+					myDistances[next] = dist;
+					myQueue[myTail++] = next;
+				}
+			}
+		}
+	}
+
+	/** Returns whether sprites cannot go into the given grid square. */
+	private boolean isClosed(int square) {
+		return (myClosed[square >> 6] & (1L << (square & 63))) != 0;
+	}
+
+	/** Returns the number of the given grid square, wrapping around the board's edges. */
+	private int getSquare(int gx, int gy) {
+		gx = (gx + myGridWidth)  % myGridWidth;
+		gy = (gy + myGridHeight) % myGridHeight;
+		return gx * myGridHeight + gy;
+	}
+
+	/** Returns the distance found so far for the given grid square, or UNREACHABLE
+	  * if the search has not got there (yet).
+	  */
+	private int getFoundDistance(int square) {
+		return (myStamps[square] == myGeneration)  ?  myDistances[square]  :  DistanceTable.UNREACHABLE;
+	}
+
+	/** Returns the number of squares on the shortest path from the given grid
+	  * square to this field's target, or UNREACHABLE if there is no such path.
+	  */
+	public int getDistance(int fromX, int fromY) {
+		if (myTarget < 0  ||  fromX < 0  ||  fromX >= myGridWidth  ||  fromY < 0  ||  fromY >= myGridHeight)
+			return DistanceTable.UNREACHABLE;
+
+		int square = fromX * myGridHeight + fromY;
+		if (isClosed(square))
+			return DistanceTable.UNREACHABLE;
+		while (myStamps[square] != myGeneration  &&  myHead < myTail)
+			searchThrough(myDistances[myQueue[myHead]]);
+		return getFoundDistance(square);
+	}
+
+	/** Returns the one-square move (Move.UP, LEFT, DOWN or RIGHT) that starts a
+	  * shortest path from the given grid square to this field's target, or
+	  * Move.NEUTRAL if the square is the target or there is no path.  A move that
+	  * would reverse the given current move is only chosen if it is the only way to go.
+	  */
+	public Move getNextMove(int fromX, int fromY, Move current) {
+		int distance = getDistance(fromX, fromY);
+		if (distance <= 0)
+			return Move.NEUTRAL;
+
+		// make sure every neighbor that can be reached has its distance
+		searchThrough(distance);
+
+		Move best = Move.NEUTRAL;
+		Move reverse = Move.NEUTRAL;
+		int bestDist = Integer.MAX_VALUE;
+		int reverseDist = Integer.MAX_VALUE;
+
+		for (int i = 0;  i < DIRECTIONS.length;  i++) {
+			int dist = getFoundDistance(getSquare(fromX + DIRECTIONS[i].dx, fromY + DIRECTIONS[i].dy));
+			if (dist == DistanceTable.UNREACHABLE)
+				continue;
+
+			if (DIRECTIONS[i].isOppositeDirectionTo(current)) {
+				reverse = DIRECTIONS[i];
+				reverseDist = dist;
+			} else if (dist < bestDist) {
+				best = DIRECTIONS[i];
+				bestDist = dist;
+			}
+		}
+
+		return (best == Move.NEUTRAL  &&  reverseDist != Integer.MAX_VALUE)  ?  reverse  :  best;
+	}
+}
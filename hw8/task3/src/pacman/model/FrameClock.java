@@ -0,0 +1,140 @@
+package pacman.model;
+
+/** Schedules the ticks of a game loop on a fixed time step, measured with
+  * System.nanoTime().
+  *
+  * <p>Ticks are due at fixed times from when the clock was started, rather
+  * than a fixed sleep after each one, so time spent updating and painting
+  * does not slow the game down.  A loop that falls behind runs the ticks it
+  * missed, up to a bounded number per frame; beyond that the missed ticks are
+  * skipped and the schedule starts over from the present, so that a stall
+  * (a long GC, a suspended laptop) doesn't turn into a burst of fast play.
+  *
+  * <p>Typical use:
+  * <pre>
+  *   clock.start();
+  *   while (running) {
+  *       int ticks = clock.getTicksDue();
+  *       for (int i = 0;  i &lt; ticks;  i++)
+  *           model.update();
+  *       if (ticks &gt; 0)
+  *           render(clock.getInterpolation());
+  *       clock.sleepUntilNextTick();
+  *   }
+  * </pre>
+  */
+public class FrameClock {
+	/** The most ticks run in one frame to catch up before the rest are skipped. */
+	public static final int DEFAULT_MAX_CATCH_UP = 5;
+
+	private long myStep;  // in ns
+	private int myMaxCatchUp;
+	private long myNextTick = 0;
+	private long myLastTick = 0;
+	private long myNumTicks = 0;
+	private long myNumFrames = 0;
+	private long myNumLateFrames = 0;
+	private long myNumSkippedTicks = 0;
+
+	/** Constructs a new clock that ticks the given number of times per second. */
+	public FrameClock(int ticksPerSecond) {
+		this(ticksPerSecond, DEFAULT_MAX_CATCH_UP);
+	}
+
+	/** Constructs a new clock that ticks the given number of times per second and
+	  * runs at most the given number of ticks in one frame.
+	  */
+	public FrameClock(int ticksPerSecond, int maxCatchUp) {
+		if (ticksPerSecond <= 0  ||  maxCatchUp <= 0)
+			throw new IllegalArgumentException("bad clock rate: " + ticksPerSecond + "/sec, " + maxCatchUp + " catch-up ticks");
+		myStep = 1000000000L / ticksPerSecond;
+		myMaxCatchUp = maxCatchUp;
+	}
+
+	/** Starts (or restarts) the clock, so that the first tick is due right now. */
+	public void start() {
+		myNextTick = System.nanoTime();
+		myLastTick = myNextTick - myStep;
+	}
+
+	/** Returns how many ticks should be run now, and counts them as run.  This is
+	  * 0 if the next tick is not due yet, more than 1 if the loop has fallen behind,
+	  * and never more than the catch-up limit.
+	  */
+	public int getTicksDue() {
+		long now = System.nanoTime();
+		long behind = now - myNextTick;
+		if (behind < 0)
+			return 0;
+
+		long due = behind / myStep + 1;
+		myNumFrames++;
+		if (behind > myStep / 2)
+			myNumLateFrames++;
+
+		if (due > myMaxCatchUp) {
+			// too far behind to catch up; drop the backlog and start over from now
+			myNumSkippedTicks += due - myMaxCatchUp;
+			due = myMaxCatchUp;
+			myLastTick = now;
+			myNextTick = now + myStep;
+		} else {
+			myLastTick = myNextTick + (due - 1) * myStep;
+			myNextTick += due * myStep;
+		}
+
+		myNumTicks += due;
+		return (int)due;
+	}
+
+	/** Returns how far, from 0.0 to 1.0, the present is between the last tick
+	  * and the next, so that a view can draw moving things in between.
+	  */
+	public double getInterpolation() {
+		double alpha = (double)(System.nanoTime() - myLastTick) / myStep;
+		return Math.max(0.0, Math.min(1.0, alpha));
+	}
+
+	/** Returns the number of ns until the next tick is due, or 0 if it is due already. */
+	public long getTimeUntilNextTick() {
+		return Math.max(0, myNextTick - System.nanoTime());
+	}
+
+	/** Sleeps until the next tick is due. */
+	public void sleepUntilNextTick() throws InterruptedException {
+		long wait = getTimeUntilNextTick();
+		if (wait > 0)
+			Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+	}
+
+	/** Returns the length of one tick in ns. */
+	public long getStep() {
+		return myStep;
+	}
+
+	/** Returns the number of ticks handed out to be run. */
+	public long getNumTicks() {
+		return myNumTicks;
+	}
+
+	/** Returns the number of frames, meaning calls to getTicksDue() that had ticks to run. */
+	public long getNumFrames() {
+		return myNumFrames;
+	}
+
+	/** Returns the number of frames that started more than half a tick after their first tick was due. */
+	public long getNumLateFrames() {
+		return myNumLateFrames;
+	}
+
+	/** Returns the number of ticks skipped because the loop was too far behind. */
+	public long getNumSkippedTicks() {
+		return myNumSkippedTicks;
+	}
+
+	/** Returns a string representation of this clock's statistics. */
+	public String toString() {
+		return myNumTicks + " ticks in " + myNumFrames + " frames, "
+			+ myNumLateFrames + " late, " + myNumSkippedTicks + " ticks skipped";
+	}
+}
@@ -8,6 +8,7 @@ import java.awt.Color;
 import java.awt.event.KeyEvent;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /** Represents the overall model for the pac-man game state.
   * This model contains many constants for events, statuses of the game,
@@ -35,6 +36,9 @@ public class GameModel extends Listenable {
 
     public static final int EXTRA_LIFE_POINTS      = 10000;
 
+    /** How many moves each sprite is kept ahead while a binary demo streams in. */
+    private static final int REPLAY_LOOKAHEAD = 2;
+
     public static final HighScore[] DEFAULT_HIGH_SCORES = {
         new HighScore(100, "Marty"),
         new HighScore( 90, "Marty"),
@@ -94,17 +98,106 @@ public class GameModel extends Listenable {
         }
     }
 
+    /** The part of a model's state that goes into a keyframe. */
+    private static class SavedState implements Serializable {
+        private static final long serialVersionUID = 0;
+
+        List<MovingSprite> movingSprites;
+        Level currentLevel;
+        int levelIndex;  // of the current level in myLevels, or -1
+        boolean isEmptyLevel;
+        GameRandom random;
+        long seed;
+        long levelSeed;
+        long stateHash;
+        State state;
+        int desiredDir;
+        long gameOverTime;
+        int pelletTime;
+        int numCredits;
+        int numLives;
+        int score;
+        int ghostScorePower;
+        int levelNumber;
+        int difficultyMultiplier;
+        int difficultyStart;
+        long updateCounter;
+        boolean shouldDoGhostCollisions;
+        boolean shouldDoEdibleCollisions;
+        boolean shouldShowPlayerNumber;
+    }
+
+    /** What a view needs to know about the model to play the right sounds, as it was
+      * at one moment.  Views that hear about events on another thread get one with each
+      * event, since by the time they hear of it the model has moved on.
+      */
+    public static final class SoundState {
+        private static final int IN_PROGRESS = 1, JUST_STARTED = 2, DOING_GHOST_SOUNDS = 4,
+            ANGRY_GHOSTS = 8, SCARED_GHOSTS = 16, EATEN_GHOSTS = 32,
+            HAS_PACMAN = 64, PACMAN_EATING = 128, PACMAN_JUST_KILLED = 256, GHOST_JUST_EATEN = 512;
+
+        private final int myBits;
+
+        private SoundState(int bits) {
+            myBits = bits;
+        }
+
+        /** See GameModel.isInProgress(). */
+        public boolean isInProgress() { return (myBits & IN_PROGRESS) != 0; }
+
+        /** See GameModel.justStarted(). */
+        public boolean justStarted() { return (myBits & JUST_STARTED) != 0; }
+
+        /** See GameModel.isDoingGhostSounds(). */
+        public boolean isDoingGhostSounds() { return (myBits & DOING_GHOST_SOUNDS) != 0; }
+
+        /** See GameModel.areAngryGhosts(). */
+        public boolean areAngryGhosts() { return (myBits & ANGRY_GHOSTS) != 0; }
+
+        /** See GameModel.areScaredGhosts(). */
+        public boolean areScaredGhosts() { return (myBits & SCARED_GHOSTS) != 0; }
+
+        /** See GameModel.areEatenGhosts(). */
+        public boolean areEatenGhosts() { return (myBits & EATEN_GHOSTS) != 0; }
+
+        /** Returns whether there was a Pac-Man on the board. */
+        public boolean hasPacMan() { return (myBits & HAS_PACMAN) != 0; }
+
+        /** Returns whether Pac-Man was eating dots. */
+        public boolean isPacManEating() { return (myBits & PACMAN_EATING) != 0; }
+
+        /** Returns whether Pac-Man had just been killed. */
+        public boolean wasPacManJustKilled() { return (myBits & PACMAN_JUST_KILLED) != 0; }
+
+        /** Returns whether any ghost had just been eaten. */
+        public boolean wasGhostJustEaten() { return (myBits & GHOST_JUST_EATEN) != 0; }
+    }
+
     // INSTANCE VARIABLES
     private List<Demo> myDemos = new ArrayList<Demo>();
     private List<GameEvent> events = new ArrayList<GameEvent>();
     private List<MovingSprite> myMovingSprites = new ArrayList<MovingSprite>();
     private List<Level> myLevels        = new ArrayList<Level>();
     private Level myCurrentLevel = null;
+    private Level myEmptyLevel = Level.createEmptyLevel();
+    private Metrics myMetrics = new Metrics();
+    private SoundState mySoundState = null;  // last one made, handed out again while unchanged
+    private ReplayReader myReplay = null;  // binary demo being streamed in, if any
+    private ReplayReader myGameReplay = null;  // game replay steering Pac-Man, if any
+    private GameRandom myRandom = new GameRandom();  // each level's sprites get one split off it
+    private long mySeed = 0;       // that myRandom started with
+    private long myLevelSeed = 0;  // that the current level's sprites' generators were split from
+    private Long myNextSeed = null;  // for the next game, if one was set
+    private long myStateHash = 0;  // rolling hash of every tick's state since the game started
 
     private HighScoreList myHighScores = new HighScoreList(DEFAULT_HIGH_SCORES);
 
-//    private String[] mySavedMoves = null;
-//    private boolean myIsRecording = false;
+    private Recorder myRecorder = null;
+    private boolean myIsRecordingGame = false;  // the whole game, not just the level
+    private ExecutorService myRecordingWriter = null;  // one thread that writes, and opens and closes, every recording
+    private ByteArrayOutputStream mySavedMoves = null;  // last recording made into memory
+    private Recorder mySavedMovesRecorder = null;       // that made it
+    private File myRecordingDirectory = null;
 
     private Type myType;
     private State myState = State.GAME_OVER;
@@ -118,6 +211,7 @@ public class GameModel extends Listenable {
     private int myGhostScorePower;
     private int myLevelNumber = 0;
     private int myFPS = 0;
+    private double myInterpolation = 0.0;
     private int myDifficultyMultiplier = 0;
     private int myDifficultyStart = 0;
     private long myUpdateCounter;
@@ -181,6 +275,42 @@ public class GameModel extends Listenable {
         return myFPS;
     }
 
+    /** Returns how far, from 0.0 to 1.0, the time being drawn is between the last
+      * update and the next one; views may use it to draw moving sprites in between.
+      */
+    public double getInterpolation() {
+        return myInterpolation;
+    }
+
+    /** Returns the registry of per-tick timings and counts for this model's updates. */
+    public Metrics getMetrics() {
+        return myMetrics;
+    }
+
+    /** Returns the seed of the random numbers of the current game; starting a game
+      * with setSeed() of this seed and giving it the same input plays it again exactly.
+      */
+    public long getSeed() {
+        return mySeed;
+    }
+
+    /** Returns the seed from which the random number generators of the current level's
+      * moving sprites were split; it is written into recordings of the level.
+      */
+    public long getLevelSeed() {
+        return myLevelSeed;
+    }
+
+    /** Returns the rolling hash of the game's state: after each update, the state
+      * (sprite positions, statuses and counters, the remaining dots, score and lives)
+      * is folded into the hash as it was after the update before.  Two plays of the
+      * game or demo with equal hashes at a tick have, almost certainly, gone the same
+      * way up to that tick; the hash starts over when a game or demo starts.
+      */
+    public long getStateHash() {
+        return myStateHash;
+    }
+
     /** Returns true if this model would like its frames/second displayed. */
     public boolean wantsToShowFPS() {
         return myWantsToShowFPS;
@@ -219,6 +349,33 @@ public class GameModel extends Listenable {
         return count;
     }
 
+    /** Returns the number of ghosts in this game that have the given status. */
+    private int getNumGhosts(Object status) {
+        int count = 0;
+
+        for (MovingSprite mspr : myMovingSprites) {
+            if (mspr instanceof Ghost  &&  mspr.getStatus() == status)
+                count++;
+        }
+
+        return count;
+    }
+
+    /** Returns true if any ghosts in this game are not scared or eaten. */
+    public boolean areAngryGhosts() {
+        return getNumGhosts(Sprite.STATUS_SCARED) + getNumGhosts(Sprite.STATUS_EATEN) < getNumGhosts();
+    }
+
+    /** Returns true if any ghosts in this game are eaten. */
+    public boolean areEatenGhosts() {
+        return getNumGhosts(Sprite.STATUS_EATEN) > 0;
+    }
+
+    /** Returns true if any ghosts in this game are scared. */
+    public boolean areScaredGhosts() {
+        return getNumGhosts(Sprite.STATUS_SCARED) > 0;
+    }
+
     /** Returns the number of coins/credits remaining. */
     public int getNumCredits() {
         return myNumCredits;
@@ -348,6 +505,41 @@ public class GameModel extends Listenable {
         return isInProgress()  &&  getUpdateCounter() < GameModel.UPDATES_PER_SECOND * 2;
     }
 
+    /** Returns what the view needs to know to play the right sounds right now.  The same
+      * object is returned again for as long as none of it changes.
+      */
+    public synchronized SoundState getSoundState() {
+        PacMan pac = getPacMan();
+        boolean ghostJustEaten = false;
+        for (MovingSprite spr : myMovingSprites) {
+            if (spr.type == Sprite.GHOST  &&  ((Ghost)spr).wasJustEaten()) {
+                ghostJustEaten = true;
+                break;
+            }
+        }
+
+        int bits = (isInProgress()        ?  SoundState.IN_PROGRESS         :  0)
+                |  (justStarted()         ?  SoundState.JUST_STARTED        :  0)
+                |  (isDoingGhostSounds()  ?  SoundState.DOING_GHOST_SOUNDS  :  0)
+                |  (areAngryGhosts()      ?  SoundState.ANGRY_GHOSTS        :  0)
+                |  (areScaredGhosts()     ?  SoundState.SCARED_GHOSTS       :  0)
+                |  (areEatenGhosts()      ?  SoundState.EATEN_GHOSTS        :  0)
+                |  (pac != null           ?  SoundState.HAS_PACMAN          :  0)
+                |  (pac != null  &&  pac.isEating()        ?  SoundState.PACMAN_EATING       :  0)
+                |  (pac != null  &&  pac.wasJustKilled()   ?  SoundState.PACMAN_JUST_KILLED  :  0)
+                |  (ghostJustEaten        ?  SoundState.GHOST_JUST_EATEN    :  0);
+        if (mySoundState == null  ||  mySoundState.myBits != bits)
+            mySoundState = new SoundState(bits);
+        return mySoundState;
+    }
+
+    /** Returns the sound state as of the event being raised, for listeners that hear
+      * about it later on another thread.
+      */
+    protected Object getEventState() {
+        return getSoundState();
+    }
+
     /** Returns whether or not Pac-Man should be drawn on the screen right now. */
     public boolean shouldDrawPacMan() {
         for (MovingSprite movspr : myMovingSprites) {
@@ -386,8 +578,6 @@ public class GameModel extends Listenable {
             }
         }
         
-        System.runFinalization();
-        System.gc();
         notifyListeners(null, Event.COIN_INSERTED);
     }
 
@@ -410,14 +600,45 @@ public class GameModel extends Listenable {
         myLevelNumber = 0;
         myScore = 0;
         myNumLives = 3;
-//        mySavedMoves = null;
 
+        startRandom();
         gotoRandomValidLevel();
         myState = State.IN_PROGRESS;
+        if (myRecordingDirectory != null)
+            startRecordingToDirectory();
         notifyListeners(null, Event.NEW_GAME);
         return 0;
     }
 
+    /** Plays back the game recorded in the given game replay (see ReplayWriter): starts
+      * a new game with the seed it was played with, and steers Pac-Man on each update
+      * the way he was steered then, so that the game plays out just as it did, score,
+      * lives, levels and all.  No coin is needed.  This model must have the same levels,
+      * added in the same order, as the one the game was played on.  Once the replay
+      * runs out of moves, nobody steers.
+      */
+    public synchronized void replayGame(ReplayReader replay) {
+        if (replay.getKind() != ReplayWriter.GAME_REPLAY)
+            throw new IllegalArgumentException("not a game replay");
+        replayGame(replay.getSeed());
+        myGameReplay = replay;
+    }
+
+    /** Starts a new game with the given seed to play back a recorded one, whose steering
+      * the caller gives with setDesiredMove() before each update.  No coin is needed.
+      */
+    public synchronized void replayGame(long seed) {
+        setGameOver();
+        setSeed(seed);
+        myNumCredits++;
+        newGame(1);
+    }
+
+    /** Returns true if a game replay is steering Pac-Man. */
+    public boolean isReplayingGame() {
+        return myGameReplay != null;
+    }
+
     /** Called to end the current game. */
     public synchronized void endGame() {
         // myState = State.GAME_OVER;
@@ -431,6 +652,8 @@ public class GameModel extends Listenable {
     private void setGameOver() {
 //      System.out.println("setGameOver()");
         myState = State.GAME_OVER;
+        stopRecording();
+        myGameReplay = null;
 
         // new game code--sleep a bit to make sure we're not in an update
 //      try {
@@ -442,12 +665,10 @@ public class GameModel extends Listenable {
         myLevelNumber = 0;
         myScore = 0;
         myNumLives = 3;
-//        mySavedMoves = null;
-//        myIsRecording = false;
         myGhostScorePower = 0;
         myUpdateCounter = 0;
 
-        setCurrentLevel(Level.EMPTY_LEVEL);
+        setCurrentLevel(myEmptyLevel);
         myPelletTime = Math.max(MIN_PELLET_TIME, INITIAL_PELLET_TIME - myLevelNumber);
 
         // next level code
@@ -470,6 +691,13 @@ public class GameModel extends Listenable {
         myLevels.add(lev);
     }
 
+    /** Adds a level made from the given compiled level to this game's list of levels.
+      * Templates never change, so many models may share one.
+      */
+    public void addLevel(LevelTemplate template) {
+        myLevels.add(new Level(template));
+    }
+
     /** Reads a demo for this game type (Pac-Man, Mrs. Pac-Man, etc). */
     private void gotoRandomValidLevel() {
         if (myLevels == null)
@@ -493,7 +721,7 @@ public class GameModel extends Listenable {
         // pick a random demo of this game type
         int index = -1;
         while (true) {
-            index = (int)(Math.random() * size);
+            index = myRandom.nextInt(size);
             Level lev = myLevels.get(index);
             if (lev.getType() == myType)
                 break;
@@ -506,7 +734,14 @@ public class GameModel extends Listenable {
     }
 
     /** Starts a new level. */
-    private void setCurrentLevel(Level level) {  // int index) {
+    private void setCurrentLevel(Level level) {
+        setCurrentLevel(level, myRandom.nextLong());
+    }
+
+    /** Starts a new level, whose moving sprites' random number generators are split
+      * off one with the given seed.
+      */
+    private void setCurrentLevel(Level level, long levelSeed) {  // int index) {
 //      new RuntimeException().printStackTrace();
 //      System.out.println("setCurrentLevel(): changing level: before=");
 //      System.out.println(myCurrentLevel);
@@ -514,6 +749,10 @@ public class GameModel extends Listenable {
 //      Object oldState = myState;
 //      myState = State.GAME_LOADING;
 
+        // a level recording covers just one level; a game recording, the whole game
+        if (!myIsRecordingGame)
+            stopRecording();
+
         // clean up old ghosts
         for (MovingSprite mspr : myMovingSprites) {
             if (mspr.type == Sprite.GHOST) {
@@ -527,11 +766,17 @@ public class GameModel extends Listenable {
         myShouldShowPlayerNumber = true;
 
         // go to the given level now
+        myReplay = null;
         myCurrentLevel = level;
+        myCurrentLevel.setMetrics(myMetrics);
         myCurrentLevel.regenerate();
 
         // read level text data to see positions of moving sprites
         readMovingSprites(myCurrentLevel);
+        myLevelSeed = levelSeed;
+        GameRandom levelRandom = new GameRandom(levelSeed);
+        for (MovingSprite mspr : myMovingSprites)
+            mspr.setRandom(levelRandom.split());
 
 //      readMap((Level)myLevels.elementAt(levelNum));
 //      myState = oldState;
@@ -545,108 +790,94 @@ public class GameModel extends Listenable {
 
     /** Reads the locations and constructs the moving sprites contained in the given level. */
     private void readMovingSprites(Level level) {
-        List<String> lines = new ArrayList<String>();
-        try {
-            BufferedReader input = new BufferedReader(new InputStreamReader(level.getStream()));
-            while (input.ready()) {
-                String line = input.readLine();
-                if (line != null  &&  !line.equals(""))
-                    lines.add(line);
-            }
-        } catch (IOException ioe) {
-            throw new RuntimeException("Error regenerating level: " + ioe);
-        }
-
-        if (lines.size() == 0)
+        LevelTemplate template = level.getTemplate();
+        if (template.getNumSpawns() == 0)
             return;
 
-        int w = myCurrentLevel.getGridWidth();
-        int h = myCurrentLevel.getGridHeight();
         int SPRITE_OFFSET = Level.GRID_SIZE / 2;
         char curr = '\0';
         int gridx = 0;
         int gridy = 0;
-        for (int y = 0;  y < h;  y++) {
-            String line = lines.get(y);
-            for (int x = 0;  x < w;  x++) {
-                curr = line.charAt(x);
-                gridx = x * Level.GRID_SIZE;
-                gridy = y * Level.GRID_SIZE;
-
-                if (Character.isDigit(curr)) {
-                    // Pac-Man himself!
-                    gridx += SPRITE_OFFSET;
-                    myMovingSprites.add(0, new PacMan(gridx, gridy));
+        for (int i = 0;  i < template.getNumSpawns();  i++) {
+            curr = template.getSpawnCode(i);
+            gridx = template.getSpawnX(i) * Level.GRID_SIZE;
+            gridy = template.getSpawnY(i) * Level.GRID_SIZE;
+
+            if (Character.isDigit(curr)) {
+                // Pac-Man himself!
+                gridx += SPRITE_OFFSET;
+                myMovingSprites.add(0, new PacMan(gridx, gridy));
+            }
+            else if (curr == 'B'  ||  curr == 'I'  ||  curr == 'P'  ||  curr == 'C') {
+                // a Ghost
+                Ghost gh = null;
+                switch (curr) {
+                case 'B':
+                    gh = Ghost.createBlinky(gridx, gridy);
+                    break;
+                case 'I':
+                    gh = Ghost.createInky(gridx, gridy);
+                    break;
+                case 'P':
+                    gh = Ghost.createPinky(gridx, gridy);
+                    break;
+                case 'C':
+                    gh = Ghost.createClyde(gridx, gridy);
+                    break;
+                default:
+                    gh = Ghost.createSatan(gridx, gridy);
+                    break;
                 }
-                else if (curr == 'B'  ||  curr == 'I'  ||  curr == 'P'  ||  curr == 'C') {
-                    // a Ghost
-                    Ghost gh = null;
-                    switch (curr) {
-                    case 'B':
-                        gh = Ghost.createBlinky(gridx, gridy);
-                        break;
-                    case 'I':
-                        gh = Ghost.createInky(gridx, gridy);
-                        break;
-                    case 'P':
-                        gh = Ghost.createPinky(gridx, gridy);
-                        break;
-                    case 'C':
-                        gh = Ghost.createClyde(gridx, gridy);
-                        break;
-                    default:
-                        gh = Ghost.createSatan(gridx, gridy);
-                        break;
-                    }
-
-                    myMovingSprites.add(gh);
-                    int numGhosts = getNumGhosts();
-
-                    // make ghosts chill out in their cage for a while before they come out;
-                    // first ghost (Blinky) needs delay of 1, since he starts outside--
-                    // also third ghost (Pinky) comes out of hive instantly
-                    int delay = 0;
-                    if (numGhosts % 2 == 0) {
-                    // give every other ghost a delay
-                        delay = 1;
-                        delay = UPDATES_PER_SECOND * numGhosts * TIME_BETWEEN_GHOSTS / 2;
-                    } else if (numGhosts > 1) {
-                    // I'm setting it so that even ghosts who leave the cage right away
-                    // briefly use their cage strategy in order to figure out how to get out
-                    // of the cage correctly
-                        delay = 1;
-                    }
 
-                    if (delay > 0)
-                        gh.setCageDelay(delay);
-                }
-                else if (curr == 'F') {
-                    // Fruit
-                    gridx += SPRITE_OFFSET;
-                    Fruit fr = null;
-
-                    if (myLevelNumber % 5 == 0)
-                        fr = new Cherry(gridx, gridy);
-                    else if (myLevelNumber % 5 == 1)
-                        fr = new Strawberry(gridx, gridy);
-                    else if (myLevelNumber % 5 == 2  ||  myLevelNumber % 5 == 3)
-                        fr = new Orange(gridx, gridy);
-                    else if (myLevelNumber % 5 == 4)
-                        fr = new Apple(gridx, gridy);
-                    else
-                        throw new RuntimeException("Why is level number this?  " + myLevelNumber);
-
-                    fr.setVisible(false);
-
-                    // moving fruit in mrs. pac-man game
-                    if (myType != Type.PACMAN) {
-                        fr.setSpeed(Fruit.FRUIT_SPEED);
-                        Strategy strat = new TurnStrategy(fr);
-                        fr.setStrategy(strat);
-                    }
-                    myMovingSprites.add(fr);
+                myMovingSprites.add(gh);
+                int numGhosts = getNumGhosts();
+
+                // alternate ghosts start off bobbing up or down in the cage
+                gh.setGoingUpInCage(numGhosts % 2 == 1);
+
+                // make ghosts chill out in their cage for a while before they come out;
+                // first ghost (Blinky) needs delay of 1, since he starts outside--
+                // also third ghost (Pinky) comes out of hive instantly
+                int delay = 0;
+                if (numGhosts % 2 == 0) {
+                // give every other ghost a delay
+                    delay = 1;
+                    delay = UPDATES_PER_SECOND * numGhosts * TIME_BETWEEN_GHOSTS / 2;
+                } else if (numGhosts > 1) {
+                // I'm setting it so that even ghosts who leave the cage right away
+                // briefly use their cage strategy in order to figure out how to get out
+                // of the cage correctly
+                    delay = 1;
                 }
 
+                if (delay > 0)
+                    gh.setCageDelay(delay);
+            }
+            else if (curr == 'F') {
+                // Fruit
+                gridx += SPRITE_OFFSET;
+                Fruit fr = null;
+
+                if (myLevelNumber % 5 == 0)
+                    fr = new Cherry(gridx, gridy);
+                else if (myLevelNumber % 5 == 1)
+                    fr = new Strawberry(gridx, gridy);
+                else if (myLevelNumber % 5 == 2  ||  myLevelNumber % 5 == 3)
+                    fr = new Orange(gridx, gridy);
+                else if (myLevelNumber % 5 == 4)
+                    fr = new Apple(gridx, gridy);
+                else
+                    throw new RuntimeException("Why is level number this?  " + myLevelNumber);
+
+                fr.setVisible(false);
+
+                // moving fruit in mrs. pac-man game
+                if (myType != Type.PACMAN) {
+                    fr.setSpeed(Fruit.FRUIT_SPEED);
+                    Strategy strat = new TurnStrategy(fr);
+                    fr.setStrategy(strat);
+                }
+                myMovingSprites.add(fr);
             }
         }
 
@@ -679,13 +910,11 @@ public class GameModel extends Listenable {
             if (mspr.type == Sprite.GHOST) {
                 Ghost gh = (Ghost)mspr;
 
-                Sprite rightcell = myCurrentLevel.getGridCell(gh.getGridX() + 1, gh.getGridY());
-                Sprite downcell  = myCurrentLevel.getGridCell(gh.getGridX(), gh.getGridY() + 1);
-                if (!(rightcell instanceof ObstacleSprite)) {
+                if (!myCurrentLevel.isObstacle(gh.getGridX() + 1, gh.getGridY())) {
                     gh.setX(gh.getX() + SPRITE_OFFSET);
                     gh.setInitialX(gh.getInitialX() + SPRITE_OFFSET);
                 }
-                if (!(downcell instanceof ObstacleSprite)) {
+                if (!myCurrentLevel.isObstacle(gh.getGridX(), gh.getGridY() + 1)) {
                     gh.setY(gh.getY() + SPRITE_OFFSET);
                     gh.setInitialY(gh.getInitialY() + SPRITE_OFFSET);
                 }
@@ -802,11 +1031,34 @@ public class GameModel extends Listenable {
       */
     public void setDelay(int n) {}
 
+    /** Sets the seed of the random numbers of the next game started.  Without one,
+      * each game gets a seed of its own.
+      */
+    public void setSeed(long seed) {
+        myNextSeed = seed;
+    }
+
+    /** Starts the random numbers of a new game off the seed set for it, if any. */
+    private void startRandom() {
+        mySeed = (myNextSeed != null)  ?  myNextSeed  :  GameRandom.newSeed();
+        myNextSeed = null;
+        myRandom = new GameRandom(mySeed);
+        myStateHash = 0;
+    }
+
     /** Sets Pac-Man's desired direction of movement to the given integer. */
     public void setDesiredDir(int dir) {
         myDesiredDir = dir;
     }
 
+    /** Sets Pac-Man's desired direction of movement to that of the given move, as
+      * returned by getDesiredMove().
+      */
+    public void setDesiredMove(Move mov) {
+        myDesiredDir = (mov.dx < 0)  ?  KeyEvent.VK_LEFT  :  (mov.dx > 0)  ?  KeyEvent.VK_RIGHT
+            :  (mov.dy < 0)  ?  KeyEvent.VK_UP  :  (mov.dy > 0)  ?  KeyEvent.VK_DOWN  :  0;
+    }
+
     /** Sets this model's frames-per-second to the given amount.
       * This isn't an instruction on how many FPS are desired, but rather
       * a reading of how many frames were drawn in the last second.
@@ -818,6 +1070,13 @@ public class GameModel extends Listenable {
         myFPS = fps;
     }
 
+    /** Sets how far the time being drawn is between the last update and the next one.
+      * Called by the game loop just before it tells the views to draw.
+      */
+    public void setInterpolation(double alpha) {
+        myInterpolation = alpha;
+    }
+
     public void setWantsToShowFPS(boolean b) {
         myWantsToShowFPS = b;
     }
@@ -890,9 +1149,20 @@ public class GameModel extends Listenable {
 
 
     /** Updates the game state of all sprites.  Called UPDATES_PER_SECOND times per second
-      * to make the game run at a fast, smooth pace.
+      * to make the game run at a fast, smooth pace.  Asynchronous listeners hear about
+      * the update's events together, once it is done.
       */
     public synchronized void update() {
+        beginBatch();
+        try {
+            updateSprites();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /** Does the work of update(). */
+    private void updateSprites() {
         if (isGameOver()  &&  myGameOverTime <= DEMO_LENGTH) {
             if (myNumCredits == 0) {
                 // do demo stuff
@@ -908,6 +1178,14 @@ public class GameModel extends Listenable {
 
         // synchronize on this model so no one can mess with me while I am updating myself
         events.clear();
+        myMetrics.startTick();
+        long start;
+
+        // a game replay steers, and a game recording records the steering, every tick
+        if (myGameReplay != null)
+            steerFromReplay();
+        if (myRecorder != null  &&  myIsRecordingGame)
+            myRecorder.recordMove(getDesiredMove());
 
         boolean doingMovement = isDoingMovement();
         boolean demoDone = false;
@@ -925,8 +1203,13 @@ public class GameModel extends Listenable {
                     endGame();
             }
         } else {
+            if (myReplay != null)
+                feedReplay();
+
             for (MovingSprite mspr : myMovingSprites) {
+                start = myMetrics.now();
                 mspr.update(this);
+                myMetrics.addTime(Metrics.Phase.SPRITE_UPDATE, start);
 
                 if (mspr.type == Sprite.PACMAN) {
                     PacMan pac = (PacMan)mspr;
@@ -939,7 +1222,9 @@ public class GameModel extends Listenable {
                                 if (!pac.hasQueuedMoves())
                                     demoDone = true;
                             }
+                            start = myMetrics.now();
                             tryMove(pac, desiredMove);
+                            myMetrics.addTime(Metrics.Phase.MOVE_RESOLUTION, start);
 
                             if (myCurrentLevel.collidesWithWall(pac)) {
                                 debugDump();
@@ -948,8 +1233,11 @@ public class GameModel extends Listenable {
                         }
 
                         // check if pac-man ate a dot/pellet
-                        if (myShouldDoEdibleCollisions)
+                        if (myShouldDoEdibleCollisions) {
+                            start = myMetrics.now();
                             myCurrentLevel.checkDotsEaten(this, pac);
+                            myMetrics.addTime(Metrics.Phase.DOT_COLLISION, start);
+                        }
                     }
                 } else if (mspr.type == Sprite.GHOST) {
                     Ghost gh = (Ghost)mspr;
@@ -960,11 +1248,16 @@ public class GameModel extends Listenable {
                     // make the ghosts move
                     if (doingMovement) {  //   &&  pac.isAlive
                         Move desiredMove = null;
+                        start = myMetrics.now();
                         if (gh.hasQueuedMoves())
                             desiredMove = gh.getDesiredMove();
                         else 
                             desiredMove = gh.calculateMove(myCurrentLevel, pac);
+                        myMetrics.addAiTime(gh.getName(), start);
+
+                        start = myMetrics.now();
                         tryMove(gh, desiredMove);
+                        myMetrics.addTime(Metrics.Phase.MOVE_RESOLUTION, start);
                     }
 
                     // debugging test for a stuck ghost
@@ -1001,7 +1294,13 @@ public class GameModel extends Listenable {
                         continue;
 
                     // make fruit move (if it should move, that is)
-                    tryMove(fr, fr.calculateMove(myCurrentLevel, pac));
+                    start = myMetrics.now();
+                    Move desiredMove = fr.calculateMove(myCurrentLevel, pac);
+                    myMetrics.addAiTime(fr.getName(), start);
+
+                    start = myMetrics.now();
+                    tryMove(fr, desiredMove);
+                    myMetrics.addTime(Metrics.Phase.MOVE_RESOLUTION, start);
 
                     // do collision detection between pac-man and fruit
                     if (!fr.isEaten()  &&  fr.isVisible  &&  pac.isAlive  &&  pac.collidesWith(fr)) {
@@ -1010,12 +1309,12 @@ public class GameModel extends Listenable {
                         events.add(new GameEvent(fr, Event.FRUIT_EATEN));
                     }
                 }
-
-                // record game moves
-//                if (myIsRecording  &&  doingMovement)
-//                    mySavedMoves[i] += mspr.getLastMove() + "\t";
             }
 
+            // record the level's moves, on the ticks that a demo makes them
+            if (myRecorder != null  &&  !myIsRecordingGame  &&  doingMovement)
+                myRecorder.recordTick(myMovingSprites);
+
             // make power pellets blink every half second
             if (doingMovement  &&  getUpdateCounter() % (UPDATES_PER_SECOND / 4) == 0) {
                 getCurrentLevel().blinkPellets();
@@ -1041,9 +1340,14 @@ public class GameModel extends Listenable {
             }
         }
 
+        myStateHash = hashState(myStateHash);
+
+        start = myMetrics.now();
         for (GameEvent event : events) {
             notifyListeners(event.source, event.type);
         }
+        myMetrics.addTime(Metrics.Phase.LISTENER_DISPATCH, start);
+        myMetrics.endTick();
     }
 
     /** Updates the game state of all sprites when the game is in game over state.
@@ -1208,7 +1512,9 @@ public class GameModel extends Listenable {
 
             if (isDoingMovement()) {
                 pac.go(pac.getDesiredMove());
+                long start = myMetrics.now();
                 myCurrentLevel.checkDotsEaten(this, pac);
+                myMetrics.addTime(Metrics.Phase.DOT_COLLISION, start);
 
                 // make the stationary ghosts stand still
                 int count = 0;
@@ -1285,7 +1591,7 @@ public class GameModel extends Listenable {
         // pick a random demo of this game type
         Demo dem = null;
         while (true) {
-            int index = (int)(Math.random() * size);
+            int index = myRandom.nextInt(size);
             dem = myDemos.get(index);
             if (dem.getType() == myType)
                 break;
@@ -1303,11 +1609,53 @@ public class GameModel extends Listenable {
 //      }
     }
 
+    /** Starts playing back the demo at the given input stream right away,
+      * skipping the game-over animations that normally come before a demo.  A game
+      * replay is played back as the game it was (see replayGame()).
+      */
+    public synchronized void playDemo(InputStream in) {
+        setGameOver();
+        myGameOverTime = DEMO_LENGTH + 1;
+        readDemo(in);
+    }
+
+    /** Starts playing back a demo on the level with the given name right away, with the
+      * given seed for its sprites' random numbers.  The caller queues the sprites' moves
+      * onto them (see getMovingSprites()) as it plays; the demo ends when Pac-Man runs out.
+      */
+    public synchronized void playDemo(String levelName, long levelSeed) {
+        setGameOver();
+        myGameOverTime = DEMO_LENGTH + 1;
+        gotoDemoLevel(levelName, levelSeed);
+        notifyListeners(null, Event.NEW_LEVEL);
+    }
+
+    /** Returns true if the game is playing back a demo. */
+    public boolean isPlayingDemo() {
+        return isGameOver()  &&  myGameOverTime > DEMO_LENGTH  &&  getPacMan() != null;
+    }
+
     /** Reads the demo at the given input stream and sets up its moves to be made
-      * by the game's sprites.
+      * by the game's sprites.  The demo may be a text demo, or a binary replay
+      * (see ReplayWriter), whose moves are read a few at a time as it plays.
       */
     public synchronized void readDemo(InputStream in) {
         try {
+            if (!in.markSupported())
+                in = new BufferedInputStream(in);
+            if (ReplayReader.isReplay(in)) {
+                ReplayReader replay = new ReplayReader(in);
+                if (replay.getKind() == ReplayWriter.GAME_REPLAY) {
+                    replayGame(replay);
+                    return;
+                }
+                gotoDemoLevel(replay.getLevelName(), replay.getSeed());
+                myReplay = replay;
+                feedReplay();
+                notifyListeners(null, Event.NEW_LEVEL);
+                return;
+            }
+
             String levelName = "";
             BufferedReader input = new BufferedReader(new InputStreamReader(in));
 
@@ -1315,23 +1663,8 @@ public class GameModel extends Listenable {
                 levelName = input.readLine();
             }
 
-            // find what level was referred to
-            Level level = null;
-            int index = 0;
-            for (Level lev : myLevels) {
-                if (lev.getName().equals(levelName)) {
-                    level = lev;
-                    break;
-                }
-                index++;
-            }
-
-            if (level == null)
-                throw new RuntimeException("invalid demo: I can't find level named " + levelName);
-
-            setCurrentLevel(level);
-            myLevelNumber = index;
-            putWordOnMap("GAME  OVER", 9, 17, PacManColors.RED);
+            // text demos have no seed; ReplayConverter gives their replays 0 too
+            gotoDemoLevel(levelName, 0);
 
             // read in moves for each sprite
             int i = 0;
@@ -1374,93 +1707,306 @@ public class GameModel extends Listenable {
         notifyListeners(null, Event.NEW_LEVEL);
     }
 
+    /** Goes to the level with the given name to play a demo on it, with the given
+      * seed for its sprites' random numbers.
+      */
+    private void gotoDemoLevel(String levelName, long levelSeed) {
+        // find what level was referred to
+        Level level = null;
+        int index = 0;
+        for (Level lev : myLevels) {
+            if (lev.getName().equals(levelName)) {
+                level = lev;
+                break;
+            }
+            index++;
+        }
+
+        if (level == null)
+            throw new RuntimeException("invalid demo: I can't find level named " + levelName);
+
+        setCurrentLevel(level, levelSeed);
+        myLevelNumber = index;
+        myStateHash = 0;
+        putWordOnMap("GAME  OVER", 9, 17, PacManColors.RED);
+    }
+
+    /** Queues the next few moves of the binary demo being played onto the sprites. */
+    private void feedReplay() {
+        try {
+            myReplay.feed(myMovingSprites, REPLAY_LOOKAHEAD);
+            if (myReplay.isFinished())
+                myReplay = null;
+        } catch (IOException ioe) {
+            System.err.println("Invalid demo file!  IO ERROR: " + ioe);
+            myReplay = null;
+        }
+    }
+
+    /** Steers Pac-Man the way he was steered on this tick of the game being played back. */
+    private void steerFromReplay() {
+        try {
+            Move mov = myGameReplay.readMove();
+            if (mov != null) {
+                setDesiredMove(mov);
+                return;
+            }
+        } catch (IOException ioe) {
+            System.err.println("Invalid replay file!  IO ERROR: " + ioe);
+        }
+        myGameReplay = null;
+    }
+
+    /** Returns a keyframe of the current state of the game: the level and its dots,
+      * the moving sprites and their statuses, counters, queued moves and random number
+      * generators, the score, lives and so on.  The given tick is stored with it for the caller's use.
+      */
+    public synchronized Keyframe createKeyframe(long tick) {
+        SavedState saved = new SavedState();
+        saved.movingSprites = myMovingSprites;
+        saved.currentLevel = myCurrentLevel;
+        saved.levelIndex = -1;
+        for (int i = 0;  i < myLevels.size();  i++)
+            if (myLevels.get(i) == myCurrentLevel)
+                saved.levelIndex = i;
+        saved.isEmptyLevel = (myCurrentLevel == myEmptyLevel);
+        saved.random = myRandom;
+        saved.seed = mySeed;
+        saved.levelSeed = myLevelSeed;
+        saved.stateHash = myStateHash;
+        saved.state = myState;
+        saved.desiredDir = myDesiredDir;
+        saved.gameOverTime = myGameOverTime;
+        saved.pelletTime = myPelletTime;
+        saved.numCredits = myNumCredits;
+        saved.numLives = myNumLives;
+        saved.score = myScore;
+        saved.ghostScorePower = myGhostScorePower;
+        saved.levelNumber = myLevelNumber;
+        saved.difficultyMultiplier = myDifficultyMultiplier;
+        saved.difficultyStart = myDifficultyStart;
+        saved.updateCounter = myUpdateCounter;
+        saved.shouldDoGhostCollisions = myShouldDoGhostCollisions;
+        saved.shouldDoEdibleCollisions = myShouldDoEdibleCollisions;
+        saved.shouldShowPlayerNumber = myShouldShowPlayerNumber;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(saved);
+            out.close();
+            return new Keyframe(tick, bytes.toByteArray());
+        } catch (IOException ioe) {
+            throw new RuntimeException("can't save game state: " + ioe);
+        }
+    }
+
+    /** Puts the game back into the state saved in the given keyframe.  Any recording
+      * is stopped, and a binary demo or game replay being streamed in is dropped, since
+      * none of them knows about the jump.  The restored level takes the place of the one
+      * it was saved from in this game's list of levels, so the keyframe must come from
+      * this model, or one with the same levels added in the same order.
+      */
+    public synchronized void restoreKeyframe(Keyframe keyframe) {
+        SavedState saved;
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(keyframe.getState()));
+            saved = (SavedState)in.readObject();
+            in.close();
+        } catch (IOException ioe) {
+            throw new RuntimeException("can't restore game state: " + ioe);
+        } catch (ClassNotFoundException cnfe) {
+            throw new RuntimeException("can't restore game state: " + cnfe);
+        }
+
+        stopRecording();
+        myReplay = null;
+        myGameReplay = null;
+        myMovingSprites = saved.movingSprites;
+        myCurrentLevel = saved.currentLevel;
+        myCurrentLevel.setMetrics(myMetrics);
+
+        // the restored level is a copy; it takes the place of the one it was copied
+        // from, so that the game comes back to it rather than to a stale one
+        if (saved.isEmptyLevel)
+            myEmptyLevel = myCurrentLevel;
+        else if (saved.levelIndex >= 0  &&  saved.levelIndex < myLevels.size())
+            myLevels.set(saved.levelIndex, myCurrentLevel);
+        myRandom = saved.random;
+        mySeed = saved.seed;
+        myLevelSeed = saved.levelSeed;
+        myStateHash = saved.stateHash;
+        myState = saved.state;
+        myDesiredDir = saved.desiredDir;
+        myGameOverTime = saved.gameOverTime;
+        myPelletTime = saved.pelletTime;
+        myNumCredits = saved.numCredits;
+        myNumLives = saved.numLives;
+        myScore = saved.score;
+        myGhostScorePower = saved.ghostScorePower;
+        myLevelNumber = saved.levelNumber;
+        myDifficultyMultiplier = saved.difficultyMultiplier;
+        myDifficultyStart = saved.difficultyStart;
+        myUpdateCounter = saved.updateCounter;
+        myShouldDoGhostCollisions = saved.shouldDoGhostCollisions;
+        myShouldDoEdibleCollisions = saved.shouldDoEdibleCollisions;
+        myShouldShowPlayerNumber = saved.shouldShowPlayerNumber;
+
+        notifyListeners(null, Event.NEW_LEVEL);
+    }
+
     /** Returns true if the game is playing a demo. */
 //  public boolean isDemoPlaying() {
 //      return myState == State.DEMO_PLAYING;
 //  }
 
-//    /** Starts recording a demo. */
-//    public void startRecording() {
-//        myIsRecording = true;
-//        mySavedMoves = new String[myMovingSprites.size()];
-//        for (int i = 0;  i < mySavedMoves.length;  i++) {
-//            mySavedMoves[i] = "";
-//        }
-//    }
-//
-//    /** Stops recording a demo. */
-//    public void stopRecording() {
-//        myIsRecording = false;
-//
-//        if (mySavedMoves == null)
-//            return;
-//
-//        // condense the saved moves list
-//        boolean SHOULD_CONDENSE = true;
-//        for (int i = 0;  i < mySavedMoves.length;  i++) {
-//            String curr = null;
-//            String prev = null;
-//            int count = 0;
-//            StringTokenizer st = new StringTokenizer(mySavedMoves[i], "\t:");
-//            mySavedMoves[i] = ((MovingSprite)myMovingSprites.elementAt(i)).getName() + '\t';
-//
-//            while (st.hasMoreTokens()) {
-//                curr = st.nextToken();
-//
-//                if (SHOULD_CONDENSE  &&  curr.equals(prev)) {
-//                    count++;
-//                } else {
-//                    if (prev != null) {
-//                        mySavedMoves[i] += prev + ':' + count + '\t';
-//                    }
-//                    prev = curr;
-//                    count = 1;
-//                }
-//
-//                // necessary to write out last move(s)
-//                if (!st.hasMoreTokens()) {
-//                    mySavedMoves[i] += prev + ':' + count + '\t';
-//                }
-//
-//                /* PSEUDOCODE
-//
-//                for (each token)
-//                    get token
-//
-//                    if this token is same as prev ones
-//                        count += 1
-//
-//                    else (different token)
-//                        if there were prev tokens
-//                            write out (prev tokens, their count)
-//                        prev token = token
-//                        count = 1
-//
-//                    if no tokens ahead
-//                        write out (token, count)
-//
-//                */
-//            }
-//        }
-//    }
-//
-//    /** Returns true if this model is recording a demo. */
-//    public boolean isRecording() {
-//        return myIsRecording;
-//    }
-//
-//    /** Returns the saved moves in this game's currently saved demo game. */
-//    public String getSavedMoves() {
-//        // String result = getLevelName() + '\n';
-//        String result = myCurrentLevel.getName() + '\n';
-//        for (int i = 0;  i < mySavedMoves.length;  i++) {
-//            result += mySavedMoves[i];
-//            if (i < mySavedMoves.length - 1)
-//                result += '\n';
-//        }
-//
-//        return result;
-//    }
+    /** Starts recording the moves made on the current level into memory; they can
+      * be looked at with getSavedMoves() once recording stops.
+      */
+    public synchronized void startRecording() {
+        mySavedMoves = new ByteArrayOutputStream();
+        startRecording(mySavedMoves);
+        mySavedMovesRecorder = myRecorder;
+    }
+
+    /** Starts recording the moves made on the current level to the given stream, as a
+      * binary replay, along with the level's seed.  Recording stops when stopRecording() is called, or when the
+      * level changes or the game ends.
+      */
+    public synchronized void startRecording(OutputStream out) {
+        startRecording(new Recorder(out, myCurrentLevel.getName(), myLevelSeed, myMovingSprites));
+    }
+
+    /** Starts recording the game in progress to the given stream, as a game replay
+      * (see replayGame()).  The steering is recorded from the next update on, so to
+      * be played back the recording must be started before the game's first update.
+      * Recording stops when stopRecording() is called, or when the game ends.
+      */
+    public synchronized void startRecordingGame(OutputStream out) {
+        startRecording(new Recorder(out, mySeed));
+        myIsRecordingGame = true;
+    }
+
+    /** Starts the given recorder on the recording writer thread, after stopping any
+      * recording already being made.
+      */
+    private void startRecording(Recorder recorder) {
+        stopRecording();
+        if (myRecordingWriter == null) {
+            myRecordingWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Recorder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        myRecorder = recorder;
+        myRecorder.start(myRecordingWriter);
+    }
+
+    /** Stops recording.  The recorded moves are written, and the stream closed, on
+      * the recording writer thread; this doesn't wait for that (see waitForRecordings()).
+      */
+    public synchronized void stopRecording() {
+        if (myRecorder == null)
+            return;
+
+        final Recorder recorder = myRecorder;
+        myRecorder = null;
+        myIsRecordingGame = false;
+        recorder.stop();
+
+        // the writer thread gets to this once it has finished with the recording
+        myRecordingWriter.execute(new Runnable() {
+            public void run() {
+                try {
+                    recorder.waitUntilWritten();
+                    if (recorder.getNumDroppedTicks() > 0)
+                        System.err.println("Recording is missing " + recorder.getNumDroppedTicks() + " of " + recorder.getNumTicks() + " ticks");
+                } catch (IOException ioe) {
+                    System.err.println("Can't record game: " + ioe);
+                }
+            }
+        });
+    }
+
+    /** Stops recording, and waits until every recording made so far has been written.
+      * Not to be called while the game is being updated, as a game being recorded
+      * to the recording directory would be waited on until it ends.
+      */
+    public void waitForRecordings() {
+        ExecutorService writer;
+        synchronized (this) {
+            stopRecording();
+            writer = myRecordingWriter;
+        }
+        if (writer == null)
+            return;
+
+        try {
+            writer.submit(new Runnable() {
+                public void run() {}
+            }).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee);
+        }
+    }
+
+    /** Returns true if this model is recording a demo. */
+    public boolean isRecording() {
+        return myRecorder != null;
+    }
+
+    /** Sets a directory into which every game played is recorded from its start, each as
+      * its own game replay file; null turns this off.  If the recording is stopped (say,
+      * by stopRecording()) it stays stopped until the next game.
+      */
+    public synchronized void setRecordingDirectory(File dir) {
+        myRecordingDirectory = dir;
+    }
+
+    /** Starts recording the game just started to a new file in the recording directory.
+      * The file is created by the recording writer thread, not the update thread.
+      */
+    private void startRecordingToDirectory() {
+        File file = new File(myRecordingDirectory, "game-" + mySeed + "-" + System.currentTimeMillis() + ".rpl");
+        startRecording(new Recorder(file, mySeed));
+        myIsRecordingGame = true;
+    }
+
+    /** Returns the moves of the last recording made into memory, as a text demo, or
+      * an empty string if there is none or it is still being made.  Waits, without
+      * holding up the game, for the recording to finish being written.
+      */
+    public String getSavedMoves() {
+        ByteArrayOutputStream moves;
+        Recorder recorder;
+        synchronized (this) {
+            if (mySavedMoves == null  ||  myRecorder == mySavedMovesRecorder)
+                return "";
+            moves = mySavedMoves;
+            recorder = mySavedMovesRecorder;
+        }
+
+        try {
+            recorder.waitUntilWritten();
+            return new ReplayReader(new ByteArrayInputStream(moves.toByteArray())).toText();
+        } catch (IOException ioe) {
+            return "";
+        }
+    }
+
+    /** Returns the given hash with the current state of the game folded into it. */
+    private long hashState(long hash) {
+        hash = StateHash.mix(hash, myUpdateCounter);
+        for (MovingSprite mspr : myMovingSprites)
+            hash = mspr.hashState(hash);
+        hash = StateHash.mix(hash, myScore, myNumLives);
+        return StateHash.mix(hash, myCurrentLevel.getDotHash());
+    }
 
 // MOVEMENT RELATED METHODS
     /** Attempts to move the given sprite in the given move.
@@ -1542,7 +2088,16 @@ public class GameModel extends Listenable {
             }
         }
 
-        notifyListeners(pellet, Event.POWER_PELLET_EATEN);
+        notifyDotListeners(pellet, Event.POWER_PELLET_EATEN);
+    }
+
+    /** Notifies the listeners of an event that came of Pac-Man eating a dot or pellet.
+      * The time it takes is counted as LISTENER_DISPATCH rather than DOT_COLLISION.
+      */
+    void notifyDotListeners(Object source, Object eventType) {
+        long start = myMetrics.now();
+        notifyListeners(source, eventType);
+        myMetrics.moveTime(Metrics.Phase.DOT_COLLISION, Metrics.Phase.LISTENER_DISPATCH, start);
     }
 
 // DEBUG CODE
@@ -1560,9 +2115,9 @@ public class GameModel extends Listenable {
         System.out.println(myNumCredits + " credits; " + myNumLives + " lives; " + myScore + " points");
         System.out.println(myFPS + " fps; " + myGameOverTime + " gameovertime; " + myPelletTime + " pelletTime; " + myGhostScorePower + " ghostPower");
         System.out.println("sound? " + myWantsSound + "  ghost collisions? " + myShouldDoGhostCollisions + "  edible collisions? " + myShouldDoEdibleCollisions);
-        System.out.println(Ghost.ourGhostCount + " total ghosts; are there angry ghosts? " + Ghost.areAngryGhosts());
-        System.out.println(Ghost.ourScaredCount + " scared; are there scared ghosts? " + Ghost.areScaredGhosts());
-        System.out.println(Ghost.ourEatenCount + " eaten; are there eaten ghosts? " + Ghost.areEatenGhosts() + "\n");
+        System.out.println(getNumGhosts() + " total ghosts; are there angry ghosts? " + areAngryGhosts());
+        System.out.println(getNumGhosts(Sprite.STATUS_SCARED) + " scared; are there scared ghosts? " + areScaredGhosts());
+        System.out.println(getNumGhosts(Sprite.STATUS_EATEN) + " eaten; are there eaten ghosts? " + areEatenGhosts() + "\n");
         System.out.println();
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package pacman.model;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A fast, seedable and splittable random number generator for one game.
+  *
+  * <p>Each game model owns one of these, and hands each of its moving sprites a
+  * generator split off from it, which their strategies roll their dice with.
+  * Unlike Math.random(), which every thread in the JVM shares, no two games ever
+  * touch the same generator, and a game played again from the same seed with the
+  * same player input makes exactly the same random choices.
+  *
+  * <p>The algorithm is SplitMix64 (as in java.util.SplittableRandom), which is
+  * not safe to use from more than one thread at once; but unlike SplittableRandom,
+  * these generators are serializable, so their state goes into keyframes.
+  */
+public class GameRandom implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	// makes the seeds of generators created at the same instant differ
+	private static final AtomicLong ourSeedUniquifier = new AtomicLong(System.nanoTime());
+
+	private long mySeed;
+	private long myGamma;  // odd
+
+	/** Constructs a new generator with a seed that is different every time. */
+	public GameRandom() {
+		this(newSeed());
+	}
+
+	/** Constructs a new generator with the given seed. */
+	public GameRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/** Constructs a new generator with the given seed and gamma. */
+	private GameRandom(long seed, long gamma) {
+		mySeed = seed;
+		myGamma = gamma;
+	}
+
+	/** Returns a seed that is unlikely to ever have been returned before. */
+	public static long newSeed() {
+		return mix64(ourSeedUniquifier.addAndGet(2 * GOLDEN_GAMMA) ^ System.nanoTime());
+	}
+
+	/** Returns a new generator split off from this one, whose numbers are independent
+	  * of this one's.  Splitting advances this generator.
+	  */
+	public GameRandom split() {
+		return new GameRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/** Returns a random long. */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/** Returns a random int between 0 (inclusive) and the given bound (exclusive). */
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0)
+			return r & m;
+
+		// reject the few values that would make low numbers likelier
+		for (int u = r >>> 1;  u + m - (r = u % bound) < 0;  u = mix32(nextSeed()) >>> 1)
+			;
+		return r;
+	}
+
+	/** Returns a random double between 0.0 (inclusive) and 1.0 (exclusive). */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/** Returns true the given percentage of the time. */
+	public boolean nextPercent(int percentage) {
+		return nextInt(100) < percentage;
+	}
+
+	/** Advances and returns this generator's seed. */
+	private long nextSeed() {
+		return mySeed += myGamma;
+	}
+
+	/** Returns the 64-bit hash of the given value (Stafford's variant 13). */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/** Returns the 32-bit hash of the given value. */
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/** Returns an odd gamma made from the given value, with enough bits flipped
+	  * between neighbors to give good numbers.
+	  */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24)  ?  z ^ 0xaaaaaaaaaaaaaaaaL  :  z;
+	}
+}
@@ -0,0 +1,39 @@
+package pacman.model;
+
+/** A snapshot of the whole state of a game at one tick, from which the game can be
+  * picked up again later (see GameModel.createKeyframe and restoreKeyframe).
+  *
+  * <p>The state is kept serialized, so that a keyframe stays the same no matter what
+  * the game goes on to do after it was taken, and so that it can be restored any
+  * number of times.
+  */
+public class Keyframe {
+	private long myTick;
+	private byte[] myState;
+
+	/** Constructs a new keyframe of the given serialized state taken at the given tick. */
+	Keyframe(long tick, byte[] state) {
+		myTick = tick;
+		myState = state;
+	}
+
+	/** Returns the tick at which this keyframe was taken. */
+	public long getTick() {
+		return myTick;
+	}
+
+	/** Returns the size of this keyframe's saved state in bytes. */
+	public int getSize() {
+		return myState.length;
+	}
+
+	/** Returns this keyframe's serialized state. */
+	byte[] getState() {
+		return myState;
+	}
+
+	/** Returns a string representation of this keyframe. */
+	public String toString() {
+		return "Keyframe(tick=" + myTick + ", " + myState.length + " bytes)";
+	}
+}
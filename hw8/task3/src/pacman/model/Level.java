@@ -5,38 +5,135 @@ import pacman.utility.Utility;
 import java.io.*;
 import java.util.*;
 
-/** Represents a level in the game, with its walls, dots, and pellets. */
-public class Level {
+/** Represents a level in the game, with its walls, dots, and pellets.
+  *
+  * <p>A level keeps one byte per grid square rather than a sprite: the square's
+  * code from the level's template (see LevelTemplate) plus a few bits of status,
+  * such as whether its dot has been eaten.  Sprites are only made for the squares
+  * when something asks for one with getGridCell.
+  */
+public class Level implements Serializable {
+	private static final long serialVersionUID = 0;
+
 	/** Size of one level grid square in pixels. */
 	public static final int GRID_SIZE  =  8;
-	private static final int VISITED   =  0;
-	private static final int UNVISITED = -1;
-//	private static final int WALL      = -2;
 
-	/** A constant empty level used to reduce object construction. */
-	public static final Level EMPTY_LEVEL = new Level("empty", 28, 31);
+	private static final LevelTemplate EMPTY_TEMPLATE = LevelTemplate.createEmpty("empty", 28, 31);
+
+	/** Status bits kept in each cell along with its template code.  Whether a dot
+	  * or pellet has been eaten is kept in myDotBits instead.
+	  */
+	private static final int CODE_MASK = 0x07;
+	private static final int HIDDEN    = 0x08;  // the pellet has blinked off
+	private static final int OVERLAY   = 0x10;  // a sprite put there by setGridCell is in myOverlays
+
+	/** How many of the squares last changed are kept for getChangedSquares. */
+	public static final int MAX_CHANGES = 64;
+
+	/** Dot events, each fired once per regenerate(): bits of myDotEventsFired. */
+	private static final int FIRED_HALF = 1, FIRED_THREE_QUARTERS = 2, FIRED_CLEARED = 4;
 
-	private String myBuffer = "";
+	/** How far a dot is from the top-left corner of its grid square. */
+	private static final int DOT_OFFSET = (GRID_SIZE - Dot.DOT_SIZE) / 2;
+
+	private LevelTemplate myTemplate;
 	private String myName;
-	public Sprite[][] myMap;
 	private Object myType;
+	private int myGridWidth;
+	private int myGridHeight;
+	private byte[] myCells;  // code and status bits of each grid square, numbered x * height + y
+	private Map<Integer, Sprite> myOverlays = null;  // sprites set on squares that have no code of their own
 	private int myNumDots;
 	private int myNumTotalDots;
+	private long myDotHash;  // XOR of the StateHash.cell() of every uneaten dot and pellet
+	private long[] myDotBits;  // one bit per square, numbered as myCells, set for each uneaten dot and pellet
+	private int myDotEventsFired;
+
+	/** The last squares changed, in a ring, for views that only redraw what changed. */
+	private int[] myChangedSquares = new int[MAX_CHANGES];
+	private long myNumChanges = 0;
+	private long myFirstListedChange = 0;  // changes before this one can't be listed
+
+	/** One bit per grid square, numbered x * height + y: set in myWallBits where
+	  * there is a wall, in myObstacleBits where there is a wall or a gate, and in
+	  * myTunnelBits where there is a tunnel.
+	  */
+	private long[] myWallBits;
+	private long[] myObstacleBits;
+	private long[] myTunnelBits;
+
+	/** For each grid square, the number of the first square of the straight run of
+	  * open squares it is in, down its column or along its row, or -1 if it is a wall
+	  * or gate.  Two squares in the same column can see each other if their column
+	  * runs are the same, and likewise for rows.  Built when first needed and thrown
+	  * away when the walls change.
+	  */
+	private transient int[] myColumnRuns = null;
+	private transient int[] myRowRuns = null;
 
-	/** Constructs a new level with the given name and grid size.  Not called externally;
-	  * instead generateLevel(InputStream) is used.
+	/** Shortest distances between squares, built when first asked for; one table
+	  * with gates closed and one with them open.
 	  */
-	private Level(String name, int gx, int gy) {
-		this(name, gx, gy, GameModel.Type.PACMAN);
-	}
+	private transient DistanceTable myGateDistances = null;
+	private transient DistanceTable myWallDistances = null;
 
-	private Level(String name, int gx, int gy, GameModel.Type type) {
-		myName = name;
-		myType = type;
-		myMap = new Sprite[gx][gy];
-		for (int x = 0;  x < gx;  x++)
-		for (int y = 0;  y < gy;  y++)
-			myMap[x][y] = Sprite.EMPTY;
+	/** Distances to whatever square the ghosts last chased, for levels too large
+	  * for distance tables; every ghost after the same square in a tick shares one.
+	  */
+	private transient FlowField myGateField = null;
+	private transient FlowField myWallField = null;
+
+	/** The clusters very large levels are cut into for planning long paths; built
+	  * when first asked for and patched up cluster by cluster as walls change.
+	  */
+	private transient ClusterMap myClusterMap = null;
+
+	/** Paths the ghosts have searched for on this level, kept until the walls change. */
+	private PathCache myPathCache = null;
+	private boolean myIsTooLargeForDistances = false;
+	private boolean myHaveObstaclesChanged = false;  // since regenerate()
+	private int myNumLayoutChanges = 0;
+
+	/** Where the model playing this level records its metrics; may be null. */
+	private transient Metrics myMetrics = null;
+
+	/** The sprites getGridCell hands out, one of each kind, moved to whichever square was asked for. */
+	private transient Wall myWallView = null;
+	private transient Gate myGateView = null;
+	private transient Dot myDotView = null;
+	private transient PowerPellet myPelletView = null;
+	private transient Tunnel myTunnelView = null;
+
+	/** Constructs a new level from the given template, with all its dots uneaten. */
+	public Level(LevelTemplate template) {
+		myTemplate = template;
+		myName = template.getName();
+		myType = template.getType();
+		myGridWidth = template.getWidth();
+		myGridHeight = template.getHeight();
+		myCells = new byte[myGridWidth * myGridHeight];
+
+		myWallBits = new long[(myCells.length + 63) / 64];
+		myObstacleBits = new long[myWallBits.length];
+		myDotBits = new long[myWallBits.length];
+		myTunnelBits = new long[myWallBits.length];
+		myTemplate.copyBits(myWallBits, myObstacleBits);
+		regenerate();
+	}
+
+	/** Returns a new, uneaten dot or pellet for the given code at the given grid square. */
+	private static EdibleSprite createEdible(int code, int x, int y) {
+		if (code == LevelTemplate.DOT)
+			return new Dot(x * GRID_SIZE + DOT_OFFSET, y * GRID_SIZE + DOT_OFFSET);
+		else
+			return new PowerPellet(x * GRID_SIZE, y * GRID_SIZE);
+	}
+
+	/** Returns a new empty level, used when no game is being played.  Each game model
+	  * needs its own, since game-over screens write words onto it.
+	  */
+	public static Level createEmptyLevel() {
+		return new Level(EMPTY_TEMPLATE);
 	}
 
 	/** Returns a level whose grid data is taken from text in the given input stream. */
@@ -44,107 +141,94 @@ public class Level {
 	    return generateLevel(is, GameModel.Type.PACMAN);
 	}
 
+	/** Returns a level of the given type of game whose grid data is taken from text in
+	  * the given input stream (see LevelTemplate.compile).
+	  */
 	public static Level generateLevel(InputStream is, GameModel.Type type) {
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-			StringTokenizer st = new StringTokenizer(reader.readLine());
-			String name = st.nextToken();
-			int numCols = Integer.parseInt(st.nextToken());
-			int numRows = Integer.parseInt(st.nextToken());
-
-			Level lev = new Level(name, numCols, numRows, type);
-			while (reader.ready())
-				lev.myBuffer += reader.readLine() + "\n";
-
-//			lev.regenerate();
-			return lev;
+			return new Level(LevelTemplate.compile(is, type));
 		} catch (IOException ioe) {
 			throw new RuntimeException("Could not read level: " + ioe);
 		}
 	}
 
 	/** Refreshes all objects in the given level, restoring its dots and pellets
-	  * to their original state.
+	  * to their original state.  This is a copy of the template's cell codes,
+	  * which wipes out the status bits, and of its dot bits, so it costs next to nothing.
 	  */
 	public void regenerate() {
-		List<String> lines = new ArrayList<String>();
-		try {
-			BufferedReader input = new BufferedReader(new InputStreamReader(getStream()));
-			while (input.ready()) {
-				String line = input.readLine();
-				if (line != null  &&  !line.equals(""))
-					lines.add(line);
-			}
-		} catch (IOException ioe) {
-			throw new RuntimeException("Error regenerating level: " + ioe);
+		myTemplate.copyCells(myCells);
+		myTemplate.copyDotBits(myDotBits);
+		myTemplate.copyTunnelBits(myTunnelBits);
+		myOverlays = null;
+
+		myNumDots = myTemplate.getNumDots();
+		myNumTotalDots = myNumDots;
+		myDotHash = myTemplate.getDotHash();
+		myDotEventsFired = 0;
+
+		// every square may have changed
+		myNumChanges++;
+		myFirstListedChange = myNumChanges;
+
+		// the distance tables only need throwing away if someone changed the walls
+		if (myHaveObstaclesChanged) {
+			myTemplate.copyBits(myWallBits, myObstacleBits);
+			myColumnRuns = null;
+			myRowRuns = null;
+			myGateDistances = null;
+			myWallDistances = null;
+			myGateField = null;
+			myWallField = null;
+			myClusterMap = null;
+			if (myPathCache != null)
+				myPathCache.clear();
+			myIsTooLargeForDistances = false;
+			myHaveObstaclesChanged = false;
+			myNumLayoutChanges++;
 		}
 
-		int w = getGridWidth();
-		int h = getGridHeight();
+		buildSearchCaches();
+	}
 
-		if (lines.size() == 0) {
-			// empty level; wipe it
-			for (int y = 0;  y < h;  y++)
-    		for (int x = 0;  x < w;  x++)
-				myMap[x][y] = Sprite.EMPTY;
-			return;
-		}
+	/** Reads a level saved in a keyframe, and works out what it doesn't save. */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buildSearchCaches();
+	}
 
-		char curr = '\0';
-		int gridx = 0;
-		int gridy = 0;
-		for (int y = 0;  y < h;  y++) {
-			String line = lines.get(y);
-			for (int x = 0;  x < w;  x++) {
-				curr = line.charAt(x);
-				gridx = x * GRID_SIZE;
-				gridy = y * GRID_SIZE;
-
-				// non-moving sprites
-				if (curr == 'X') {
-					// Wall
-					if (!(myMap[x][y].type == Sprite.WALL))
-						myMap[x][y] = new Wall(gridx, gridy);
-				} else if (curr == '=') {
-					// Ghost gate
-					if (!(myMap[x][y].type == Sprite.GATE))
-						myMap[x][y] = new Gate(gridx, gridy);
-				} else if (curr == '.') {
-					// Dot
-					if (!(myMap[x][y].type == Sprite.DOT)) {
-						myMap[x][y] = new Dot(gridx + (GRID_SIZE - Dot.DOT_SIZE) / 2,
-						                      gridy + (GRID_SIZE - Dot.DOT_SIZE) / 2);
-					} else {
-						myMap[x][y].setStatus(Sprite.STATUS_NORMAL);
-					}
-					myNumDots++;
-					myNumTotalDots++;
-				} else if (curr == 'O') {
-					// Power pellet
-					if (!(myMap[x][y].type == Sprite.POWERPELLET)) {
-						myMap[x][y] = new PowerPellet(gridx, gridy);
-					} else {
-						myMap[x][y].setStatus(Sprite.STATUS_NORMAL);
-					}
-					myNumDots++;
-					myNumTotalDots++;
-				} else if (curr == 'T') {
-					if (!(myMap[x][y].type == Sprite.TUNNEL))
-						myMap[x][y] = new Tunnel(gridx, gridy);
-				} else {
-					myMap[x][y] = Sprite.EMPTY;
-				}
-			}
-		}
+	/** Works out what the ghosts' path searches need of this level's walls: its distance
+	  * tables, and a very large level's clusters, which take far longer to work out than
+	  * a tick allows.  Done now, rather than in the middle of the first ghost's move.
+	  */
+	private void buildSearchCaches() {
+		getDistanceTable(true);
+		getDistanceTable(false);
+		getClusterMap();
+	}
+
+	/** Sets the wall, obstacle and tunnel bits of the given grid square for the given code. */
+	private void setBits(int square, int code) {
+		long bit = 1L << (square & 63);
+		if (code == LevelTemplate.TUNNEL)
+			myTunnelBits[square >> 6] |= bit;
+		else
+			myTunnelBits[square >> 6] &= ~bit;
+
+		if (code == LevelTemplate.WALL)
+			myWallBits[square >> 6] |= bit;
+		else
+			myWallBits[square >> 6] &= ~bit;
 
-		// analyze each wall and what it should be shaped like when I
-		// draw it (round edges, etc.)
-		setWallHexValues();
+		if (code == LevelTemplate.WALL  ||  code == LevelTemplate.GATE)
+			myObstacleBits[square >> 6] |= bit;
+		else
+			myObstacleBits[square >> 6] &= ~bit;
 	}
 
-	/** Returns this level's input stream. */
-	public final InputStream getStream() {
-		return new ByteArrayInputStream(myBuffer.getBytes());
+	/** Returns the compiled template this level was made from. */
+	public final LevelTemplate getTemplate() {
+		return myTemplate;
 	}
 
 	/** Returns this level's name. */
@@ -156,215 +240,310 @@ public class Level {
 		return myType;
 	}
 
-	/** Used to recursively tag the walls in this level to make them look right. */
-	private void checkWallType(String[][] typeMap, int x, int y, String tainter) {
+	/** Returns the Sprite at the given grid cell.
+	  *
+	  * <p>Walls, gates, dots, pellets and tunnels are not kept as sprites, so the one
+	  * returned for them is shared by every square of its kind and is only good until
+	  * the next call; draw it or look at it, but don't hold on to it or change it.
+	  */
+	public final Sprite getGridCell(int x, int y) {
 		if (!isOnMap(x, y))
-			return;
-
-		if (!(myMap[x][y].type == Sprite.WALL))
-			return;
+			throw new IllegalArgumentException("invalid x, y");
 
-		if (typeMap[x][y].equals(tainter))
-			// already tainted this square; abort
-			return;
+		int square = x * myGridHeight + y;
+		int cell = myCells[square];
+		if ((cell & OVERLAY) != 0)
+			return myOverlays.get(square);
+
+		if (myWallView == null) {
+			myWallView = new Wall(0, 0);
+			myGateView = new Gate(0, 0);
+			myDotView = new Dot(0, 0);
+			myPelletView = new PowerPellet(0, 0);
+			myTunnelView = new Tunnel(0, 0);
+		}
 
-		// taint all touching cells
-		if (true // isOnBorder(x, y)
-			||  isOnMap(x-1, y)  &&  typeMap[x-1][y].equals(tainter)
-			||  isOnMap(x+1, y)  &&  typeMap[x+1][y].equals(tainter)
-			||  isOnMap(x, y-1)  &&  typeMap[x][y-1].equals(tainter)
-			||  isOnMap(x, y+1)  &&  typeMap[x][y+1].equals(tainter))
-		{
-			typeMap[x][y] = tainter;
-			checkWallType(typeMap, x-1, y, tainter);
-			checkWallType(typeMap, x+1, y, tainter);
-			checkWallType(typeMap, x, y-1, tainter);
-			checkWallType(typeMap, x, y+1, tainter);
+		int gridx = x * GRID_SIZE;
+		int gridy = y * GRID_SIZE;
+		switch (cell & CODE_MASK) {
+		case LevelTemplate.WALL:
+		case LevelTemplate.GATE:
+			ObstacleSprite obst = ((cell & CODE_MASK) == LevelTemplate.WALL)  ?  myWallView  :  myGateView;
+			obst.setPosition(gridx, gridy);
+			obst.setHex(myTemplate.getHex(x, y));
+			obst.setImageName(myTemplate.getImageName(x, y));
+			return obst;
+		case LevelTemplate.DOT:
+			myDotView.setPosition(gridx + DOT_OFFSET, gridy + DOT_OFFSET);
+			myDotView.setStatus(hasDot(square)  ?  Sprite.STATUS_NORMAL  :  Sprite.STATUS_EATEN);
+			return myDotView;
+		case LevelTemplate.PELLET:
+			myPelletView.setPosition(gridx, gridy);
+			myPelletView.setStatus(hasDot(square)  ?  Sprite.STATUS_NORMAL  :  Sprite.STATUS_EATEN);
+			myPelletView.setVisible(hasDot(square)  &&  (cell & HIDDEN) == 0);
+			return myPelletView;
+		case LevelTemplate.TUNNEL:
+			myTunnelView.setPosition(gridx, gridy);
+			return myTunnelView;
+		default:
+			return Sprite.EMPTY;
 		}
 	}
 
-	/** Returns which wall image should be used.  Nasty. */
-	private int getWallHex(int[][] weightMap, int x, int y) {
-		/*
-		 * the wall regions:
-		 *  1 2
-		 *  4 8
-		 * deciding which image to use is done by adding them and
-		 * getting the hex value string.
-		 *
-		 * for example: if the following regions are painted,
-		 * 1
-		 * 4 8
-		 *
-		 * then the hex value is 1 + 4 + 8 = 13, or D in hex.
-		 */
-
-		int hexValue = 15;
-
-		// tests to help us know what kind of wall this is
-		boolean pathToLeft  = isOnMap(x-1, y)    &&  weightMap[x-1][y]     != UNVISITED;
-		boolean pathToRight = isOnMap(x+1, y)    &&  weightMap[x+1][y]     != UNVISITED;
-		boolean pathAbove   = isOnMap(x, y-1)    &&  weightMap[x][y-1]     != UNVISITED;
-		boolean pathBelow   = isOnMap(x, y+1)    &&  weightMap[x][y+1]     != UNVISITED;
-		boolean pathToUL    = isOnMap(x-1, y-1)  &&  weightMap[x-1][y-1]   != UNVISITED;
-		boolean pathToUR    = isOnMap(x+1, y-1)  &&  weightMap[x+1][y-1]   != UNVISITED;
-		boolean pathToLL    = isOnMap(x-1, y+1)  &&  weightMap[x-1][y+1]   != UNVISITED;
-		boolean pathToLR    = isOnMap(x+1, y+1)  &&  weightMap[x+1][y+1]   != UNVISITED;
-
-		boolean onLeftBorder    = x == 0;
-		boolean onRightBorder   = x == getGridWidth() - 1;
-		boolean onTopBorder     = y == 0;
-		boolean onBottomBorder  = y == getGridHeight() - 1;
-		// boolean onBorder        = onLeftBorder  ||  onRightBorder  ||  onTopBorder  ||  onBottomBorder;
-
-		// only trim L/R if there is a
-		if (!onLeftBorder  &&  pathToLeft) {
-			// movable path to left; cut the left side
-			hexValue &= ~1;
-			hexValue &= ~4;
-		}
+	/** Returns the type (Sprite.WALL, Sprite.DOT and so on) of the sprite at the given
+	  * grid cell, without making one.  Empty squares are Sprite.EMPTYSQUARE.
+	  */
+	public final int getCellType(int x, int y) {
+		if (!isOnMap(x, y))
+			throw new IllegalArgumentException("invalid x, y");
 
-		if (!onRightBorder  &&  pathToRight) {
-			// path to right; cut right
-			hexValue &= ~2;
-			hexValue &= ~8;
+		int square = x * myGridHeight + y;
+		int cell = myCells[square];
+		if ((cell & OVERLAY) != 0)
+			return myOverlays.get(square).type;
+
+		switch (cell & CODE_MASK) {
+		case LevelTemplate.WALL:    return Sprite.WALL;
+		case LevelTemplate.GATE:    return Sprite.GATE;
+		case LevelTemplate.DOT:     return Sprite.DOT;
+		case LevelTemplate.PELLET:  return Sprite.POWERPELLET;
+		case LevelTemplate.TUNNEL:  return Sprite.TUNNEL;
+		default:                    return Sprite.EMPTYSQUARE;
 		}
+	}
 
-		if (!onTopBorder  &&  pathAbove) {
-			// path above; cut top
-			hexValue &= ~1;
-			hexValue &= ~2;
-		}
+	/** Returns whether there is a wall at the given grid cell. */
+	public final boolean isWall(int x, int y) {
+		if (!isOnMap(x, y))
+			throw new IllegalArgumentException("invalid x, y");
+		int square = x * myGridHeight + y;
+		return (myWallBits[square >> 6] & (1L << (square & 63))) != 0;
+	}
 
-		if (!onBottomBorder  &&  pathBelow) {
-			// path below; cut bottom
-			hexValue &= ~4;
-			hexValue &= ~8;
-		}
+	/** Returns whether there is an obstacle (wall or gate) at the given grid cell. */
+	public final boolean isObstacle(int x, int y) {
+		if (!isOnMap(x, y))
+			throw new IllegalArgumentException("invalid x, y");
+		int square = x * myGridHeight + y;
+		return (myObstacleBits[square >> 6] & (1L << (square & 63))) != 0;
+	}
 
+	/** Sets the given grid cell to be the given Sprite.  Dots, pellets and empty
+	  * squares go into the cell's code; anything else is kept as it is until the
+	  * level is regenerated.
+	  */
+	public final void setGridCell(int x, int y, Sprite value) {
+		if (!isOnMap(x, y))
+			throw new IllegalArgumentException("invalid x, y");
 
-		if (hexValue == 15) {
-			// still nothing trimmed; try diagonals to round edges
-			if (pathToUL)  hexValue &= ~1;
-			if (pathToUR)  hexValue &= ~2;
-			if (pathToLL)  hexValue &= ~4;
-			if (pathToLR)  hexValue &= ~8;
+		int square = x * myGridHeight + y;
+		int code;
+		boolean isOverlay = false;
+		boolean isDot = false;
+		if (value.type == Sprite.EMPTYSQUARE)
+			code = LevelTemplate.EMPTY;
+		else if (value.type == Sprite.DOT  ||  value.type == Sprite.POWERPELLET) {
+			code = (value.type == Sprite.DOT)  ?  LevelTemplate.DOT  :  LevelTemplate.PELLET;
+			isDot = !((EdibleSprite)value).isEaten();
+			if (isDot  &&  !value.isVisible)
+				code |= HIDDEN;
+		} else {
+			code = (value.type == Sprite.WALL)    ?  LevelTemplate.WALL
+			     : (value.type == Sprite.GATE)    ?  LevelTemplate.GATE
+			     : (value.type == Sprite.TUNNEL)  ?  LevelTemplate.TUNNEL
+			     :  LevelTemplate.EMPTY;
+			isOverlay = true;
 		}
 
-		if (!(0 <= hexValue  &&  hexValue <= 15))
-			throw new RuntimeException("invalid hex value; this should not happen");
-		return hexValue;
-	}
+		boolean wasObstacle = (myObstacleBits[square >> 6] & (1L << (square & 63))) != 0;
+		int newCode = code & CODE_MASK;
+		if (wasObstacle  ||  newCode == LevelTemplate.WALL  ||  newCode == LevelTemplate.GATE) {
+			myHaveObstaclesChanged = true;
+			myNumLayoutChanges++;
+			myColumnRuns = null;
+			myRowRuns = null;
+			myGateDistances = null;
+			myWallDistances = null;
+			myGateField = null;
+			myWallField = null;
+			myIsTooLargeForDistances = false;
+			if (myClusterMap != null)
+				myClusterMap.markChanged(x, y);
+			if (myPathCache != null)
+				myPathCache.clear();
+		}
 
-	/** Maps the hex types of all walls in this level. */
-	private int[][] mapOut() {
-		int gx = 0;
-		int gy = 0;
-		while (!(myMap[gx][gy].type == Sprite.EMPTYSQUARE)) {
-			gx++;
-			gy++;
+		if (isOverlay) {
+			if (myOverlays == null)
+				myOverlays = new HashMap<Integer, Sprite>();
+			myOverlays.put(square, value);
+			code |= OVERLAY;
+		} else if ((myCells[square] & OVERLAY) != 0)
+			myOverlays.remove(square);
+
+		myCells[square] = (byte)code;
+		if (isDot)
+			myDotBits[square >> 6] |= 1L << (square & 63);
+		else
+			myDotBits[square >> 6] &= ~(1L << (square & 63));
+		setBits(square, newCode);
+		markChanged(square);
+	}
+
+	/** Returns whether there is an uneaten dot or pellet in the given grid square. */
+	private boolean hasDot(int square) {
+		return (myDotBits[square >> 6] & (1L << (square & 63))) != 0;
+	}
+
+	/** Returns whether any of the given bits from one square to another are set. */
+	private static boolean hasAnyBits(long[] bits, int fromSquare, int toSquare) {
+		for (int word = fromSquare >> 6;  word <= toSquare >> 6;  word++) {
+			long mask = -1L;
+			if (word == fromSquare >> 6)
+				mask &= -1L << (fromSquare & 63);
+			if (word == toSquare >> 6)
+				mask &= -1L >>> (63 - (toSquare & 63));
+			if ((bits[word] & mask) != 0)
+				return true;
 		}
-		int gridWidth = getGridWidth();
-		int gridHeight = getGridHeight();
-		int[][] weightMap = new int[gridWidth][gridHeight];
+		return false;
+	}
 
-		for (int y = 0;  y < gridHeight;  y++)
-		for (int x = 0 ; x < gridWidth;  x++)
-			weightMap[x][y] = UNVISITED;
+	/** Adds the given square to the list of those changed. */
+	private void markChanged(int square) {
+		myChangedSquares[(int)(myNumChanges % MAX_CHANGES)] = square;
+		myNumChanges++;
+	}
 
-		weigh(weightMap, gx, gy);
-		return weightMap;
+	/** Returns how many changes have been made to this level's squares so far:
+	  * dots eaten, pellets blinking, and squares set.  A view can remember this
+	  * and later ask getChangedSquares what has changed since.
+	  */
+	public final long getNumChanges() {
+		return myNumChanges;
 	}
 
-	/** Tags the given square as visitable or not visitable. */
-	private void weigh(int[][] weightMap, int x, int y) {
-		// exit if this isn't a valid square
-		if (!isOnMap(x, y)  ||  myMap[x][y] instanceof ObstacleSprite)
-			return;
+	/** Puts the squares changed since the given number of changes (see getNumChanges)
+	  * into the given array, numbered x * height + y, and returns how many there were.
+	  * Returns -1 if they can't all be listed, because there were more than will fit
+	  * (or than MAX_CHANGES), or because the whole level was regenerated; then every
+	  * square should be treated as changed.
+	  */
+	public final int getChangedSquares(long since, int[] squares) {
+		long count = myNumChanges - since;
+		if (since < myFirstListedChange  ||  count > MAX_CHANGES  ||  count > squares.length)
+			return -1;
+		for (int i = 0;  i < count;  i++)
+			squares[i] = myChangedSquares[(int)((since + i) % MAX_CHANGES)];
+		return (int)count;
+	}
+
+	/** Returns a table of the shortest distances between this level's squares, or
+	  * null if the level is too large to have one.  The table is looked up (or built)
+	  * the first time it is asked for and kept until this level's walls or gates change.
+	  * @param gatesBlock whether ghost gates should count as walls (they do for
+	  *        everyone but eaten and caged ghosts).
+	  */
+	public final DistanceTable getDistanceTable(boolean gatesBlock) {
+		DistanceTable table = gatesBlock  ?  myGateDistances  :  myWallDistances;
+		if (table == null  &&  !myIsTooLargeForDistances) {
+			// counting the closed squares is far cheaper than finding out by trying
+			int numClosed = 0;
+			for (long bits : gatesBlock  ?  myObstacleBits  :  myWallBits)
+				numClosed += Long.bitCount(bits);
+			if (myGridWidth * myGridHeight - numClosed > DistanceTable.MAX_OPEN_SQUARES) {
+				myIsTooLargeForDistances = true;
+				return null;
+			}
+
+			try {
+				table = DistanceTable.getTable(this, gatesBlock);
+			} catch (IllegalArgumentException iae) {
+				myIsTooLargeForDistances = true;
+				return null;
+			}
 
-		else if (weightMap[x][y] == UNVISITED) {
-			weightMap[x][y] = VISITED;
-			weigh(weightMap, x + 1, y);
-			weigh(weightMap, x - 1, y);
-			weigh(weightMap, x,     y + 1);
-			weigh(weightMap, x,     y - 1);
+			if (gatesBlock)
+				myGateDistances = table;
+			else
+				myWallDistances = table;
 		}
+		return table;
 	}
 
-	/** Sets all wall hex values so that the views can draw the walls accordingly. */
-	private void setWallHexValues() {
-		// steal the smart strategy's algorithm so that we can use it to
-		// map out every visitable square--so we know better how to draw walls
-		int[][] weightMap = mapOut();
-
-		// strat.printWeightMap(weightMap);
-
-		// figure out which cells are walls, for starters
-		String[][] typeMap = new String[weightMap.length][weightMap[0].length];
-		int gridWidth = getGridWidth();
-		int gridHeight = getGridHeight();
-		for (int x = 0;  x < gridWidth;  x++)
-		for (int y = 0;  y < gridHeight;  y++)
-			if (myMap[x][y].type == Sprite.WALL)
-				typeMap[x][y] = "wall";
-			else if (myMap[x][y].type == Sprite.GATE)
-				typeMap[x][y] = "gate";
+	/** Returns the distances from every square of this level to the given grid square,
+	  * or null if it is off the map.  The field is pointed at a new target only when
+	  * asked for a different square from last time, so all the ghosts chasing Pac-Man
+	  * share one search per square he moves; it is kept until this level's walls or
+	  * gates change.
+	  * @param gatesBlock whether ghost gates should count as walls.
+	  */
+	public final FlowField getFlowField(int targetX, int targetY, boolean gatesBlock) {
+		if (!isOnMap(targetX, targetY))
+			return null;
+
+		FlowField field = gatesBlock  ?  myGateField  :  myWallField;
+		if (field == null) {
+			field = new FlowField(gatesBlock  ?  myObstacleBits  :  myWallBits, myGridWidth, myGridHeight);
+			if (gatesBlock)
+				myGateField = field;
 			else
-				typeMap[x][y] = " ";
-
-		// tag the border walls
-		for (int x = 0;  x < gridWidth;  x++)
-		for (int y = 0;  y < gridHeight;  y++)
-			if (isOnBorder(x, y)  &&  myMap[x][y].type == Sprite.WALL  &&  !typeMap[x][y].equals("border"))
-				checkWallType(typeMap, x, y, "border");
-
-		// find walls around gates and taint them
-		for (int x = 0;  x < gridWidth;  x++)
-		for (int y = 0;  y < gridHeight;  y++)
-			if (myMap[x][y].type == Sprite.GATE) {
-				checkWallType(typeMap, x-1, y, "cage");
-				checkWallType(typeMap, x+1, y, "cage");
-				checkWallType(typeMap, x, y-1, "cage");
-				checkWallType(typeMap, x, y+1, "cage");
-			}
+				myWallField = field;
+		}
 
-		// now append each square's hex type
-		for (int x = 0;  x < gridWidth;  x++)
-		for (int y = 0;  y < gridHeight;  y++) {
-			if (myMap[x][y] instanceof ObstacleSprite) {
-				// figure out which wall image to draw
-				ObstacleSprite obst = (ObstacleSprite)myMap[x][y];
-				obst.setHex(getWallHex(weightMap, x, y));
-				typeMap[x][y] += Integer.toHexString(obst.getHex());
-				obst.setImageName(typeMap[x][y]);
-			}
+		if (!field.isBuiltFor(targetX, targetY)) {
+			field.setTarget(targetX, targetY);
+			if (myMetrics != null)
+				myMetrics.count(Metrics.Counter.FLOW_FIELDS);
 		}
+		return field;
 	}
 
-	/** Returns this level's grid of squares. */
-	public final Sprite[][] getGrid() {
-		return myMap;
+	/** Returns this level's grid cut into clusters for planning paths across it, or
+	  * null if the level has fewer than ClusterMap.MIN_SQUARES grid squares.  Only the
+	  * clusters whose walls have changed since it was last asked for are worked out again.
+	  */
+	public final ClusterMap getClusterMap() {
+		if (myGridWidth * myGridHeight < ClusterMap.MIN_SQUARES)
+			return null;
+
+		if (myClusterMap == null)
+			myClusterMap = new ClusterMap(myWallBits, myGridWidth, myGridHeight);
+		myClusterMap.update();
+		return myClusterMap;
 	}
 
-	/** Returns the Sprite at the given grid cell. */
-	public final Sprite getGridCell(int x, int y) {
-		if (!isOnMap(x, y))
-			throw new IllegalArgumentException("invalid x, y");
-		return myMap[x][y];
+	/** Returns the cache of paths searched for on this level, which is emptied whenever
+	  * its walls or gates change.
+	  */
+	public final PathCache getPathCache() {
+		if (myPathCache == null)
+			myPathCache = new PathCache();
+		return myPathCache;
 	}
 
-	/** Sets the given grid cell to be the given Sprite. */
-	public final void setGridCell(int x, int y, Sprite value) {
-		if (!(0 <= x  &&  x <= getGridWidth())  ||  !(0 <= y  &&  y <= getGridHeight()))
-			throw new IllegalArgumentException("invalid x, y");
-		myMap[x][y] = value;
+	/** Returns the number of times this level's walls or gates have changed, so that
+	  * anything worked out from them can tell whether it is still good.
+	  */
+	public final int getNumLayoutChanges() {
+		return myNumLayoutChanges;
+	}
+
+	/** Returns the metrics registry of the model playing this level, or null if none. */
+	public final Metrics getMetrics() {
+		return myMetrics;
+	}
+
+	/** Sets the metrics registry in which strategies moving around this level count their work. */
+	public final void setMetrics(Metrics metrics) {
+		myMetrics = metrics;
 	}
 
 	/** Returns the height of the grid. */
-	public final int getGridHeight()   { return myMap == null ? 0 : myMap[0].length; }
+	public final int getGridHeight()   { return myGridHeight; }
 
 	/** Returns the width of the grid. */
-	public final int getGridWidth()    { return myMap == null ? 0 : myMap.length; }
+	public final int getGridWidth()    { return myGridWidth; }
 
 	/** Returns the height in pixels of the board. */
 	public final int getHeight()       { return getGridHeight() * GRID_SIZE; }
@@ -379,7 +558,7 @@ public class Level {
 
 	/** Returns whether the given x/y pair lies on the grid. */
 	public final boolean isOnMap(int gx, int gy) {
-		return 0 <= gx  &&  gx < myMap.length  &&  0 <= gy  &&  gy < myMap[0].length;
+		return 0 <= gx  &&  gx < myGridWidth  &&  0 <= gy  &&  gy < myGridHeight;
 	}
 
 	/** Returns whether the given x/y pixel is on the screen. */
@@ -395,12 +574,12 @@ public class Level {
 
 	/** Returns whether or not half of the board's dots have been eaten. */
 	public final boolean halfOfDotsAreEaten() {
-		return 2 * myNumDots == myNumTotalDots / 2 * 2;
+		return myNumTotalDots > 0  &&  myNumDots <= myNumTotalDots / 2;
 	}
 
 	/** Returns whether or not three quarters of the board's dots have been eaten. */
 	public final boolean threeQuartersOfDotsAreEaten() {
-		return 4 * myNumDots == myNumTotalDots / 4 * 4;
+		return myNumTotalDots > 0  &&  myNumDots <= myNumTotalDots / 4;
 	}
 
 	/** Returns how many walls neighbor the given grid square. */
@@ -409,7 +588,7 @@ public class Level {
 
 		for (int y = gy - 1;  y <= gy + 1;  y++)
 			for (int x = gx - 1;  x <= gx + 1;  x++)
-				if (isOnMap(x, y)  &&  getGridCell(x, y).type == Sprite.WALL)
+				if (isOnMap(x, y)  &&  isWall(x, y))
 					num++;
 
 		return num;
@@ -417,14 +596,12 @@ public class Level {
 
 	/** Prints the grid on the screen. */
 	public void printGrid() {
-		if (myMap == null)  { System.out.println("null");  return;  }
-
 		int gridWidth = getGridWidth();
 		int gridHeight = getGridHeight();
 		System.out.println(gridWidth + "\t" + gridHeight);
 		for (int y = 0;  y < gridHeight;  y++) {
 			for (int x = 0;  x < gridWidth;  x++)
-				System.out.print(myMap[x][y]);
+				System.out.print(getGridCell(x, y));
 			System.out.println();
 		}
 	}
@@ -450,11 +627,28 @@ public class Level {
 
 	/** Returns whether or not the given sprite can make the given move. */
 	public final boolean canMove(MovingSprite spr, Move mov) {
-		// try moving onto the square, and see if I collide with anything
-		Sprite.DUMMY.setOther(spr);
-		Sprite.DUMMY.go(mov);
-		Sprite.DUMMY.wrap(getWidth(), getHeight());
-		return !collidesWithWall(Sprite.DUMMY);
+		return canMove(spr, mov.dx, mov.dy);
+	}
+
+	/** Returns whether or not the given sprite can move the given number of pixels. */
+	private boolean canMove(MovingSprite spr, int dx, int dy) {
+		int w = spr.getWidth();
+		int h = spr.getHeight();
+		int x = spr.getX() + dx;
+		int y = spr.getY() + dy;
+
+		// wrap around the board the same way a motionless sprite would
+		if (x <= -w)
+			x = getWidth();
+		else if (x >= getWidth())
+			x = -w;
+
+		if (y <= -h)
+			y = getHeight() - 1;
+		else if (y >= getHeight())
+			y = -h;
+
+		return !hitsObstacle(spr, x, y, w, h);
 	}
 
 	/** Returns whether or not the given sprite may move in his current direction,
@@ -466,16 +660,16 @@ public class Level {
 	}
 
 	/** Returns whether the given Sprite may move down. */
-	public final boolean canMoveDown(MovingSprite spr)  { return canMove(spr, Move.DOWN.times(spr.getSpeed())); }
+	public final boolean canMoveDown(MovingSprite spr)  { return canMove(spr, 0, spr.getSpeed()); }
 
 	/** Returns whether the given Sprite may move left. */
-	public final boolean canMoveLeft(MovingSprite spr)  { return canMove(spr, Move.LEFT.times(spr.getSpeed())); }
+	public final boolean canMoveLeft(MovingSprite spr)  { return canMove(spr, -spr.getSpeed(), 0); }
 
 	/** Returns whether the given Sprite may move right. */
-	public final boolean canMoveRight(MovingSprite spr) { return canMove(spr, Move.RIGHT.times(spr.getSpeed())); }
+	public final boolean canMoveRight(MovingSprite spr) { return canMove(spr, spr.getSpeed(), 0); }
 
 	/** Returns whether the given Sprite may move up. */
-	public final boolean canMoveUp(MovingSprite spr)    { return canMove(spr, Move.UP.times(spr.getSpeed())); }
+	public final boolean canMoveUp(MovingSprite spr)    { return canMove(spr, 0, -spr.getSpeed()); }
 
 	/** Returns whether or not the given sprite can see the given other sprite. */
 	public final boolean canSee(Sprite spr, Sprite spr2) {
@@ -496,84 +690,86 @@ public class Level {
 		if (!isOnMap(sprx, spry)  ||  !(x == sprx  ||  y == spry))
 			// couldn't possibly see it; not on straight-line
 			return false;
-
+		if (x == sprx  &&  y == spry)
+			return true;
+
+		// every square from the sprite's up to, but not including, the one it is
+		// looking at must be open; that is, in the same run as the sprite's square
+		if (myColumnRuns == null)
+			buildRuns();
+		int from = sprx * myGridHeight + spry;
+		int[] runs;
 		if (x == sprx) {
-			// above/below me; check if I can see it
-			int increment = (y < spry)  ?  -1  :  1;
-			while (spry != y) {
-				if (getGridCell(sprx, spry) instanceof ObstacleSprite)
-					return false;
-				spry += increment;
-			}
+			// above/below me
+			runs = myColumnRuns;
+			y += (y < spry)  ?  1  :  -1;
+		} else {
+			// left/right from me
+			runs = myRowRuns;
+			x += (x < sprx)  ?  1  :  -1;
 		}
-		else if (y == spry) {
-			// left/right from me; check if I can see it
-			int increment = (x < sprx)  ?  -1  :  1;
-			while (sprx != x) {
-				if (getGridCell(sprx, spry) instanceof ObstacleSprite)
-					return false;
-				sprx += increment;
+		return runs[from] >= 0  &&  runs[from] == runs[x * myGridHeight + y];
+	}
+
+	/** Works out which straight runs of open squares each square is in (see myColumnRuns). */
+	private void buildRuns() {
+		int[] columnRuns = new int[myCells.length];
+		int[] rowRuns = new int[myCells.length];
+		for (int x = 0;  x < myGridWidth;  x++)
+		for (int y = 0;  y < myGridHeight;  y++) {
+			int square = x * myGridHeight + y;
+			if ((myObstacleBits[square >> 6] & (1L << (square & 63))) != 0) {
+				columnRuns[square] = -1;
+				rowRuns[square] = -1;
+			} else {
+				columnRuns[square] = (y > 0  &&  columnRuns[square - 1] >= 0)  ?  columnRuns[square - 1]  :  square;
+				rowRuns[square] = (x > 0  &&  rowRuns[square - myGridHeight] >= 0)  ?  rowRuns[square - myGridHeight]  :  square;
 			}
 		}
-
-		return true;
+		myRowRuns = rowRuns;
+		myColumnRuns = columnRuns;
 	}
 
 	/** Returns true if the given moving sprite collides with a wall. */
 	public final boolean collidesWithWall(MovingSprite spr) {
-		return collision(spr) != null;
+		MovingSprite sprCollide = spr;
+		if (spr.type == Sprite.DUMMYSPRITE)
+			spr = ((DummySprite)spr).getOther();
+		return hitsObstacle(spr, sprCollide.getX(), sprCollide.getY(), sprCollide.getWidth(), sprCollide.getHeight());
 	}
 
-	/** Returns the sprite, if any, that the given moving sprite has collided with. */
-	private Sprite collision(MovingSprite spr) {
-		MovingSprite sprCollide = spr;
+	/** Returns true if the given sprite would run into an obstacle with the given
+	  * pixel bounds.  Ghosts are stopped by walls, and ghosts that aren't eaten or
+	  * caged are also stopped by gates; pac-man and everyone else is stopped by
+	  * any obstacle (wall/gate).
+	  */
+	private boolean hitsObstacle(MovingSprite spr, int x, int y, int w, int h) {
+		long[] bits = myObstacleBits;
+		if (spr.type == Sprite.GHOST  &&  (((Ghost)spr).isEaten()  ||  ((Ghost)spr).isInCage()))
+			bits = myWallBits;
 
 		// since sprite may be between grid squares, inspect those
 		// immediately around it for accurate collision detection
-		if (spr.type == Sprite.DUMMYSPRITE) {
-			spr = ((DummySprite)spr).getOther();
-//			if (MOVE_DEBUG)  System.err.println("replacing dummy with a " + spr.getClass().getName());
-		}
-
-		int gridx = sprCollide.getGridX();
-		int gridy = sprCollide.getGridY();
-		boolean isValidSprite = false;
-		Sprite collider = null;
-		Ghost gh = null;
-
-		for (int x = gridx;  x <= gridx + 1;  x++)  // *** REMOVED gridx/y - 1
-		for (int y = gridy;  y <= gridy + 1;  y++) {
-			// eliminate non-collision cases
-			if (!isOnMap(x, y))
-				continue;
-
-			collider = getGridCell(x, y);
-			isValidSprite = collider != null  &&  collider != Sprite.EMPTY
-					&&  (collider.isVisible  ||  collider.type == Sprite.POWERPELLET);
+		int gridx = x / GRID_SIZE;
+		int gridy = y / GRID_SIZE;
+		int gridWidth = getGridWidth();
+		int gridHeight = getGridHeight();
 
-			if (!isValidSprite)
+		for (int cx = gridx;  cx <= gridx + 1;  cx++) {
+			if (cx < 0  ||  cx >= gridWidth  ||  x >= (cx + 1) * GRID_SIZE  ||  x + w <= cx * GRID_SIZE)
 				continue;
 
+			for (int cy = gridy;  cy <= gridy + 1;  cy++) {
+				if (cy < 0  ||  cy >= gridHeight  ||  y >= (cy + 1) * GRID_SIZE  ||  y + h <= cy * GRID_SIZE)
+					continue;
 
-			if (spr.type == Sprite.GHOST) {
-				gh = (Ghost)spr;
-
-				if (collider.type == Sprite.WALL  //    ||  gh.getStrategy() == null
-						||  (!(gh.isEaten()  ||  gh.isInCage())  &&  collider instanceof ObstacleSprite))
-					// ghost is stopped by walls, and non-(eaten/caged) ghosts are also stopped by gates
-					if (sprCollide.collidesWith(collider)) {
-						return collider;
-					}
-			} else {
-				// pac-man is stopped by any obstacle sprite (wall/gate)
-				if (collider instanceof ObstacleSprite  &&  sprCollide.collidesWith(collider)) {
-					return collider;
-				}
+				int square = cx * gridHeight + cy;
+				if ((bits[square >> 6] & (1L << (square & 63))) != 0)
+					return true;
 			}
 		}
 
-//		if (MOVE_DEBUG)  System.out.println("collidesWithWall: " + spr.getClass().getName() + " returning " + result);
-		return null;
+		return false;
 	}
 
 
@@ -582,49 +778,87 @@ public class Level {
 		if (pac == null)
 			return;
 
-		for (int x = pac.getGridX() - 1; x <= pac.getGridX() + 1;  x++)
-		for (int y = pac.getGridY() - 1;  y <= pac.getGridY() + 1;  y++) {
-			// collision detection on dots/pellets (if pac-man ate anything)
+		int gridy = pac.getGridY();
+		int fromy = Math.max(gridy - 1, 0);
+		int toy = Math.min(gridy + 1, myGridHeight - 1);
+		for (int x = pac.getGridX() - 1;  x <= pac.getGridX() + 1;  x++) {
+			// the three squares of each column are in a row in the dot bits, so one
+			// check (two if they straddle a word) rules out the column
+			if (x < 0  ||  x >= myGridWidth  ||  fromy > toy  ||  !hasAnyBits(myDotBits, x * myGridHeight + fromy, x * myGridHeight + toy))
+				continue;
 
-			// eliminate non-collision cases
-			boolean isValidSprite = isOnMap(x, y)
-				&&  myMap[x][y] != null
-				&&  myMap[x][y] != Sprite.EMPTY
-				&&  myMap[x][y] instanceof EdibleSprite
-				&&  (myMap[x][y].isVisible  ||  myMap[x][y].type == Sprite.POWERPELLET)
-				&&  pac.collidesWith(myMap[x][y]);
+			for (int y = fromy;  y <= toy;  y++) {
+				int square = x * myGridHeight + y;
+				if (hasDot(square))
+					checkDotEaten(model, pac, x, y);
+			}
+		}
+	}
 
-			if (!isValidSprite)
-				continue;
+	/** Sees whether the given Sprite has run into the uneaten dot or pellet in the given
+	  * grid square, notifying the given model and its listeners if so.
+	  */
+	private void checkDotEaten(GameModel model, PacMan pac, int x, int y) {
+		int square = x * myGridHeight + y;
+		int code = myCells[square] & CODE_MASK;
+		boolean isTouching = (code == LevelTemplate.DOT)
+			?  collides(pac, x * GRID_SIZE + DOT_OFFSET, y * GRID_SIZE + DOT_OFFSET, Dot.DOT_SIZE)
+			:  collides(pac, x * GRID_SIZE, y * GRID_SIZE, GRID_SIZE);
+		if (!isTouching)
+			return;
 
-			EdibleSprite edible = (EdibleSprite)myMap[x][y];
-			if (!edible.isEaten()) {
-				if (model.isInProgress())
-					model.addToScore(edible.getScore());
-				edible.setStatus(Sprite.STATUS_EATEN);
+		myDotBits[square >> 6] &= ~(1L << (square & 63));
+		myNumDots--;
+		myDotHash ^= StateHash.cell(x, y);
+		markChanged(square);
 
-				if (edible.type == Sprite.DOT  ||  edible.type == Sprite.POWERPELLET) {
-					myNumDots--;
+		// the listeners get a sprite of their own, since they may look at it later
+		EdibleSprite edible = createEdible(code, x, y);
+		edible.setStatus(Sprite.STATUS_EATEN);
+		if (model.isInProgress())
+			model.addToScore(edible.getScore());
 
-					pac.chompDot();  // notifies pac-man that he is eating a dot
+		pac.chompDot();  // notifies pac-man that he is eating a dot
 
-					if (threeQuartersOfDotsAreEaten())
-						model.notifyListeners(null, GameModel.Event.THREE_QUARTERS_DOTS_EATEN);
-					if (halfOfDotsAreEaten())
-						model.notifyListeners(null, GameModel.Event.HALF_DOTS_EATEN);
+		if (threeQuartersOfDotsAreEaten()  &&  fireOnce(FIRED_THREE_QUARTERS))
+			model.notifyDotListeners(null, GameModel.Event.THREE_QUARTERS_DOTS_EATEN);
+		if (halfOfDotsAreEaten()  &&  fireOnce(FIRED_HALF))
+			model.notifyDotListeners(null, GameModel.Event.HALF_DOTS_EATEN);
 
-					if (edible.type == Sprite.POWERPELLET) {
-						PowerPellet pellet = (PowerPellet)edible;
-						model.chompPellet(pac, pellet);
-					}
+		if (edible.type == Sprite.POWERPELLET) {
+			PowerPellet pellet = (PowerPellet)edible;
+			model.chompPellet(pac, pellet);
+		}
 
-					if (myNumDots == 0) {
-						model.notifyListeners(null, GameModel.Event.LEVEL_CLEARED);
-					}
-				}
-				model.notifyListeners(edible, edible.type == Sprite.POWERPELLET  ?  GameModel.Event.POWER_PELLET_EATEN  :  GameModel.Event.DOT_EATEN);
-			}
+		if (myNumTotalDots > 0  &&  myNumDots <= 0  &&  fireOnce(FIRED_CLEARED)) {
+			model.notifyDotListeners(null, GameModel.Event.LEVEL_CLEARED);
 		}
+		model.notifyDotListeners(edible, edible.type == Sprite.POWERPELLET  ?  GameModel.Event.POWER_PELLET_EATEN  :  GameModel.Event.DOT_EATEN);
+	}
+
+	/** Returns true, and remembers it, if the given dot event has not yet been fired
+	  * since the level was regenerated.
+	  */
+	private boolean fireOnce(int event) {
+		if ((myDotEventsFired & event) != 0)
+			return false;
+		myDotEventsFired |= event;
+		return true;
+	}
+
+	/** Returns whether the given sprite overlaps the given square of pixels. */
+	private static boolean collides(Sprite spr, int x, int y, int size) {
+		java.awt.Rectangle rect = spr.rect;
+		return rect.width > 0  &&  rect.height > 0
+			&&  rect.x < x + size  &&  x < rect.x + rect.width
+			&&  rect.y < y + size  &&  y < rect.y + rect.height;
+	}
+
+	/** Returns a hash of which of this level's dots and pellets are still uneaten;
+	  * it is kept up to date as they are eaten, so this costs nothing.
+	  */
+	public final long getDotHash() {
+		return myDotHash;
 	}
 
 	/** Returns true if all of this level's dots are eaten. */
@@ -634,37 +868,40 @@ public class Level {
 
 	/** Returns true if the given sprite is inside a tunnel. */
 	public boolean isInTunnel(MovingSprite spr) {
+		if (spr.rect.width <= 0  ||  spr.rect.height <= 0)
+			return false;
+
+		// the squares the sprite overlaps, out of the nine around its own
 		int gridx = spr.getGridX();
 		int gridy = spr.getGridY();
+		int fromx = Math.max(Math.max(gridx - 1, toGrid(spr.getX())), 0);
+		int tox   = Math.min(Math.min(gridx + 1, toGrid(spr.getRightX() - 1)), myGridWidth - 1);
+		int fromy = Math.max(Math.max(gridy - 1, toGrid(spr.getY())), 0);
+		int toy   = Math.min(Math.min(gridy + 1, toGrid(spr.getBottomY() - 1)), myGridHeight - 1);
+		if (fromy > toy)
+			return false;
 
-		for (int x = gridx - 1;  x <= gridx + 1;  x++)
-		for (int y = gridy - 1;  y <= gridy + 1;  y++) {
-			// eliminate non-collision cases
-			if (!isOnMap(x, y))
-				continue;
-
-			Sprite collider = myMap[x][y];
-			boolean isValidSprite = collider != null  &&  collider != Sprite.EMPTY;
-
-			if (!isValidSprite)
-				continue;
-
-			if (collider.type == Sprite.TUNNEL  &&  spr.collidesWith(collider))
+		for (int x = fromx;  x <= tox;  x++)
+			if (hasAnyBits(myTunnelBits, x * myGridHeight + fromy, x * myGridHeight + toy))
 				return true;
-		}
 
 		return false;
 	}
 
+	/** Returns the grid square that the given pixel position is in, even off the board's top or left. */
+	private static int toGrid(int pixel) {
+		return (pixel >= 0)  ?  pixel / GRID_SIZE  :  -((GRID_SIZE - 1 - pixel) / GRID_SIZE);
+	}
+
 	/** Makes all power pellets on this level's map blink on or off. */
 	public void blinkPellets() {
-		int gridWidth = getGridWidth();
-		int gridHeight = getGridHeight();
-
-		for (int x = 0;  x < gridWidth;  x++)
-		for (int y = 0;  y < gridHeight;  y++)
-			if (myMap[x][y].type == Sprite.POWERPELLET  &&  !((PowerPellet)myMap[x][y]).isEaten())
-				myMap[x][y].setVisible(!myMap[x][y].isVisible);
+		for (int square : myTemplate.getPelletSquares()) {
+			int cell = myCells[square];
+			if ((cell & (CODE_MASK | OVERLAY)) == LevelTemplate.PELLET  &&  hasDot(square)) {
+				myCells[square] = (byte)(cell ^ HIDDEN);
+				markChanged(square);
+			}
+		}
 	}
 
 	/** Returns a string representation of this level. */
@@ -675,7 +912,7 @@ public class Level {
 		int gridHeight = getGridHeight();
 		for (int y = 0;  y < gridHeight;  y++) {
 			for (int x = 0;  x < gridWidth;  x++) {
-				result += myMap[x][y];
+				result += getGridCell(x, y);
 			}
 			result += '\n';
 		}
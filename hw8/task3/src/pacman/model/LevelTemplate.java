@@ -0,0 +1,403 @@
+package pacman.model;
+
+import java.io.*;
+import java.util.*;
+
+/** A level map compiled from its text form, once, into compact arrays: what is in
+  * each grid square, the shape of each wall, where the moving sprites start, and
+  * how many dots there are.
+  *
+  * <p>Templates never change once compiled, so they may be shared by any number of
+  * levels, in any number of games, on any thread.  A Level starts from a copy of
+  * its template's cell codes, and resets itself to it (see Level.regenerate) by
+  * copying them again rather than by reading and analyzing the map text all over again.
+  */
+public final class LevelTemplate implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	/** Codes of what is in a grid square. */
+	public static final byte EMPTY = 0, WALL = 1, GATE = 2, DOT = 3, PELLET = 4, TUNNEL = 5;
+
+	/** Kinds of obstacle, which decide what images their walls are drawn with. */
+	private static final String[] OBSTACLE_KINDS = {"wall", "gate", "border", "cage"};
+	private static final byte KIND_WALL = 0, KIND_GATE = 1, KIND_BORDER = 2, KIND_CAGE = 3;
+
+	/** The image name of every kind and shape of obstacle, made once rather than each
+	  * time a view asks for a wall.
+	  */
+	private static final String[] IMAGE_NAMES = new String[OBSTACLE_KINDS.length * 16];
+	static {
+		for (int kind = 0;  kind < OBSTACLE_KINDS.length;  kind++)
+		for (int hex = 0;  hex < 16;  hex++)
+			IMAGE_NAMES[kind * 16 + hex] = OBSTACLE_KINDS[kind] + Integer.toHexString(hex);
+	}
+
+	private String myName;
+	private GameModel.Type myType;
+	private int myWidth;
+	private int myHeight;
+	private byte[] myCells;   // code of each grid square, numbered x * height + y
+	private byte[] myHexes;   // wall shape of each obstacle square (see ObstacleSprite.getHex)
+	private byte[] myKinds;   // kind of each obstacle square
+	private long[] myWallBits;
+	private long[] myObstacleBits;
+	private long[] myDotBits;  // dots and pellets
+	private long[] myTunnelBits;
+	private int[] myPelletSquares;
+	private int myNumDots;    // counting pellets
+	private long myDotHash;
+
+	// where the moving sprites start, in the order they appear in the text
+	private char[] mySpawnCodes;
+	private int[] mySpawnSquares;
+
+	/** Compiles the level map whose text is read from the given input stream.  Its
+	  * first line holds the level's name, width and height; each line after that
+	  * holds a row of the map.
+	  */
+	public static LevelTemplate compile(InputStream is, GameModel.Type type) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+		String header = reader.readLine();
+		if (header == null)
+			throw new IOException("level is empty");
+
+		StringTokenizer st = new StringTokenizer(header);
+		try {
+			String name = st.nextToken();
+			int width = Integer.parseInt(st.nextToken());
+			int height = Integer.parseInt(st.nextToken());
+
+			List<String> lines = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.equals(""))
+					lines.add(line);
+			}
+			return new LevelTemplate(name, type, width, height, lines);
+		} catch (NoSuchElementException nsee) {
+			throw new IOException("bad level header: " + header);
+		} catch (NumberFormatException nfe) {
+			throw new IOException("bad level header: " + header);
+		}
+	}
+
+	/** Returns a new template of the given size with nothing on it. */
+	public static LevelTemplate createEmpty(String name, int width, int height) {
+		return new LevelTemplate(name, GameModel.Type.PACMAN, width, height, new ArrayList<String>());
+	}
+
+	/** Compiles a level map from the given rows of map text, with no header line; the
+	  * map is as wide as its longest row.
+	  */
+	public static LevelTemplate compile(String name, List<String> rows, GameModel.Type type) {
+		int width = 1;
+		for (String row : rows)
+			width = Math.max(width, row.length());
+		return new LevelTemplate(name, type, width, Math.max(1, rows.size()), rows);
+	}
+
+	/** Constructs a new template from the given rows of map text. */
+	private LevelTemplate(String name, GameModel.Type type, int width, int height, List<String> lines) {
+		myName = name;
+		myType = type;
+		myWidth = width;
+		myHeight = height;
+		myCells = new byte[width * height];
+		myHexes = new byte[width * height];
+		myKinds = new byte[width * height];
+		myWallBits = new long[(width * height + 63) / 64];
+		myObstacleBits = new long[myWallBits.length];
+		myDotBits = new long[myWallBits.length];
+		myTunnelBits = new long[myWallBits.length];
+
+		StringBuilder spawnCodes = new StringBuilder();
+		List<Integer> spawnSquares = new ArrayList<Integer>();
+		List<Integer> pelletSquares = new ArrayList<Integer>();
+		for (int y = 0;  y < height  &&  y < lines.size();  y++) {
+			String line = lines.get(y);
+			for (int x = 0;  x < width  &&  x < line.length();  x++) {
+				char curr = line.charAt(x);
+				int square = x * height + y;
+				byte code = EMPTY;
+				if (curr == 'X')
+					code = WALL;
+				else if (curr == '=')
+					code = GATE;
+				else if (curr == '.')
+					code = DOT;
+				else if (curr == 'O')
+					code = PELLET;
+				else if (curr == 'T')
+					code = TUNNEL;
+				else if (Character.isDigit(curr)  ||  curr == 'B'  ||  curr == 'I'  ||  curr == 'P'  ||  curr == 'C'  ||  curr == 'F') {
+					spawnCodes.append(curr);
+					spawnSquares.add(square);
+				}
+
+				myCells[square] = code;
+				if (code == DOT  ||  code == PELLET) {
+					myDotBits[square >> 6] |= 1L << (square & 63);
+					myNumDots++;
+					myDotHash ^= StateHash.cell(x, y);
+				}
+				if (code == PELLET)
+					pelletSquares.add(square);
+				if (code == TUNNEL)
+					myTunnelBits[square >> 6] |= 1L << (square & 63);
+				if (code == WALL)
+					myWallBits[square >> 6] |= 1L << (square & 63);
+				if (code == WALL  ||  code == GATE)
+					myObstacleBits[square >> 6] |= 1L << (square & 63);
+			}
+		}
+
+		mySpawnCodes = spawnCodes.toString().toCharArray();
+		mySpawnSquares = toArray(spawnSquares);
+		myPelletSquares = toArray(pelletSquares);
+		setWallShapes();
+	}
+
+	/** Returns the given list of integers as an array. */
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0;  i < array.length;  i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/** Returns this level's name. */
+	public String getName() {
+		return myName;
+	}
+
+	/** Returns the type of game this level is for. */
+	public GameModel.Type getType() {
+		return myType;
+	}
+
+	/** Returns this level's width in grid squares. */
+	public int getWidth() {
+		return myWidth;
+	}
+
+	/** Returns this level's height in grid squares. */
+	public int getHeight() {
+		return myHeight;
+	}
+
+	/** Returns the code of what is in the given grid square. */
+	public byte getCell(int x, int y) {
+		return myCells[x * myHeight + y];
+	}
+
+	/** Returns the shape of the obstacle in the given grid square (see ObstacleSprite.getHex). */
+	public int getHex(int x, int y) {
+		return myHexes[x * myHeight + y];
+	}
+
+	/** Returns the name of the image the obstacle in the given grid square is drawn with. */
+	public String getImageName(int x, int y) {
+		int square = x * myHeight + y;
+		return IMAGE_NAMES[myKinds[square] * 16 + myHexes[square]];
+	}
+
+	/** Returns how many dots and pellets this level starts with. */
+	public int getNumDots() {
+		return myNumDots;
+	}
+
+	/** Returns the hash of this level's dots when none are eaten (see Level.getDotHash). */
+	public long getDotHash() {
+		return myDotHash;
+	}
+
+	/** Returns the squares of this level's power pellets, numbered x * height + y.
+	  * The array must not be changed.
+	  */
+	int[] getPelletSquares() {
+		return myPelletSquares;
+	}
+
+	/** Copies the code of every grid square of this level into the given array. */
+	void copyCells(byte[] cells) {
+		System.arraycopy(myCells, 0, cells, 0, myCells.length);
+	}
+
+	/** Copies the bits of this level's dots and pellets (see Level) into the given array. */
+	void copyDotBits(long[] dotBits) {
+		System.arraycopy(myDotBits, 0, dotBits, 0, myDotBits.length);
+	}
+
+	/** Copies the bits of this level's tunnels (see Level) into the given array. */
+	void copyTunnelBits(long[] tunnelBits) {
+		System.arraycopy(myTunnelBits, 0, tunnelBits, 0, myTunnelBits.length);
+	}
+
+	/** Copies this level's wall and obstacle bits (see Level) into the given arrays. */
+	void copyBits(long[] wallBits, long[] obstacleBits) {
+		System.arraycopy(myWallBits, 0, wallBits, 0, myWallBits.length);
+		System.arraycopy(myObstacleBits, 0, obstacleBits, 0, myObstacleBits.length);
+	}
+
+	/** Returns how many moving sprites start on this level. */
+	public int getNumSpawns() {
+		return mySpawnCodes.length;
+	}
+
+	/** Returns the map character of the given moving sprite: a digit for Pac-Man,
+	  * B, I, P or C for a ghost, or F for a fruit.
+	  */
+	public char getSpawnCode(int index) {
+		return mySpawnCodes[index];
+	}
+
+	/** Returns the grid column where the given moving sprite starts. */
+	public int getSpawnX(int index) {
+		return mySpawnSquares[index] / myHeight;
+	}
+
+	/** Returns the grid row where the given moving sprite starts. */
+	public int getSpawnY(int index) {
+		return mySpawnSquares[index] % myHeight;
+	}
+
+	/** Returns whether the given grid square is on the map. */
+	private boolean isOnMap(int x, int y) {
+		return 0 <= x  &&  x < myWidth  &&  0 <= y  &&  y < myHeight;
+	}
+
+	/** Returns whether the given grid square is a corner of the map. */
+	private boolean isCorner(int x, int y) {
+		return (x == 0  ||  x == myWidth - 1)  &&  (y == 0  ||  y == myHeight - 1);
+	}
+
+	/** Returns whether the given grid square is a wall or gate. */
+	private boolean isObstacle(int x, int y) {
+		byte code = myCells[x * myHeight + y];
+		return code == WALL  ||  code == GATE;
+	}
+
+	/** Works out the shape and kind of every wall and gate, so that the views can
+	  * draw the walls the way the arcade game does: walls are punched in on the sides
+	  * that face squares sprites can reach, walls joined to the corners of the board
+	  * are border walls, and walls joined to a gate are cage walls.
+	  */
+	private void setWallShapes() {
+		boolean[] reachable = findReachableSquares();
+
+		for (int square = 0;  square < myCells.length;  square++)
+			myKinds[square] = (myCells[square] == GATE)  ?  KIND_GATE  :  KIND_WALL;
+
+		for (int x = 0;  x < myWidth;  x++)
+		for (int y = 0;  y < myHeight;  y++)
+			if (isCorner(x, y)  &&  myCells[x * myHeight + y] == WALL)
+				tagWalls(x, y, KIND_BORDER);
+
+		for (int x = 0;  x < myWidth;  x++)
+		for (int y = 0;  y < myHeight;  y++)
+			if (myCells[x * myHeight + y] == GATE) {
+				tagWalls(x - 1, y, KIND_CAGE);
+				tagWalls(x + 1, y, KIND_CAGE);
+				tagWalls(x, y - 1, KIND_CAGE);
+				tagWalls(x, y + 1, KIND_CAGE);
+			}
+
+		for (int x = 0;  x < myWidth;  x++)
+		for (int y = 0;  y < myHeight;  y++)
+			if (isObstacle(x, y))
+				myHexes[x * myHeight + y] = (byte)getWallHex(reachable, x, y);
+	}
+
+	/** Returns which squares can be reached from the first empty square on the
+	  * map's diagonal, without passing through walls or gates.
+	  */
+	private boolean[] findReachableSquares() {
+		boolean[] reachable = new boolean[myCells.length];
+		int start = 0;
+		while (isOnMap(start, start)  &&  myCells[start * myHeight + start] != EMPTY)
+			start++;
+		if (!isOnMap(start, start))
+			return reachable;
+
+		int[] stack = new int[myCells.length];
+		int size = 0;
+		reachable[start * myHeight + start] = true;
+		stack[size++] = start * myHeight + start;
+		while (size > 0) {
+			int square = stack[--size];
+			int x = square / myHeight, y = square % myHeight;
+			for (int dir = 0;  dir < 4;  dir++) {
+				int nx = x + ((dir == 0) ? 1 : (dir == 1) ? -1 : 0);
+				int ny = y + ((dir == 2) ? 1 : (dir == 3) ? -1 : 0);
+				if (isOnMap(nx, ny)  &&  !isObstacle(nx, ny)  &&  !reachable[nx * myHeight + ny]) {
+					reachable[nx * myHeight + ny] = true;
+					stack[size++] = nx * myHeight + ny;
+				}
+			}
+		}
+		return reachable;
+	}
+
+	/** Gives the given kind to the wall at the given square and all walls joined to it. */
+	private void tagWalls(int x, int y, byte kind) {
+		if (!isOnMap(x, y)  ||  myCells[x * myHeight + y] != WALL  ||  myKinds[x * myHeight + y] == kind)
+			return;
+
+		int[] stack = new int[myCells.length];
+		int size = 0;
+		myKinds[x * myHeight + y] = kind;
+		stack[size++] = x * myHeight + y;
+		while (size > 0) {
+			int square = stack[--size];
+			int sx = square / myHeight, sy = square % myHeight;
+			for (int dir = 0;  dir < 4;  dir++) {
+				int nx = sx + ((dir == 0) ? 1 : (dir == 1) ? -1 : 0);
+				int ny = sy + ((dir == 2) ? 1 : (dir == 3) ? -1 : 0);
+				if (isOnMap(nx, ny)  &&  myCells[nx * myHeight + ny] == WALL  &&  myKinds[nx * myHeight + ny] != kind) {
+					myKinds[nx * myHeight + ny] = kind;
+					stack[size++] = nx * myHeight + ny;
+				}
+			}
+		}
+	}
+
+	/** Returns which quarters of the given obstacle's square it fills:
+	  *
+	  * <p>1 2 <br>
+	  * 4 8
+	  *
+	  * <p>A side that faces a reachable square is cut away (except on the edge of
+	  * the board); a wall with no side cut away has its corners rounded off where
+	  * they touch reachable squares diagonally.
+	  */
+	private int getWallHex(boolean[] reachable, int x, int y) {
+		int hexValue = 15;
+		if (x > 0  &&  isReachable(reachable, x - 1, y))
+			hexValue &= ~(1 | 4);
+		if (x < myWidth - 1  &&  isReachable(reachable, x + 1, y))
+			hexValue &= ~(2 | 8);
+		if (y > 0  &&  isReachable(reachable, x, y - 1))
+			hexValue &= ~(1 | 2);
+		if (y < myHeight - 1  &&  isReachable(reachable, x, y + 1))
+			hexValue &= ~(4 | 8);
+
+		if (hexValue == 15) {
+			if (isReachable(reachable, x - 1, y - 1))  hexValue &= ~1;
+			if (isReachable(reachable, x + 1, y - 1))  hexValue &= ~2;
+			if (isReachable(reachable, x - 1, y + 1))  hexValue &= ~4;
+			if (isReachable(reachable, x + 1, y + 1))  hexValue &= ~8;
+		}
+		return hexValue;
+	}
+
+	/** Returns whether the given square is on the map and reachable. */
+	private boolean isReachable(boolean[] reachable, int x, int y) {
+		return isOnMap(x, y)  &&  reachable[x * myHeight + y];
+	}
+
+	/** Returns a string representation of this template. */
+	public String toString() {
+		return "LevelTemplate(" + myName + ", " + myWidth + "x" + myHeight + ", " + myNumDots + " dots, "
+			+ mySpawnCodes.length + " sprites)";
+	}
+}
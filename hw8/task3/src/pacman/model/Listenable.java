@@ -2,26 +2,187 @@ package pacman.model;
 
 import pacman.model.Listener;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** A class that represents an object that can be observed for events by outside Listeners. */
+/** A class that represents an object that can be observed for events by outside Listeners.
+  *
+  * <p>A listener added with addListener(Listener) hears about each event right away, on
+  * the thread that caused it.  A listener added with addListener(Listener, Executor)
+  * instead hears about events later, on its executor, so that a slow listener (one that
+  * plays sounds or repaints) doesn't hold up the thread running the game.  Events that
+  * happen between beginBatch() and endBatch() are collected and handed to each such
+  * listener all at once; each listener hears about its events in order, one batch at a time.
+  * Since by then this object has moved on, each event carries what getEventState()
+  * returned when it was raised, for asynchronous listeners that are SnapshotListeners.
+  */
 public class Listenable {
+	private static final int INITIAL_BATCH_SIZE = 16;
+	private static final int EVENT_SIZE = 3;  // source, type, state
+
 	private Set<Listener> myListeners = new HashSet<Listener>();
+	private Map<Listener, AsyncListener> myAsyncListeners = new HashMap<Listener, AsyncListener>();
+
+	// events waiting to go to the asynchronous listeners, and the batch that went out last
+	private final Object myBatchLock = new Object();
+	private Batch myBatch = new Batch();
+	private Batch mySpareBatch = new Batch();
+	private int myBatchDepth = 0;
 
-	/** Adds a listener for game events. */
+	/** Adds a listener for game events, which hears about each event as it happens. */
 	public void addListener(Listener l) {
         myListeners.add(l);
     }
 
+	/** Adds a listener for game events, which hears about them in batches, run by the given executor. */
+	public void addListener(Listener l, Executor executor) {
+		myAsyncListeners.put(l, new AsyncListener(l, executor));
+	}
+
+	/** Starts collecting events for the asynchronous listeners, rather than sending each
+	  * one off as it happens.  Calls may be nested; the batch goes out at the outermost endBatch().
+	  */
+	public void beginBatch() {
+		synchronized (myBatchLock) {
+			myBatchDepth++;
+		}
+	}
+
+	/** Sends the events collected since the matching beginBatch() to the asynchronous listeners. */
+	public void endBatch() {
+		synchronized (myBatchLock) {
+			if (myBatchDepth > 0  &&  --myBatchDepth == 0)
+				publish();
+		}
+	}
+
 	/** Notifies all listeners of a game event. */
 	public void notifyListeners(Object source, Object eventType) {
 		for (Listener listener : myListeners) {
 			listener.gameUpdated(this, source, eventType);
 		}
+
+		if (!myAsyncListeners.isEmpty()) {
+			// taken before the batch lock, as a subclass may lock itself to take it
+			Object state = getEventState();
+			synchronized (myBatchLock) {
+				myBatch.add(source, eventType, state);
+				if (myBatchDepth == 0)
+					publish();
+			}
+		}
+	}
+
+	/** Returns what asynchronous listeners should know about this object's state as of
+	  * the event being raised, or null if nothing.  Called as each event is raised, if
+	  * there are asynchronous listeners; whatever it returns must not change afterward.
+	  */
+	protected Object getEventState() {
+		return null;
 	}
 
 	/** Removes the given listener for game events. */
 	public void removeListener(Listener l) {
 		myListeners.remove(l);
+		AsyncListener async = myAsyncListeners.remove(l);
+		if (async != null)
+			async.myIsDetached = true;
 		l.detach();
 	}
-}
\ No newline at end of file
+
+	/** Hands the collected events to each asynchronous listener, and starts collecting
+	  * into the spare batch.  Called with the batch lock held.
+	  */
+	private void publish() {
+		if (myBatch.mySize == 0)
+			return;
+
+		// the listeners share the batch, since they only read it; the spare is reused
+		// once they have all finished with it, which is normally well before the next
+		// batch goes out
+		Batch full = myBatch;
+		full.myNumReaders.set(myAsyncListeners.size());
+		if (mySpareBatch.myNumReaders.get() == 0) {
+			myBatch = mySpareBatch;
+			myBatch.clear();
+		} else
+			myBatch = new Batch();
+		mySpareBatch = full;
+
+		for (AsyncListener async : myAsyncListeners.values())
+			async.publish(full);
+	}
+
+	/** A batch of events as source/type/state triples, and the number of asynchronous
+	  * listeners still to read it.
+	  */
+	private static class Batch {
+		private Object[] myEvents = new Object[EVENT_SIZE * INITIAL_BATCH_SIZE];
+		private int mySize = 0;
+		private final AtomicInteger myNumReaders = new AtomicInteger(0);
+
+		/** Adds the given event to this batch. */
+		public void add(Object source, Object eventType, Object state) {
+			if (mySize == myEvents.length) {
+				Object[] bigger = new Object[myEvents.length * 2];
+				System.arraycopy(myEvents, 0, bigger, 0, mySize);
+				myEvents = bigger;
+			}
+			myEvents[mySize++] = source;
+			myEvents[mySize++] = eventType;
+			myEvents[mySize++] = state;
+		}
+
+		/** Empties this batch, letting go of the objects in its events. */
+		public void clear() {
+			Arrays.fill(myEvents, 0, mySize, null);
+			mySize = 0;
+		}
+	}
+
+	/** A listener that hears about events on its own executor.  Batches wait in a
+	  * lock-free queue, and at most one task drains the queue at a time, so that
+	  * events arrive in order.
+	  */
+	private class AsyncListener implements Runnable {
+		private Listener myListener;
+		private Executor myExecutor;
+		private Queue<Batch> myQueue = new ConcurrentLinkedQueue<Batch>();
+		private AtomicBoolean myIsScheduled = new AtomicBoolean(false);
+		private volatile boolean myIsDetached = false;
+
+		public AsyncListener(Listener l, Executor executor) {
+			myListener = l;
+			myExecutor = executor;
+		}
+
+		/** Queues the given batch of events, and schedules a task to deliver it if none is pending. */
+		public void publish(Batch events) {
+			myQueue.offer(events);
+			if (myIsScheduled.compareAndSet(false, true))
+				myExecutor.execute(this);
+		}
+
+		/** Delivers all queued batches of events to the listener. */
+		public void run() {
+			do {
+				Batch batch;
+				while ((batch = myQueue.poll()) != null) {
+					Object[] events = batch.myEvents;
+					for (int i = 0;  i < batch.mySize  &&  !myIsDetached;  i += EVENT_SIZE) {
+						if (myListener instanceof SnapshotListener)
+							((SnapshotListener)myListener).gameUpdated(Listenable.this, events[i], events[i + 1], events[i + 2]);
+						else
+							myListener.gameUpdated(Listenable.this, events[i], events[i + 1]);
+					}
+					batch.myNumReaders.decrementAndGet();
+				}
+				myIsScheduled.set(false);
+
+				// a batch may have been queued after the last poll but before the flag was cleared
+			} while (!myQueue.isEmpty()  &&  myIsScheduled.compareAndSet(false, true));
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package pacman.model;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/** A lightweight registry of per-tick profiling data for a game model.
+  *
+  * <p>While enabled, the model times each phase of its update() in nanoseconds,
+  * and the registry keeps a per-phase total and maximum, a histogram of whole
+  * tick times, the number of ticks that blew the frame budget (REFRESH_DELAY ms),
+  * the number of bytes allocated during updates, and counters such as how many
+  * times the ghosts recalculated their paths.  When a tick blows the budget, its
+  * phase breakdown is printed to the dump stream, if there is one.  The time each
+  * sprite spends choosing its move is held to a budget of its own (AI_BUDGET ns
+  * by default), and overruns of it are tallied and reported by sprite name.
+  *
+  * <p>Metrics are off by default, so that an update pays only for a few
+  * boolean checks.  A dump interval may be set so that the statistics are
+  * printed and reset every so many ticks.
+  */
+public class Metrics {
+	/** The phases of GameModel.update() that are timed. */
+	public static enum Phase {
+		SPRITE_UPDATE,
+		GHOST_AI,  // ghost and fruit calculateMove()
+		MOVE_RESOLUTION,
+		DOT_COLLISION,
+		LISTENER_DISPATCH
+	}
+
+	/** The events that are counted. */
+	public static enum Counter {
+		PATH_LOOKUPS,  // next square taken from a distance table or flow field
+		PATH_SEARCHES, // path found by searching the grid
+		PATH_CACHE_HITS, // path taken from the level's path cache instead of searching
+		FLOW_FIELDS,   // flow field pointed at a new target square
+		SEARCHES_CUT_SHORT // search stopped by a strategy's work budget, to carry on next move
+	}
+
+	/** The number of tick histogram buckets; bucket i holds ticks that took
+	  * less than 2^(i+1) microseconds, and the last bucket holds the rest.
+	  */
+	public static final int NUM_BUCKETS = 17;
+	public static final long BUDGET = GameModel.REFRESH_DELAY * 1000000L;
+	public static final long AI_BUDGET = BUDGET / 4;
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final Counter[] COUNTERS = Counter.values();
+
+	private boolean myIsEnabled = false;
+	private long[] myPhaseTimes = new long[PHASES.length];
+	private long[] myMaxPhaseTimes = new long[PHASES.length];
+	private long[] myTickPhaseTimes = new long[PHASES.length];
+	private long[] myCounts = new long[COUNTERS.length];
+	private long[] myHistogram = new long[NUM_BUCKETS];
+	private long myNumTicks = 0;
+	private long myNumOverruns = 0;
+	private long myTickTime = 0;
+	private long myMaxTickTime = 0;
+	private long myTickStart = 0;
+	private long myAllocatedBytes = 0;
+	private long myTickStartBytes = -1;
+	private long myAiBudget = AI_BUDGET;
+	private Map<String, long[]> myAiOverruns = new TreeMap<String, long[]>();  // name -> {count, max ns}
+
+	private int myDumpInterval = 0;
+	private PrintStream myDumpStream = null;
+
+	private com.sun.management.ThreadMXBean myThreadBean = null;
+
+	/** Constructs a new, disabled metrics registry. */
+	public Metrics() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			myThreadBean = (com.sun.management.ThreadMXBean)bean;
+			if (!myThreadBean.isThreadAllocatedMemorySupported())
+				myThreadBean = null;
+			else if (!myThreadBean.isThreadAllocatedMemoryEnabled())
+				myThreadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/** Returns whether this registry is recording. */
+	public boolean isEnabled() {
+		return myIsEnabled;
+	}
+
+	/** Turns recording on or off. */
+	public void setEnabled(boolean b) {
+		myIsEnabled = b;
+	}
+
+	/** Prints and resets the statistics to the given stream every given number of
+	  * ticks; tick overruns are also reported there.  A null stream turns dumping off.
+	  */
+	public void setDumpInterval(int ticks, PrintStream out) {
+		myDumpInterval = ticks;
+		myDumpStream = out;
+	}
+
+	/** Returns the current time in ns if recording, or 0 if not. */
+	public final long now() {
+		return myIsEnabled  ?  System.nanoTime()  :  0;
+	}
+
+	/** Marks the start of a model update. */
+	void startTick() {
+		if (!myIsEnabled)
+			return;
+
+		for (int i = 0;  i < myTickPhaseTimes.length;  i++)
+			myTickPhaseTimes[i] = 0;
+		myTickStartBytes = getAllocatedBytesNow();
+		myTickStart = System.nanoTime();
+	}
+
+	/** Adds the time since the given start time (as returned by now()) to the given phase. */
+	public final void addTime(Phase phase, long start) {
+		if (myIsEnabled)
+			myTickPhaseTimes[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	/** Moves the time since the given start time (as returned by now()) from one phase
+	  * to another, for work of the second kind done while the first is being timed.
+	  */
+	public final void moveTime(Phase from, Phase to, long start) {
+		if (!myIsEnabled)
+			return;
+
+		long elapsed = System.nanoTime() - start;
+		myTickPhaseTimes[from.ordinal()] -= elapsed;
+		myTickPhaseTimes[to.ordinal()] += elapsed;
+	}
+
+	/** Sets the most time in ns that one sprite may spend choosing its move in a tick. */
+	public void setAiBudget(long ns) {
+		myAiBudget = ns;
+	}
+
+	/** Adds the time since the given start time (as returned by now()) to the GHOST_AI
+	  * phase, and notes it against the named sprite if it is over the AI budget.
+	  */
+	public final void addAiTime(String name, long start) {
+		if (!myIsEnabled)
+			return;
+
+		long elapsed = System.nanoTime() - start;
+		myTickPhaseTimes[Phase.GHOST_AI.ordinal()] += elapsed;
+		if (elapsed > myAiBudget) {
+			long[] overruns = myAiOverruns.get(name);
+			if (overruns == null) {
+				overruns = new long[2];
+				myAiOverruns.put(name, overruns);
+			}
+			overruns[0]++;
+			overruns[1] = Math.max(overruns[1], elapsed);
+			if (myDumpStream != null)
+				myDumpStream.println(name + " took " + toMillis(elapsed) + " ms to move, over the "
+						+ toMillis(myAiBudget) + " ms AI budget");
+		}
+	}
+
+	/** Adds one to the given counter. */
+	public final void count(Counter counter) {
+		if (myIsEnabled)
+			myCounts[counter.ordinal()]++;
+	}
+
+	/** Marks the end of a model update, folding its times into the statistics. */
+	void endTick() {
+		if (!myIsEnabled  ||  myTickStart == 0)
+			return;
+
+		long elapsed = System.nanoTime() - myTickStart;
+		myTickStart = 0;
+		myNumTicks++;
+		myTickTime += elapsed;
+		myMaxTickTime = Math.max(myMaxTickTime, elapsed);
+		myHistogram[getBucket(elapsed)]++;
+
+		for (int i = 0;  i < myTickPhaseTimes.length;  i++) {
+			myPhaseTimes[i] += myTickPhaseTimes[i];
+			myMaxPhaseTimes[i] = Math.max(myMaxPhaseTimes[i], myTickPhaseTimes[i]);
+		}
+
+		if (myTickStartBytes >= 0)
+			myAllocatedBytes += getAllocatedBytesNow() - myTickStartBytes;
+
+		if (elapsed > BUDGET) {
+			myNumOverruns++;
+			if (myDumpStream != null)
+				myDumpStream.println("tick took " + toMillis(elapsed) + " ms, over the "
+						+ GameModel.REFRESH_DELAY + " ms budget:" + dumpPhases(myTickPhaseTimes));
+		}
+
+		if (myDumpInterval > 0  &&  myDumpStream != null  &&  myNumTicks >= myDumpInterval) {
+			myDumpStream.println(this);
+			reset();
+		}
+	}
+
+	/** Clears all statistics. */
+	public void reset() {
+		for (int i = 0;  i < PHASES.length;  i++) {
+			myPhaseTimes[i] = 0;
+			myMaxPhaseTimes[i] = 0;
+		}
+		for (int i = 0;  i < COUNTERS.length;  i++)
+			myCounts[i] = 0;
+		for (int i = 0;  i < NUM_BUCKETS;  i++)
+			myHistogram[i] = 0;
+		myAiOverruns.clear();
+		myNumTicks = 0;
+		myNumOverruns = 0;
+		myTickTime = 0;
+		myMaxTickTime = 0;
+		myAllocatedBytes = 0;
+	}
+
+	/** Returns the number of ticks recorded. */
+	public long getNumTicks() {
+		return myNumTicks;
+	}
+
+	/** Returns the number of ticks that took longer than REFRESH_DELAY ms. */
+	public long getNumOverruns() {
+		return myNumOverruns;
+	}
+
+	/** Returns the total time of all recorded ticks in ns. */
+	public long getTickTime() {
+		return myTickTime;
+	}
+
+	/** Returns the time of the longest recorded tick in ns. */
+	public long getMaxTickTime() {
+		return myMaxTickTime;
+	}
+
+	/** Returns the total time spent in the given phase in ns. */
+	public long getPhaseTime(Phase phase) {
+		return myPhaseTimes[phase.ordinal()];
+	}
+
+	/** Returns the most time spent in the given phase during one tick in ns. */
+	public long getMaxPhaseTime(Phase phase) {
+		return myMaxPhaseTimes[phase.ordinal()];
+	}
+
+	/** Returns the value of the given counter. */
+	public long getCount(Counter counter) {
+		return myCounts[counter.ordinal()];
+	}
+
+	/** Returns the number of times the named sprite went over the AI budget. */
+	public long getNumAiOverruns(String name) {
+		long[] overruns = myAiOverruns.get(name);
+		return (overruns == null)  ?  0  :  overruns[0];
+	}
+
+	/** Returns the number of bytes allocated during recorded ticks, or -1 if the
+	  * JVM cannot tell.
+	  */
+	public long getAllocatedBytes() {
+		return (myThreadBean == null)  ?  -1  :  myAllocatedBytes;
+	}
+
+	/** Returns a copy of the tick time histogram; see NUM_BUCKETS. */
+	public long[] getHistogram() {
+		long[] copy = new long[NUM_BUCKETS];
+		System.arraycopy(myHistogram, 0, copy, 0, NUM_BUCKETS);
+		return copy;
+	}
+
+	/** Returns a string representation of these statistics. */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(myNumTicks + " ticks, avg " + toMicros(myNumTicks == 0  ?  0  :  myTickTime / myNumTicks)
+				+ " us, max " + toMicros(myMaxTickTime) + " us, " + myNumOverruns + " over budget\n");
+		sb.append("  phase totals (ms):" + dumpPhases(myPhaseTimes) + "\n");
+		sb.append("  phase maxima (ms):" + dumpPhases(myMaxPhaseTimes) + "\n");
+		sb.append("  counts:");
+		for (int i = 0;  i < COUNTERS.length;  i++)
+			sb.append(" " + COUNTERS[i].name().toLowerCase() + "=" + myCounts[i]);
+		if (myThreadBean != null)
+			sb.append(" allocated_bytes=" + myAllocatedBytes);
+		if (!myAiOverruns.isEmpty()) {
+			sb.append("\n  ai overruns:");
+			for (Map.Entry<String, long[]> entry : myAiOverruns.entrySet())
+				sb.append(" " + entry.getKey() + "=" + entry.getValue()[0]
+						+ " (max " + toMillis(entry.getValue()[1]) + " ms)");
+		}
+		sb.append("\n  tick histogram (us):");
+		for (int i = 0;  i < NUM_BUCKETS;  i++) {
+			if (myHistogram[i] != 0) {
+				sb.append((i == NUM_BUCKETS - 1)  ?  " >=" + (1L << i)  :  " <" + (1L << (i + 1)));
+				sb.append(":" + myHistogram[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private String dumpPhases(long[] times) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0;  i < PHASES.length;  i++)
+			sb.append(" " + PHASES[i].name().toLowerCase() + "=" + toMillis(times[i]));
+		return sb.toString();
+	}
+
+	private long getAllocatedBytesNow() {
+		return (myThreadBean == null)  ?  -1  :  myThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static int getBucket(long ns) {
+		long micros = ns / 1000;
+		int bucket = 0;
+		while (micros > 1  &&  bucket < NUM_BUCKETS - 1) {
+			micros >>= 1;
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private static String toMillis(long ns) {
+		return String.format("%.3f", ns / 1e6);
+	}
+
+	private static long toMicros(long ns) {
+		return ns / 1000;
+	}
+}
@@ -1,14 +1,32 @@
 package pacman.model;
 
+import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Represents a move to be made by a sprite, with a delta-x and delta-y coordinate.
   * Uses flyweighted moves to avoid many instances being constructed.
   */
-public final class Move {
-	/** Number of instances of this class. */
-	public static int ourNumInstances = 0;
-	private static Map<String, Move> ourInstanceTable = new HashMap<String, Move>();
+public final class Move implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	/** Every move whose coordinates both lie within TABLE_RADIUS of zero is made up
+	  * front and kept in this table, indexed by its coordinates, so looking one up
+	  * costs an array read.  Sprites never move anywhere near this fast.
+	  */
+	private static final int TABLE_RADIUS = 16;
+	private static final int TABLE_WIDTH  = 2 * TABLE_RADIUS + 1;
+	private static final Move[] ourTable = new Move[TABLE_WIDTH * TABLE_WIDTH];
+	static {
+		for (int x = -TABLE_RADIUS;  x <= TABLE_RADIUS;  x++)
+		for (int y = -TABLE_RADIUS;  y <= TABLE_RADIUS;  y++)
+			ourTable[(x + TABLE_RADIUS) * TABLE_WIDTH + (y + TABLE_RADIUS)] = new Move(x, y);
+	}
+
+	/** Any other moves, made the first time they are asked for; keyed by x in the high
+	  * 32 bits and y in the low 32.
+	  */
+	private static Map<Long, Move> ourOtherMoves = new ConcurrentHashMap<Long, Move>();
 
 	/** Constant moves used as singletons to avoid object overhead. */
 	public static final Move NEUTRAL = newMove(0, 0),
@@ -43,7 +61,6 @@ public final class Move {
 	private Move(int x, int y) {
 		dx = x;
 		dy = y;
-		ourNumInstances++;
 	}
 
 //	/* Constructs a new Move.  Not called by user.  Instead newMove(int, int) is used. */
@@ -53,14 +70,14 @@ public final class Move {
 
 	/** Constructs a new Move with the given x/y coordinates. */
 	public static Move newMove(int x, int y) {
-		String key = x + "," + y;
-		if (ourInstanceTable.containsKey(key))
-			return (Move)ourInstanceTable.get(key);
-		else {
-			Move m = new Move(x, y);
-			ourInstanceTable.put(key, m);
-			return m;
-		}
+		if (-TABLE_RADIUS <= x  &&  x <= TABLE_RADIUS  &&  -TABLE_RADIUS <= y  &&  y <= TABLE_RADIUS)
+			return ourTable[(x + TABLE_RADIUS) * TABLE_WIDTH + (y + TABLE_RADIUS)];
+
+		Long key = Long.valueOf(((long)x << 32) | (y & 0xFFFFFFFFL));
+		Move m = ourOtherMoves.get(key);
+		if (m == null)
+			m = createMove(key, x, y);
+		return m;
 		//for (int i = 0;  i < CANONICAL_MOVES.length;  i++)
 		//	if (CANONICAL_MOVES[i].dx == x  &&  CANONICAL_MOVES[i].dy == y)
 		//		return CANONICAL_MOVES[i];
@@ -70,6 +87,18 @@ public final class Move {
 		// return new Move(x, y);
 	}
 
+	/** Constructs and remembers the Move with the given key and x/y coordinates, unless
+	  * another thread (game) beat us to it.
+	  */
+	private static synchronized Move createMove(Long key, int x, int y) {
+		Move m = ourOtherMoves.get(key);
+		if (m == null) {
+			m = new Move(x, y);
+			ourOtherMoves.put(key, m);
+		}
+		return m;
+	}
+
 	/** Returns true if this move is in the same direction as the given other move. */
 	public final boolean isSameDirectionAs(Move other) {
 		return isSameXDirectionAs(other)  &&  isSameYDirectionAs(other);
@@ -150,6 +179,13 @@ public final class Move {
 		return newMove(newdx, newdy);
 	}
 
+	/** Replaces a move read back in from a stream with the flyweight move of the same
+	  * coordinates, so that moves can still be compared with ==.
+	  */
+	private Object readResolve() {
+		return newMove(dx, dy);
+	}
+
 	/** Returns true if this move has equal x/y coordinates to the other move. */
 	public boolean equals(Object other) {
 		try {
@@ -1,11 +1,27 @@
 package pacman.model;
 
 import pacman.model.Move;
+import java.io.Serializable;
 import java.util.*;
 
-/** Represents a collection of moves to be made by a sprite. */
-public class MoveList {
-	private List<Move> myMoves = new ArrayList<Move>();
+/** Represents a collection of moves to be made by a sprite.
+  *
+  * <p>Sprites tend to make the same move many times in a row, so the list is
+  * stored as runs of (move, number of times), the way demo files write them,
+  * in a circular buffer.  Adding moves, taking the first move off the list and
+  * asking for its size all take constant time no matter how many moves are in
+  * the list, and a run of any length takes the same small amount of memory.
+  */
+public class MoveList implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private Move[] myRunMoves = new Move[INITIAL_CAPACITY];
+	private int[] myRunCounts = new int[INITIAL_CAPACITY];
+	private int myFirstRun = 0;  // index of the first run in the circular buffer
+	private int myNumRuns = 0;
+	private int mySize = 0;
 
 	/** Adds the given move to this move list. */
 	public void addMove(Move mov) {
@@ -14,57 +30,157 @@ public class MoveList {
 
 	/** Adds the given move the given number of times to this move list. */
 	public void addMoves(Move mov, int numTimes) {
-		for (int i = 0; i < numTimes; i++) {
-			myMoves.add(mov);
-        }
+		if (numTimes <= 0)
+			return;
+
+		if (myNumRuns > 0) {
+			int last = getRunIndex(myNumRuns - 1);
+			if (myRunMoves[last].equals(mov)) {
+				// same as the last move; just make that run longer
+				myRunCounts[last] += numTimes;
+				mySize += numTimes;
+				return;
+			}
+		}
+
+		if (myNumRuns == myRunMoves.length)
+			grow();
+
+		int index = getRunIndex(myNumRuns);
+		myRunMoves[index] = mov;
+		myRunCounts[index] = numTimes;
+		myNumRuns++;
+		mySize += numTimes;
 	}
 
 	/** Removes all elements from this move list. */
 	public void clear() {
-		myMoves.clear();
+		Arrays.fill(myRunMoves, null);
+		myFirstRun = 0;
+		myNumRuns = 0;
+		mySize = 0;
 	}
 
 	/** Returns whether or not there are no moves in this list. */
 	public boolean isEmpty() {
-		return myMoves.isEmpty();
+		return mySize == 0;
 	}
 
 	/** Returns the size of this move list. */
 	public int size() {
-		return myMoves.size();
+		return mySize;
+	}
+
+	/** Returns the number of runs of the same move in this list. */
+	public int getNumRuns() {
+		return myNumRuns;
+	}
+
+	/** Returns the move made in the given run of this list. */
+	public Move getRunMove(int run) {
+		checkRun(run);
+		return myRunMoves[getRunIndex(run)];
+	}
+
+	/** Returns the number of times the move is made in the given run of this list. */
+	public int getRunCount(int run) {
+		checkRun(run);
+		return myRunCounts[getRunIndex(run)];
 	}
 
 	/** Returns and removes the first move from this list. */
 	public Move firstMove() {
-		Move mov = myMoves.remove(0);
+		if (mySize == 0)
+			throw new IndexOutOfBoundsException("no moves left in list");
+
+		Move mov = myRunMoves[myFirstRun];
+		mySize--;
+		if (--myRunCounts[myFirstRun] == 0) {
+			myRunMoves[myFirstRun] = null;
+			myFirstRun = (myFirstRun + 1) % myRunMoves.length;
+			myNumRuns--;
+		}
 		return mov;
 	}
 
 	/** Returns the move at the given index of this list. */
 	public Move getMoveAt(int index) {
-		return myMoves.get(index);
+		if (index < 0  ||  index >= mySize)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + mySize);
+
+		int run = 0;
+		while (index >= myRunCounts[getRunIndex(run)]) {
+			index -= myRunCounts[getRunIndex(run)];
+			run++;
+		}
+		return myRunMoves[getRunIndex(run)];
 	}
 
 	/** Appends the moves in the given other list to this move list. */
 	public void merge(MoveList other) {
-		int size = other.size();
-		for (int i = 0;  i < size;  i++) {
-			addMove(other.getMoveAt(i));
+		int numRuns = other.myNumRuns;
+		for (int i = 0;  i < numRuns;  i++) {
+			int index = other.getRunIndex(i);
+			addMoves(other.myRunMoves[index], other.myRunCounts[index]);
 		}
 	}
 
 	/** Returns a string representation of this move list. */
 	public String toString() {
-		return myMoves.toString();
+		StringBuffer sb = new StringBuffer("[");
+		for (int i = 0;  i < myNumRuns;  i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(getRunMove(i) + ":" + getRunCount(i));
+		}
+		return sb.append("]").toString();
 	}
 
 	/** Returns true if this MoveList has the same moves as the given other MoveList. */
 	public boolean equals(Object o) {
-		try {
-			MoveList other = (MoveList)o;
-			return myMoves.equals(other.myMoves);
-		} catch (Exception e) {
+		if (!(o instanceof MoveList))
 			return false;
+
+		// runs of equal moves are always joined, so equal lists have equal runs
+		MoveList other = (MoveList)o;
+		if (mySize != other.mySize  ||  myNumRuns != other.myNumRuns)
+			return false;
+		for (int i = 0;  i < myNumRuns;  i++) {
+			if (!getRunMove(i).equals(other.getRunMove(i))  ||  getRunCount(i) != other.getRunCount(i))
+				return false;
+		}
+		return true;
+	}
+
+	/** Returns a hash code for this MoveList, consistent with equals. */
+	public int hashCode() {
+		int hash = mySize;
+		for (int i = 0;  i < myNumRuns;  i++)
+			hash = 31 * hash + getRunCount(i);
+		return hash;
+	}
+
+	/** Returns where the given run is in the circular buffer. */
+	private int getRunIndex(int run) {
+		return (myFirstRun + run) % myRunMoves.length;
+	}
+
+	private void checkRun(int run) {
+		if (run < 0  ||  run >= myNumRuns)
+			throw new IndexOutOfBoundsException("run " + run + ", number of runs " + myNumRuns);
+	}
+
+	/** Doubles the capacity of the circular buffer, unwrapping its runs to the front. */
+	private void grow() {
+		int capacity = myRunMoves.length * 2;
+		Move[] moves = new Move[capacity];
+		int[] counts = new int[capacity];
+		for (int i = 0;  i < myNumRuns;  i++) {
+			moves[i] = myRunMoves[getRunIndex(i)];
+			counts[i] = myRunCounts[getRunIndex(i)];
 		}
+		myRunMoves = moves;
+		myRunCounts = counts;
+		myFirstRun = 0;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package pacman.model;
+
+import java.io.Serializable;
+import java.util.*;
+
+/** A cache of the paths found by searching a level, shared by every ghost on it,
+  * so that a search made once (say, from a square on the way back to the ghost
+  * house) is a lookup every time after.  Paths are kept by the square they start
+  * from, the square they lead to, the move that was being made when they were
+  * asked for (since a path may not start by turning back) and the kind of search
+  * that found them.
+  *
+  * <p>The paths used longest ago are thrown away first once the cache holds more
+  * than its limit of bytes.  The level clears its cache whenever its walls change.
+  * A cache is saved in keyframes along with its level, since a ghost whose search
+  * would be cut short by its work budget moves differently when it finds the
+  * whole path here.
+  */
+public class PathCache implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	/** The number of bytes of paths a cache holds unless told otherwise. */
+	public static final long DEFAULT_MAX_BYTES = 256 * 1024;
+
+	/** Roughly how many bytes each path takes besides its steps: a map entry, its
+	  * key and the array header.
+	  */
+	private static final int ENTRY_BYTES = 80;
+
+	/** The most kinds of search told apart; others are not cached. */
+	private static final int MAX_KINDS = 8;
+
+	private LinkedHashMap<Long, Move[]> myPaths = new LinkedHashMap<Long, Move[]>(64, 0.75f, true);
+	private List<Class<?>> myKinds = new ArrayList<Class<?>>();
+	private long myMaxBytes = DEFAULT_MAX_BYTES;
+	private long myNumBytes = 0;
+	private long myNumHits = 0;
+	private long myNumMisses = 0;
+
+	/** Returns the path from one grid square to another that a search of the same
+	  * class as the given one found when last asked, as one of Move.UP, DOWN, LEFT
+	  * or RIGHT per step, or null if it is not in the cache.  An empty path means
+	  * there was no path.  The array returned belongs to the cache and must not be
+	  * changed.
+	  */
+	public Move[] get(Object search, int from, int to, Move currentMove) {
+		long key = getKey(search, from, to, currentMove);
+		Move[] path = (key < 0)  ?  null  :  myPaths.get(Long.valueOf(key));
+		if (path == null)
+			myNumMisses++;
+		else
+			myNumHits++;
+		return path;
+	}
+
+	/** Stores the path from one grid square to another that the given search found,
+	  * throwing away the least recently used paths if the cache is then too big.  The
+	  * cache keeps the given array, so it must not be changed afterward.
+	  */
+	public void put(Object search, int from, int to, Move currentMove, Move[] path) {
+		long key = getKey(search, from, to, currentMove);
+		if (key < 0)
+			return;
+
+		Move[] old = myPaths.put(Long.valueOf(key), path);
+		if (old != null)
+			myNumBytes -= getSize(old);
+		myNumBytes += getSize(path);
+		trim();
+	}
+
+	/** Throws away every path in this cache. */
+	public void clear() {
+		myPaths.clear();
+		myNumBytes = 0;
+	}
+
+	/** Sets the most bytes of paths this cache holds, throwing some away now if need be. */
+	public void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("negative cache size: " + maxBytes);
+		myMaxBytes = maxBytes;
+		trim();
+	}
+
+	/** Returns the most bytes of paths this cache holds. */
+	public long getMaxBytes() {
+		return myMaxBytes;
+	}
+
+	/** Returns roughly how many bytes the paths in this cache take. */
+	public long getNumBytes() {
+		return myNumBytes;
+	}
+
+	/** Returns the number of paths in this cache. */
+	public int size() {
+		return myPaths.size();
+	}
+
+	/** Returns how many times get() has found the path asked for. */
+	public long getNumHits() {
+		return myNumHits;
+	}
+
+	/** Returns how many times get() has not found the path asked for. */
+	public long getNumMisses() {
+		return myNumMisses;
+	}
+
+	/** Throws away the least recently used paths until this cache is small enough. */
+	private void trim() {
+		Iterator<Move[]> it = myPaths.values().iterator();
+		while (myNumBytes > myMaxBytes  &&  it.hasNext()) {
+			myNumBytes -= getSize(it.next());
+			it.remove();
+		}
+	}
+
+	/** Returns roughly how many bytes the given path takes in this cache. */
+	private static int getSize(Move[] path) {
+		return ENTRY_BYTES + 4 * path.length;
+	}
+
+	/** Returns the key of the given path, or -1 if it cannot be cached: 3 bits for
+	  * the class of the search, 4 for the direction of the current move, and 28 for
+	  * each square.
+	  */
+	private long getKey(Object search, int from, int to, Move currentMove) {
+		if (from >= (1 << 28)  ||  to >= (1 << 28))
+			return -1;
+
+		int kind = myKinds.indexOf(search.getClass());
+		if (kind < 0) {
+			if (myKinds.size() == MAX_KINDS)
+				return -1;
+			kind = myKinds.size();
+			myKinds.add(search.getClass());
+		}
+
+		Move dir = currentMove.normalize();
+		int direction = (dir.dx + 1) * 3 + dir.dy + 1;
+		return ((long)kind << 60) | ((long)direction << 56) | ((long)from << 28) | to;
+	}
+}
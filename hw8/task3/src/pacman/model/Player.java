@@ -0,0 +1,12 @@
+package pacman.model;
+
+/** Something that steers Pac-Man in place of a person at the keyboard, such as
+  * a bot being scored by a Simulation.
+  */
+public interface Player {
+	/** Returns the key code (KeyEvent.VK_LEFT etc.) of the direction this player
+	  * wants Pac-Man to go before the given model's next update, or 0 to leave
+	  * the model's desired direction as it is.
+	  */
+	public int getDesiredDir(GameModel model);
+}
@@ -0,0 +1,45 @@
+package pacman.model;
+
+import java.awt.event.KeyEvent;
+import java.util.Random;
+
+/** A player that wanders around the maze, picking a new random direction
+  * every so often until it runs out of lives.
+  *
+  * <p>Each random player has its own random number generator, so players
+  * in games running on different threads never wait on one another.
+  */
+public class RandomPlayer implements Player {
+	private static final int[] DIRECTIONS = {KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN};
+	private static final int DEFAULT_TICKS_BETWEEN_TURNS = GameModel.UPDATES_PER_SECOND / 2;
+
+	private Random myRandom;
+	private int myTicksBetweenTurns;
+	private long myNumTicks = 0;
+
+	/** Constructs a new random player that turns twice a second. */
+	public RandomPlayer() {
+		this(new Random());
+	}
+
+	/** Constructs a new random player that turns twice a second, using the given random number generator. */
+	public RandomPlayer(Random random) {
+		this(random, DEFAULT_TICKS_BETWEEN_TURNS);
+	}
+
+	/** Constructs a new random player that turns every given number of updates,
+	  * using the given random number generator.
+	  */
+	public RandomPlayer(Random random, int ticksBetweenTurns) {
+		myRandom = random;
+		myTicksBetweenTurns = Math.max(1, ticksBetweenTurns);
+	}
+
+	/** Returns a random direction every so often, and 0 the rest of the time. */
+	public int getDesiredDir(GameModel model) {
+		if (myNumTicks++ % myTicksBetweenTurns == 0)
+			return DIRECTIONS[myRandom.nextInt(DIRECTIONS.length)];
+		else
+			return 0;
+	}
+}
@@ -0,0 +1,252 @@
+package pacman.model;
+
+import pacman.sprite.MovingSprite;
+
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** Records the moves made by a level's sprites, or how Pac-Man is steered through a
+  * whole game, as a binary replay (see ReplayWriter).
+  *
+  * <p>The game's update thread puts each tick's moves into a fixed-size ring
+  * buffer of ints, which takes no locks and allocates nothing; a background
+  * thread takes them out, encodes them and writes them to the output stream.
+  * The writer is woken early once the buffer is half full; should it still fall
+  * so far behind that the buffer fills up, ticks are dropped rather than making
+  * the game wait, and getNumDroppedTicks() says so.
+  * The background thread also opens and closes the output, so stop() returns
+  * at once; waitUntilWritten() is there for whoever needs the finished replay.
+  */
+public class Recorder implements Runnable {
+	/** The number of ticks the ring buffer holds; a power of two. */
+	public static final int DEFAULT_CAPACITY = 1 << 12;
+
+	private static final long WRITER_SLEEP_TIME = 100000000L;  // ns
+
+	private OutputStream myOut;  // or null, to open myFile
+	private File myFile;
+	private int myKind;
+	private String myLevelName;
+	private long mySeed;
+	private String[] myNames;
+	private ReplayWriter myWriter;  // used only by the writer thread
+	private int myNumSprites;
+	private int[] myRing;  // one packed move per sprite per tick
+	private int myMask;
+	private AtomicLong myNumWritten = new AtomicLong(0);  // ticks put in by the update thread
+	private AtomicLong myNumRead = new AtomicLong(0);     // ticks taken out by the writer thread
+	private long myNumDroppedTicks = 0;
+	private volatile boolean myIsStopped = false;
+	private volatile IOException myError = null;
+	private boolean myIsStarted = false;
+	private volatile Thread myThread = null;  // that is writing the moves
+	private final CountDownLatch myDone = new CountDownLatch(1);
+
+	/** Constructs a new recorder of the given sprites' moves on the level with the given
+	  * name, played with the given random seed, to the given stream.
+	  */
+	public Recorder(OutputStream out, String levelName, long seed, List<MovingSprite> sprites) {
+		this(out, levelName, seed, sprites, DEFAULT_CAPACITY);
+	}
+
+	/** Constructs a new recorder whose ring buffer holds the given number of ticks
+	  * (rounded up to a power of two).
+	  */
+	public Recorder(OutputStream out, String levelName, long seed, List<MovingSprite> sprites, int capacity) {
+		this(out, null, ReplayWriter.LEVEL_REPLAY, levelName, seed, getNames(sprites), capacity);
+	}
+
+	/** Constructs a new recorder to the given file, which the background thread
+	  * creates when it starts.
+	  */
+	public Recorder(File file, String levelName, long seed, List<MovingSprite> sprites) {
+		this(null, file, ReplayWriter.LEVEL_REPLAY, levelName, seed, getNames(sprites), DEFAULT_CAPACITY);
+	}
+
+	/** Constructs a new recorder of how Pac-Man is steered through a whole game, played
+	  * with the given random seed, to the given stream (see recordMove()).
+	  */
+	public Recorder(OutputStream out, long seed) {
+		this(out, null, ReplayWriter.GAME_REPLAY, "", seed, new String[] {"Player"}, DEFAULT_CAPACITY);
+	}
+
+	/** Constructs a new recorder of a whole game to the given file, which the background
+	  * thread creates when it starts.
+	  */
+	public Recorder(File file, long seed) {
+		this(null, file, ReplayWriter.GAME_REPLAY, "", seed, new String[] {"Player"}, DEFAULT_CAPACITY);
+	}
+
+	private Recorder(OutputStream out, File file, int kind, String levelName, long seed, String[] names, int capacity) {
+		myOut = out;
+		myFile = file;
+		myKind = kind;
+		myLevelName = levelName;
+		mySeed = seed;
+		myNumSprites = names.length;
+		myNames = names;
+
+		int ticks = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		myRing = new int[ticks * myNumSprites];
+		myMask = ticks - 1;
+	}
+
+	/** Returns the names of the given sprites. */
+	private static String[] getNames(List<MovingSprite> sprites) {
+		String[] names = new String[sprites.size()];
+		for (int i = 0;  i < names.length;  i++)
+			names[i] = sprites.get(i).getName();
+		return names;
+	}
+
+	/** Writes the recorded moves on the given executor.  An executor with a single
+	  * thread writes one recording after another, each being closed before the
+	  * next is opened.
+	  */
+	public void start(Executor executor) {
+		myIsStarted = true;
+		executor.execute(this);
+	}
+
+	/** Records the last move made by each of the given sprites.  Called by the
+	  * game's update thread once per tick.
+	  */
+	public void recordTick(List<MovingSprite> sprites) {
+		long tick = myNumWritten.get();
+		if (tick - myNumRead.get() > myMask  ||  myError != null) {
+			myNumDroppedTicks++;
+			return;
+		}
+
+		int base = (int)(tick & myMask) * myNumSprites;
+		int numSprites = Math.min(myNumSprites, sprites.size());
+		for (int i = 0;  i < numSprites;  i++)
+			myRing[base + i] = pack(sprites.get(i).getLastMove());
+		for (int i = numSprites;  i < myNumSprites;  i++)
+			myRing[base + i] = 0;
+		publish(tick);
+	}
+
+	/** Records the given move as the first sprite's move this tick, and no move for
+	  * any other.  Called by the game's update thread once per tick of a game
+	  * recording, with how Pac-Man is being steered.
+	  */
+	public void recordMove(Move mov) {
+		long tick = myNumWritten.get();
+		if (tick - myNumRead.get() > myMask  ||  myError != null) {
+			myNumDroppedTicks++;
+			return;
+		}
+
+		int base = (int)(tick & myMask) * myNumSprites;
+		myRing[base] = pack(mov);
+		for (int i = 1;  i < myNumSprites;  i++)
+			myRing[base + i] = 0;
+		publish(tick);
+	}
+
+	/** Hands the given tick, whose moves are in place, to the writer thread. */
+	private void publish(long tick) {
+		myNumWritten.lazySet(tick + 1);
+
+		// wake the writer rather than let it sleep through a burst of fast updates
+		if (tick + 1 - myNumRead.get() == (myMask + 1) / 2) {
+			Thread thread = myThread;
+			if (thread != null)
+				LockSupport.unpark(thread);
+		}
+	}
+
+	private static int pack(Move mov) {
+		return (mov.dx << 16) | (mov.dy & 0xFFFF);
+	}
+
+	/** Stops recording.  This doesn't wait: the background thread goes on to write
+	  * the moves recorded so far and close the stream.
+	  */
+	public void stop() {
+		myIsStopped = true;
+		Thread thread = myThread;
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+
+	/** Waits until the moves recorded before stop() was called have been written
+	  * and the stream closed; if the recorder was never started, writes them itself.
+	  * @throws IOException if anything went wrong writing the moves.
+	  */
+	public void waitUntilWritten() throws IOException {
+		if (!myIsStarted)
+			run();
+		try {
+			myDone.await();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (myError != null)
+			throw myError;
+	}
+
+	/** Returns the number of ticks recorded. */
+	public long getNumTicks() {
+		return myNumWritten.get();
+	}
+
+	/** Returns the number of ticks that were lost because the ring buffer was full
+	  * (or because writing failed).
+	  */
+	public long getNumDroppedTicks() {
+		return myNumDroppedTicks;
+	}
+
+	/** Opens the stream and writes recorded ticks as they come in, until stopped.  Run
+	  * by the background thread.
+	  */
+	public void run() {
+		myThread = Thread.currentThread();
+		Move[] moves = new Move[myNumSprites];
+		try {
+			if (myOut == null)
+				myOut = new BufferedOutputStream(new FileOutputStream(myFile));
+			myWriter = new ReplayWriter(myOut, myKind, myLevelName, mySeed, myNames);
+
+			while (true) {
+				boolean stopped = myIsStopped;
+				long read = myNumRead.get();
+				long written = myNumWritten.get();
+				for ( ;  read < written;  read++) {
+					int base = (int)(read & myMask) * myNumSprites;
+					for (int i = 0;  i < myNumSprites;  i++) {
+						int packed = myRing[base + i];
+						moves[i] = Move.newMove(packed >> 16, (short)packed);
+					}
+					myWriter.writeTick(moves);
+					myNumRead.lazySet(read + 1);
+				}
+
+				if (stopped)
+					break;
+				LockSupport.parkNanos(this, WRITER_SLEEP_TIME);
+			}
+		} catch (IOException ioe) {
+			myError = ioe;  // everything recorded from now on gets dropped
+		} finally {
+			try {
+				if (myWriter != null)
+					myWriter.close();
+				else if (myOut != null)
+					myOut.close();
+			} catch (IOException ioe) {
+				if (myError == null)
+					myError = ioe;
+			}
+			myThread = null;
+			myDone.countDown();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package pacman.model;
+
+import pacman.sprite.MovingSprite;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.InflaterInputStream;
+
+/** Reads a game replay in the binary replay format written by ReplayWriter.
+  *
+  * <p>The header is read when the reader is constructed; the moves are read
+  * a run at a time as they are needed, by readRun() or feed(), so that a
+  * replay can start playing without reading the whole file.
+  */
+public class ReplayReader {
+	/** The most runs feed() reads in one call once every sprite has a move queued. */
+	public static final int MAX_FEED_RUNS = 64;
+
+	private DataInputStream myIn;
+	private int myKind;
+	private String myLevelName;
+	private long mySeed;
+	private String[] mySpriteNames;
+	private List<Move> myMoves = new ArrayList<Move>();
+	private boolean myIsFinished = false;
+
+	// the last run read
+	private int myRunSprite = -1;
+	private Move myRunMove = null;
+	private int myRunCount = 0;
+	private int myNumMovesLeft = 0;  // of it, for readMove
+
+	/** Constructs a new reader of the replay at the given stream, and reads its header.
+	  * @throws IOException if the stream does not hold a replay this reader understands.
+	  */
+	public ReplayReader(InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+		if (header.readInt() != ReplayWriter.MAGIC)
+			throw new IOException("not a replay file");
+		int version = header.readUnsignedByte();
+		if (version < 1  ||  version > ReplayWriter.VERSION)
+			throw new IOException("unsupported replay version " + version);
+		myKind = (version == 1)  ?  ReplayWriter.LEVEL_REPLAY  :  header.readUnsignedByte();
+		if (myKind != ReplayWriter.LEVEL_REPLAY  &&  myKind != ReplayWriter.GAME_REPLAY)
+			throw new IOException("unknown kind of replay " + myKind);
+
+		myLevelName = header.readUTF();
+		mySeed = header.readLong();
+		mySpriteNames = new String[header.readUnsignedByte()];
+		for (int i = 0;  i < mySpriteNames.length;  i++)
+			mySpriteNames[i] = header.readUTF();
+
+		myIn = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+		myMoves.add(null);  // move numbers start at 1
+	}
+
+	/** Returns whether the given stream starts with a binary replay.  The stream must
+	  * support mark/reset; it is left where it was.
+	  */
+	public static boolean isReplay(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			return new DataInputStream(in).readInt() == ReplayWriter.MAGIC;
+		} catch (EOFException eofe) {
+			return false;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/** Returns what kind of replay this is: ReplayWriter.LEVEL_REPLAY or GAME_REPLAY. */
+	public int getKind() {
+		return myKind;
+	}
+
+	/** Returns the name of the level this replay was recorded on. */
+	public String getLevelName() {
+		return myLevelName;
+	}
+
+	/** Returns the random seed the recorded game was played with. */
+	public long getSeed() {
+		return mySeed;
+	}
+
+	/** Returns the number of sprites whose moves are in this replay. */
+	public int getNumSprites() {
+		return mySpriteNames.length;
+	}
+
+	/** Returns the name of the given sprite. */
+	public String getSpriteName(int sprite) {
+		return mySpriteNames[sprite];
+	}
+
+	/** Returns true if all of this replay's moves have been read. */
+	public boolean isFinished() {
+		return myIsFinished;
+	}
+
+	/** Reads the next run of moves, which can then be looked at with getRunSprite(),
+	  * getRunMove() and getRunCount().
+	  * @return false if there are no more runs.
+	  */
+	public boolean readRun() throws IOException {
+		if (myIsFinished)
+			return false;
+
+		int code = readVarint(true);
+		if (code < 0) {
+			myIsFinished = true;
+			myIn.close();
+			return false;
+		}
+
+		int numSprites = mySpriteNames.length;
+		int number = code / numSprites;
+		myRunSprite = code % numSprites;
+		if (number == 0) {
+			myRunMove = Move.newMove(unzigzag(readVarint(false)), unzigzag(readVarint(false)));
+			myMoves.add(myRunMove);
+		} else if (number < myMoves.size())
+			myRunMove = myMoves.get(number);
+		else
+			throw new IOException("bad move number " + number);
+		myRunCount = readVarint(false);
+		return true;
+	}
+
+	/** Reads the next move of the first sprite, for a replay of just one sprite,
+	  * such as a game replay.
+	  * @return null if there are no more.
+	  */
+	public Move readMove() throws IOException {
+		while (myNumMovesLeft == 0) {
+			if (!readRun())
+				return null;
+			if (myRunSprite == 0)
+				myNumMovesLeft = myRunCount;
+		}
+		myNumMovesLeft--;
+		return myRunMove;
+	}
+
+	/** Returns which sprite makes the last run read. */
+	public int getRunSprite() {
+		return myRunSprite;
+	}
+
+	/** Returns the move made in the last run read. */
+	public Move getRunMove() {
+		return myRunMove;
+	}
+
+	/** Returns how many times the move is made in the last run read. */
+	public int getRunCount() {
+		return myRunCount;
+	}
+
+	/** Queues runs of moves onto the given sprites (the nth sprite in the list
+	  * getting the nth sprite's moves), reading them in the order they are in the
+	  * replay, until each has at least the given number of moves queued, or the
+	  * replay runs out.  Once every sprite has a move queued, it stops after
+	  * MAX_FEED_RUNS runs even if some want more, and reads on next time, so that a
+	  * sprite whose next run is far off doesn't make it read most of the file now.
+	  */
+	public void feed(List<MovingSprite> sprites, int numMoves) throws IOException {
+		int numSprites = Math.min(sprites.size(), mySpriteNames.length);
+		for (int numRuns = 0;  ;  numRuns++) {
+			boolean isHungry = false, isStarving = false;
+			for (int i = 0;  i < numSprites;  i++) {
+				int queued = sprites.get(i).getNumQueuedMoves();
+				isHungry |= (queued < numMoves);
+				isStarving |= (queued == 0);
+			}
+			if (!isHungry  ||  (!isStarving  &&  numRuns >= MAX_FEED_RUNS)  ||  !readRun())
+				return;
+			if (myRunSprite < numSprites)
+				sprites.get(myRunSprite).queueMove(myRunMove, myRunCount);
+		}
+	}
+
+	/** Reads the rest of this replay's moves and returns them as a text demo, in the
+	  * format read by GameModel.readDemo: the level name, then a line for each sprite
+	  * with its name and its runs of moves.
+	  */
+	public String toText() throws IOException {
+		MoveList[] lists = new MoveList[mySpriteNames.length];
+		for (int i = 0;  i < lists.length;  i++)
+			lists[i] = new MoveList();
+		while (readRun())
+			lists[myRunSprite].addMoves(myRunMove, myRunCount);
+
+		StringBuffer sb = new StringBuffer(myLevelName);
+		for (int i = 0;  i < lists.length;  i++) {
+			sb.append('\n').append(mySpriteNames[i]);
+			for (int run = 0;  run < lists[i].getNumRuns();  run++)
+				sb.append('\t').append(lists[i].getRunMove(run)).append(':').append(lists[i].getRunCount(run));
+		}
+		return sb.append('\n').toString();
+	}
+
+	/** Reads a varint; at the end of the stream, returns -1 if allowed, or throws if not. */
+	private int readVarint(boolean eofAllowed) throws IOException {
+		int n = 0;
+		for (int shift = 0;  shift < 32;  shift += 7) {
+			int b = myIn.read();
+			if (b < 0) {
+				if (eofAllowed  &&  shift == 0)
+					return -1;
+				throw new EOFException("replay ends in the middle of a run");
+			}
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return n;
+		}
+		throw new IOException("bad varint in replay");
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+}
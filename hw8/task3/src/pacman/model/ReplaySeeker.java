@@ -0,0 +1,297 @@
+package pacman.model;
+
+import pacman.sprite.MovingSprite;
+
+import java.io.*;
+import java.util.*;
+
+/** Plays back a demo or game replay on a game model in a way that lets it jump to
+  * any tick.
+  *
+  * <p>A demo, or a binary replay of a level, is played back as the attract-mode
+  * demos are (see GameModel.playDemo), which keep no score.  A game replay (see
+  * ReplayWriter) is played back as the game it was (see GameModel.replayGame), so
+  * the score, lives and level at any tick are what they were in the game.
+  *
+  * <p>As the demo plays, a keyframe of the whole game state is taken every so
+  * many ticks (see GameModel.createKeyframe).  Seeking to a tick restores the
+  * nearest keyframe at or before it and updates the model forward from there,
+  * as fast as the processor allows, so a seek never has to replay more than one
+  * keyframe interval's worth of ticks once the demo has been played that far.
+  * Seeking past the furthest tick played so far plays forward to it, taking
+  * keyframes along the way.
+  *
+  * <p>A binary replay's moves are read from it only as far as they have been
+  * played, and kept, along with where each sprite had got to in them at each
+  * keyframe, to be handed out again after seeking back.  A text demo's moves are
+  * all queued up front, so the keyframes hold them.
+  *
+  * <p>Keyframes are taken while playing back, not while recording, so that
+  * recording a game costs the update thread nothing extra.
+  */
+public class ReplaySeeker implements Listener {
+	/** The default number of ticks between keyframes: ten seconds of play. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 10 * GameModel.UPDATES_PER_SECOND;
+
+	/** The number of moves each sprite of a level replay is kept queued ahead. */
+	private static final int LOOKAHEAD = 2;
+
+	private GameModel myModel;
+	private int myKeyframeInterval;
+	private List<Keyframe> myKeyframes = new ArrayList<Keyframe>();  // in order of tick
+	private List<int[]> myKeyframePlaces = new ArrayList<int[]>();   // myRuns and myOffsets at each
+	private long myTick = 0;
+
+	// a binary replay's moves, one list for each sprite, as many as have been read,
+	// and the run and the move in it that each sprite is to be handed next
+	private ReplayReader myReplay = null;
+	private boolean myIsGame = false;
+	private MoveList[] myMoves = null;
+	private int[] myRuns = null, myOffsets = null;
+	private boolean myIsReplayBroken = false;
+
+	// the state of the game as it ended, which the model wipes at game over
+	private int myFinalScore = 0, myFinalLives = 0, myFinalLevel = 0;
+
+	/** Constructs a new seeker that plays the demo at the given input stream on the
+	  * given model, with the default keyframe interval.
+	  */
+	public ReplaySeeker(GameModel model, InputStream demo) throws IOException {
+		this(model, demo, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/** Constructs a new seeker that plays the demo at the given input stream on the
+	  * given model, taking a keyframe every given number of ticks.  The demo may be a
+	  * text demo or a binary replay; the model must already have the demo's level, or
+	  * for a game replay, the levels the game was played on.
+	  */
+	public ReplaySeeker(GameModel model, InputStream demo, int keyframeInterval) throws IOException {
+		if (keyframeInterval <= 0)
+			throw new IllegalArgumentException("bad keyframe interval: " + keyframeInterval);
+
+		myModel = model;
+		myKeyframeInterval = keyframeInterval;
+
+		if (!demo.markSupported())
+			demo = new BufferedInputStream(demo);
+		if (ReplayReader.isReplay(demo)) {
+			myReplay = new ReplayReader(demo);
+			int numSprites = myReplay.getNumSprites();
+			myMoves = new MoveList[numSprites];
+			for (int i = 0;  i < numSprites;  i++)
+				myMoves[i] = new MoveList();
+			myRuns = new int[numSprites];
+			myOffsets = new int[numSprites];
+
+			myIsGame = (myReplay.getKind() == ReplayWriter.GAME_REPLAY);
+			if (myIsGame)
+				myModel.replayGame(myReplay.getSeed());
+			else
+				myModel.playDemo(myReplay.getLevelName(), myReplay.getSeed());
+		} else
+			myModel.playDemo(demo);
+
+		myModel.addListener(this);
+		addKeyframe();
+	}
+
+	/** Returns the game model this seeker plays the demo on. */
+	public GameModel getModel() {
+		return myModel;
+	}
+
+	/** Returns the tick of the demo that the model is currently at. */
+	public long getTick() {
+		return myTick;
+	}
+
+	/** Returns the number of ticks between keyframes. */
+	public int getKeyframeInterval() {
+		return myKeyframeInterval;
+	}
+
+	/** Returns how many keyframes have been taken so far. */
+	public int getNumKeyframes() {
+		return myKeyframes.size();
+	}
+
+	/** Returns the total size in bytes of the keyframes taken so far. */
+	public long getKeyframeBytes() {
+		long total = 0;
+		for (Keyframe keyframe : myKeyframes)
+			total += keyframe.getSize();
+		return total;
+	}
+
+	/** Returns true if the demo has run out of moves at the current tick, or the game
+	  * being replayed is over.
+	  */
+	public boolean isFinished() {
+		if (myIsGame)
+			return !myModel.isInProgress()  ||  !hasMoves(0);
+		return !myModel.isPlayingDemo();
+	}
+
+	/** Returns the score at the current tick; once the game being replayed is over,
+	  * its final score.
+	  */
+	public int getScore() {
+		return isGameOver()  ?  myFinalScore  :  myModel.getScore(myModel.getPlayerNumber());
+	}
+
+	/** Returns the number of lives left at the current tick. */
+	public int getNumLives() {
+		return isGameOver()  ?  myFinalLives  :  myModel.getNumLives();
+	}
+
+	/** Returns the number of the level being played at the current tick. */
+	public int getLevelNumber() {
+		return isGameOver()  ?  myFinalLevel  :  myModel.getLevelNumber();
+	}
+
+	/** Returns true if this is a game replay whose game is over at the current tick. */
+	private boolean isGameOver() {
+		return myIsGame  &&  !myModel.isInProgress();
+	}
+
+	/** Updates the model by one tick of the demo, taking a keyframe if one is due.
+	  * @return false if the demo had already run out of moves.
+	  */
+	public boolean step() {
+		if (isFinished())
+			return false;
+
+		if (myIsGame) {
+			// isFinished() found this tick's steering
+			myModel.setDesiredMove(myMoves[0].getRunMove(myRuns[0]));
+			myOffsets[0]++;
+		} else if (myReplay != null)
+			feed();
+		myModel.update();
+		myTick++;
+		if (myTick % myKeyframeInterval == 0  &&  myTick > getLastKeyframe().getTick())
+			addKeyframe();
+		return true;
+	}
+
+	/** Puts the model into its state at the given tick of the demo, or at the last tick
+	  * if the demo runs out of moves before then.
+	  * @return the tick actually reached.
+	  */
+	public long seek(long tick) {
+		tick = Math.max(0, tick);
+		int index = findKeyframe(tick);
+		Keyframe keyframe = myKeyframes.get(index);
+		if (tick < myTick  ||  keyframe.getTick() > myTick) {
+			myModel.restoreKeyframe(keyframe);
+			myTick = keyframe.getTick();
+			int[] places = myKeyframePlaces.get(index);
+			if (places != null) {
+				System.arraycopy(places, 0, myRuns, 0, myRuns.length);
+				System.arraycopy(places, myRuns.length, myOffsets, 0, myOffsets.length);
+			}
+		}
+
+		while (myTick < tick  &&  step())
+			;
+		return myTick;
+	}
+
+	/** Takes a keyframe at the current tick, noting where each sprite is in the replay's moves. */
+	private void addKeyframe() {
+		int[] places = null;
+		if (myReplay != null) {
+			places = new int[myRuns.length * 2];
+			System.arraycopy(myRuns, 0, places, 0, myRuns.length);
+			System.arraycopy(myOffsets, 0, places, myRuns.length, myOffsets.length);
+		}
+		myKeyframes.add(myModel.createKeyframe(myTick));
+		myKeyframePlaces.add(places);
+	}
+
+	/** Queues the next moves of the level replay onto the sprites that are running
+	  * short, as GameModel does with a replay it streams in itself.
+	  */
+	private void feed() {
+		List<MovingSprite> sprites = myModel.getMovingSprites();
+		int numSprites = Math.min(sprites.size(), myMoves.length);
+		for (int i = 0;  i < numSprites;  i++) {
+			MovingSprite sprite = sprites.get(i);
+			while (sprite.getNumQueuedMoves() < LOOKAHEAD  &&  hasMoves(i)) {
+				int count = myMoves[i].getRunCount(myRuns[i]);
+				sprite.queueMove(myMoves[i].getRunMove(myRuns[i]), count - myOffsets[i]);
+				myOffsets[i] = count;
+			}
+		}
+	}
+
+	/** Returns whether the given sprite has a move left to be handed out, reading more
+	  * of the replay if need be, and points myRuns and myOffsets at it.
+	  */
+	private boolean hasMoves(int sprite) {
+		MoveList moves = myMoves[sprite];
+		while (true) {
+			if (myRuns[sprite] < moves.getNumRuns()  &&  myOffsets[sprite] < moves.getRunCount(myRuns[sprite]))
+				return true;
+			if (myRuns[sprite] + 1 < moves.getNumRuns()) {
+				myRuns[sprite]++;
+				myOffsets[sprite] = 0;
+			} else if (!readRun())  // the last run may yet get longer, so read on rather than pass it
+				return false;
+		}
+	}
+
+	/** Reads the replay's next run onto the end of its sprite's moves.
+	  * @return false if there are no more.
+	  */
+	private boolean readRun() {
+		try {
+			if (myIsReplayBroken  ||  !myReplay.readRun())
+				return false;
+		} catch (IOException ioe) {
+			System.err.println("Invalid replay file!  IO ERROR: " + ioe);
+			myIsReplayBroken = true;
+			return false;
+		}
+		myMoves[myReplay.getRunSprite()].addMoves(myReplay.getRunMove(), myReplay.getRunCount());
+		return true;
+	}
+
+	/** Returns the index of the last keyframe taken at or before the given tick. */
+	private int findKeyframe(long tick) {
+		int low = 0, high = myKeyframes.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) / 2;
+			if (myKeyframes.get(mid).getTick() <= tick)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/** Returns the keyframe with the highest tick taken so far. */
+	private Keyframe getLastKeyframe() {
+		return myKeyframes.get(myKeyframes.size() - 1);
+	}
+
+	/** Implementation of the Listener interface; keeps the state of the game being
+	  * replayed as it ends.
+	  */
+	public void gameUpdated(Listenable origin, Object source, Object eventType) {
+		if (eventType == GameModel.Event.GAME_OVER) {
+			myFinalScore = myModel.getScore(myModel.getPlayerNumber());
+			myFinalLives = myModel.getNumLives();
+			myFinalLevel = myModel.getLevelNumber();
+		}
+	}
+
+	/** Does nothing; required as part of Listener interface. */
+	public void detach() {}
+
+	/** Returns a string representation of this seeker. */
+	public String toString() {
+		return "ReplaySeeker(tick=" + myTick + ", " + myKeyframes.size() + " keyframes, "
+			+ getKeyframeBytes() + " bytes)";
+	}
+}
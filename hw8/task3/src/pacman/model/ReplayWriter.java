@@ -0,0 +1,142 @@
+package pacman.model;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+
+/** Writes a game replay in the compact binary replay format.
+  *
+  * <p>A replay file starts with a header, which is not compressed:
+  * <pre>
+  *   int    MAGIC ("PMRP")
+  *   byte   VERSION
+  *   byte   kind (LEVEL_REPLAY or GAME_REPLAY; version 1 files have only levels)
+  *   UTF    level name
+  *   long   random seed
+  *   byte   number of sprites
+  *   UTF    name of each sprite
+  * </pre>
+  * A level replay holds the moves of every sprite on one level, made on the
+  * ticks the sprites moved, and is played back as a demo.  A game replay holds
+  * how Pac-Man was steered (as GameModel.getDesiredMove() returned it) on every
+  * tick of a whole game, from its start to game over, as one sprite; its level
+  * name is empty and its seed is the game's, and it is played back by playing
+  * the game again (see GameModel.replayGame).
+  * The rest of the file is deflated, and holds the sprites' moves as runs of
+  * the same move, each run a varint code and a varint count.  The code is
+  * <tt>moveNumber * numSprites + spriteIndex</tt>; move number 0 means that
+  * a new move follows as two zigzag varints (dx, dy), and that it is given
+  * the next unused number, starting from 1.  Each sprite's runs are in the
+  * order they are made, but different sprites' runs may be interleaved in
+  * any order; the file ends where the runs do.  writeTick() ends a run after
+  * MAX_RUN_LENGTH ticks, so that no sprite's moves fall far behind the others'
+  * in the file, and a reader never has to read far ahead to find them.
+  *
+  * <p>Since most runs are of moves seen before, a run usually takes two bytes
+  * before compression, where a text demo (see GameModel.readDemo) takes ten.
+  */
+public class ReplayWriter {
+	public static final int MAGIC = 0x504D5250;
+	public static final int VERSION = 2;
+
+	/** The most ticks writeTick() puts in one run. */
+	public static final int MAX_RUN_LENGTH = 64;
+
+	/** The kinds of replay. */
+	public static final int LEVEL_REPLAY = 0, GAME_REPLAY = 1;
+
+	private DataOutputStream myOut;
+	private int myNumSprites;
+	private Map<Move, Integer> myMoveNumbers = new HashMap<Move, Integer>();
+
+	// the run each sprite is making right now, for writeTick
+	private Move[] myRunMoves;
+	private int[] myRunCounts;
+
+	/** Constructs a new writer that writes a replay of the given level with the given
+	  * sprites, made with the given random seed, to the given stream.
+	  */
+	public ReplayWriter(OutputStream out, String levelName, long seed, String[] spriteNames) throws IOException {
+		this(out, LEVEL_REPLAY, levelName, seed, spriteNames);
+	}
+
+	/** Constructs a new writer that writes a replay of the given kind to the given stream. */
+	public ReplayWriter(OutputStream out, int kind, String levelName, long seed, String[] spriteNames) throws IOException {
+		if (spriteNames.length == 0  ||  spriteNames.length > 255)
+			throw new IllegalArgumentException("bad number of sprites: " + spriteNames.length);
+		if (kind != LEVEL_REPLAY  &&  kind != GAME_REPLAY)
+			throw new IllegalArgumentException("bad kind of replay: " + kind);
+
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeByte(VERSION);
+		header.writeByte(kind);
+		header.writeUTF(levelName);
+		header.writeLong(seed);
+		header.writeByte(spriteNames.length);
+		for (int i = 0;  i < spriteNames.length;  i++)
+			header.writeUTF(spriteNames[i]);
+		header.flush();
+
+		myOut = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(out)));
+		myNumSprites = spriteNames.length;
+		myRunMoves = new Move[myNumSprites];
+		myRunCounts = new int[myNumSprites];
+	}
+
+	/** Writes one tick's worth of moves, one for each sprite.  Runs of the same
+	  * move are gathered up and written when they end, or reach MAX_RUN_LENGTH.
+	  */
+	public void writeTick(Move[] moves) throws IOException {
+		for (int i = 0;  i < myNumSprites;  i++) {
+			if (myRunCounts[i] > 0  &&  myRunCounts[i] < MAX_RUN_LENGTH  &&  myRunMoves[i].equals(moves[i]))
+				myRunCounts[i]++;
+			else {
+				if (myRunCounts[i] > 0)
+					writeRun(i, myRunMoves[i], myRunCounts[i]);
+				myRunMoves[i] = moves[i];
+				myRunCounts[i] = 1;
+			}
+		}
+	}
+
+	/** Writes a run of the given move made the given number of times by the given sprite. */
+	public void writeRun(int sprite, Move mov, int count) throws IOException {
+		if (sprite < 0  ||  sprite >= myNumSprites)
+			throw new IllegalArgumentException("no sprite #" + sprite);
+		if (count <= 0)
+			return;
+
+		Integer number = myMoveNumbers.get(mov);
+		if (number == null) {
+			writeVarint(sprite);
+			writeVarint(zigzag(mov.dx));
+			writeVarint(zigzag(mov.dy));
+			myMoveNumbers.put(mov, myMoveNumbers.size() + 1);
+		} else
+			writeVarint(number.intValue() * myNumSprites + sprite);
+		writeVarint(count);
+	}
+
+	/** Writes any runs still being gathered by writeTick, and closes the stream. */
+	public void close() throws IOException {
+		for (int i = 0;  i < myNumSprites;  i++) {
+			if (myRunCounts[i] > 0)
+				writeRun(i, myRunMoves[i], myRunCounts[i]);
+			myRunCounts[i] = 0;
+		}
+		myOut.close();
+	}
+
+	private void writeVarint(int n) throws IOException {
+		while ((n & ~0x7F) != 0) {
+			myOut.write((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		myOut.write(n);
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+}
@@ -0,0 +1,192 @@
+package pacman.model;
+
+import java.io.*;
+
+/** Drives a game model with no view attached, updating it as fast as the
+  * processor allows rather than UPDATES_PER_SECOND times per second.
+  *
+  * <p>This is meant for running games where there is no screen, keyboard or
+  * sound card (scoring bots on a server, checking demos, and so on).  No AWT
+  * component or toolkit is ever created; the model's update() is simply
+  * called in a loop instead of being timed by PacManPanel's ModelUpdater.
+  * The simulation listens to its model in order to tally deaths, cleared
+  * levels and the final score of each game.
+  */
+public class Simulation implements Listener {
+	private GameModel myModel;
+	private GameModel.Type myType;
+	private Player myPlayer = null;
+	private long myNumTicks = 0;
+	private long myElapsedTime = 0;  // in ns, spent inside GameModel.update()
+	private int myNumDeaths = 0;
+	private int myNumLevelsCleared = 0;
+	private int myFinalScore = 0;
+	private boolean myIsGameOver = false;
+
+	/** Constructs a new simulation of a Pac-Man game. */
+	public Simulation() {
+		this(GameModel.Type.PACMAN);
+	}
+
+	/** Constructs a new simulation of the given type of game. */
+	public Simulation(GameModel.Type type) {
+		myType = type;
+		myModel = new GameModel(type);
+		myModel.addListener(this);
+	}
+
+	/** Adds the level read from the given input stream to this simulation's model. */
+	public void addLevel(InputStream is) {
+		myModel.addLevel(is, myType);
+	}
+
+	/** Adds a level made from the given compiled level to this simulation's model. */
+	public void addLevel(LevelTemplate template) {
+		myModel.addLevel(template);
+	}
+
+	/** Adds the demo read from the given input stream to this simulation's model. */
+	public void addDemo(InputStream is, String demoName) {
+		myModel.addDemo(is, demoName, myType);
+	}
+
+	/** Sets the player who steers Pac-Man before each update; null means nobody does. */
+	public void setPlayer(Player player) {
+		myPlayer = player;
+	}
+
+	/** Returns the game model being driven by this simulation. */
+	public GameModel getModel() {
+		return myModel;
+	}
+
+	/** Inserts a coin and starts a new one-player game.
+	  * @return whether or not the game was successfully started.
+	  */
+	public boolean startGame() {
+		myIsGameOver = false;
+		myNumTicks = 0;
+		myElapsedTime = 0;
+		myNumDeaths = 0;
+		myNumLevelsCleared = 0;
+		myFinalScore = 0;
+		myModel.insertCoin();
+		return myModel.newGame(1) == 0;
+	}
+
+	/** Starts playing back the demo game, or game replay, at the given input stream. */
+	public void startDemo(InputStream is) {
+		myIsGameOver = false;
+		myNumTicks = 0;
+		myElapsedTime = 0;
+		myNumDeaths = 0;
+		myNumLevelsCleared = 0;
+		myModel.playDemo(is);
+	}
+
+	/** Lets the player (if any) steer, then updates the model once, timing how
+	  * long the update takes.
+	  */
+	public void step() {
+		if (myPlayer != null) {
+			int dir = myPlayer.getDesiredDir(myModel);
+			if (dir != 0)
+				myModel.setDesiredDir(dir);
+		}
+
+		long start = System.nanoTime();
+		myModel.update();
+		myElapsedTime += System.nanoTime() - start;
+		myNumTicks++;
+	}
+
+	/** Updates the model until the current game ends, or until the given number of
+	  * updates have been made.
+	  * @return the number of updates made.
+	  */
+	public long runGame(long maxTicks) {
+		long count = 0;
+		while (count < maxTicks  &&  !myIsGameOver  &&  myModel.isInProgress()) {
+			step();
+			count++;
+		}
+		return count;
+	}
+
+	/** Updates the model until the demo or game replay being played back is out of
+	  * moves, or until the given number of updates have been made.
+	  * @return the number of updates made.
+	  */
+	public long runDemo(long maxTicks) {
+		long count = 0;
+		while (count < maxTicks  &&  (myModel.isPlayingDemo()  ||  myModel.isReplayingGame())) {
+			step();
+			count++;
+		}
+		return count;
+	}
+
+	/** Returns the number of times this simulation has updated its model since the
+	  * current game or demo started.
+	  */
+	public long getNumTicks() {
+		return myNumTicks;
+	}
+
+	/** Returns the number of nanoseconds spent updating the model since the current
+	  * game or demo started.
+	  */
+	public long getElapsedTime() {
+		return myElapsedTime;
+	}
+
+	/** Returns how many model updates were made per second of update time. */
+	public double getTicksPerSecond() {
+		return (myElapsedTime == 0)  ?  0.0  :  myNumTicks * 1e9 / myElapsedTime;
+	}
+
+	/** Returns how many times Pac-Man has died in the current game. */
+	public int getNumDeaths() {
+		return myNumDeaths;
+	}
+
+	/** Returns how many levels have been cleared in the current game. */
+	public int getNumLevelsCleared() {
+		return myNumLevelsCleared;
+	}
+
+	/** Returns the score of the last game to end, or the current score if
+	  * the game is still going.
+	  */
+	public int getScore() {
+		return myIsGameOver  ?  myFinalScore  :  myModel.getScore(myModel.getPlayerNumber());
+	}
+
+	/** Returns true if the last game started has ended. */
+	public boolean isGameOver() {
+		return myIsGameOver;
+	}
+
+	/** Implementation of the Listener interface; keeps tallies of game events. */
+	public void gameUpdated(Listenable origin, Object source, Object eventType) {
+		if (eventType == GameModel.Event.PLAYER_DEATH)
+			myNumDeaths++;
+		else if (eventType == GameModel.Event.LEVEL_CLEARED)
+			myNumLevelsCleared++;
+		else if (eventType == GameModel.Event.GAME_OVER) {
+			// the model wipes its score right after this event, so grab it now
+			myFinalScore = myModel.getScore(myModel.getPlayerNumber());
+			myIsGameOver = true;
+		}
+	}
+
+	/** Does nothing; required as part of Listener interface. */
+	public void detach() {}
+
+	/** Returns a string representation of this simulation's statistics. */
+	public String toString() {
+		return myNumTicks + " ticks in " + (myElapsedTime / 1000000) + " ms ("
+			+ (long)getTicksPerSecond() + " ticks/sec); score=" + getScore()
+			+ ", deaths=" + myNumDeaths + ", levels cleared=" + myNumLevelsCleared;
+	}
+}
@@ -0,0 +1,14 @@
+package pacman.model;
+
+/** A listener that is handed, along with each event, what its Listenable's state was
+  * when the event was raised (see Listenable.getEventState()).  One that hears about
+  * events later, on another thread, can go by this rather than reading the object's
+  * state itself, which by then may describe a later moment, or be in the middle of
+  * changing.
+  */
+public interface SnapshotListener extends Listener {
+	/** Called to notify this listener of an event in the given listenable object, and
+	  * of the object's state when the event was raised.
+	  */
+	public void gameUpdated(Listenable origin, Object source, Object eventType, Object state);
+}
@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** An apple, the fifth fruit in pac-man. */
 public class Apple extends Fruit {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new apple at the given pixel coordinates. */
 	public Apple(int thex, int they) {
 		super("apple", thex, they);
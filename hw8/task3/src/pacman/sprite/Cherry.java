@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** A cherry, the first/second fruit in the game. */
 public class Cherry extends Fruit {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new cherry at the given x/y coordinates. */
 	public Cherry(int thex, int they) {
 		super("cherry", thex, they);
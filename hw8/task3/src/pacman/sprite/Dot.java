@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** A dot that may be eaten by Pac-Man. */
 public class Dot extends EdibleSprite {
+	private static final long serialVersionUID = 0;
+
 	public final int TYPE = DOT;
 
 	/** The size of a dot on screen. */
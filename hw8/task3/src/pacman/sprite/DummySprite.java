@@ -8,6 +8,8 @@ import pacman.sprite.MovingSprite;
   * since this would trigger unwanted game events.
   */
 public class DummySprite extends MovingSprite {
+	private static final long serialVersionUID = 0;
+
 	private MovingSprite myOther = null;
 
 	/** Constructs a new dummy sprite. */
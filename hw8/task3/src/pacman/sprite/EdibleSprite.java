@@ -1,9 +1,12 @@
 package pacman.sprite;
 
 import pacman.model.GameModel;
+import pacman.model.StateHash;
 
 /** Represents an edible sprite which may be consumed by Pac-Man. */
 public abstract class EdibleSprite extends MovingSprite {
+	private static final long serialVersionUID = 0;
+
 	public static final int TYPE = EDIBLESPRITE;
 
 	protected int myScore = 0;
@@ -51,6 +54,11 @@ public abstract class EdibleSprite extends MovingSprite {
 			myNumUpdatesSinceEaten++;
 	}
 
+	/** Returns the given hash with this edible's state folded into it. */
+	public long hashState(long hash) {
+		return StateHash.mix(super.hashState(hash), myScore, myNumUpdatesSinceEaten);
+	}
+
 	/** Returns the number of updates passed since this edible was eaten. */
 	public int getNumUpdatesSinceEaten() {
 		return myNumUpdatesSinceEaten;
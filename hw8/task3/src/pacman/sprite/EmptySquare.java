@@ -4,6 +4,8 @@ import pacman.sprite.Sprite;
 
 /** An empty square; a do-nothing invisible uncollidable sprite. */
 public class EmptySquare extends Sprite {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new empty square at (0, 0). */
 	public EmptySquare() {
 		this(0, 0);
@@ -16,6 +18,13 @@ public class EmptySquare extends Sprite {
 		type = EMPTYSQUARE;
 	}
 
+	/** Replaces the global empty square read back in from a stream with the real
+	  * one, so that it can still be compared with ==.
+	  */
+	protected Object readResolve() {
+		return (getClass() == EmptySquare.class)  ?  EMPTY  :  this;
+	}
+
 	/** Returns a string representation of this empty square. */
 	public String toString() { return " "; }
 }
\ No newline at end of file
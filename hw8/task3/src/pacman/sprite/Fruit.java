@@ -6,6 +6,8 @@ import pacman.strategy.Strategy;
 
 /** A fruit that may be eaten by Pac-Man. */
 public abstract class Fruit extends EdibleSprite {
+	private static final long serialVersionUID = 0;
+
 	public static final int TYPE = FRUIT;
 
 	public static final int FRUIT_SPEED = 30 / GameModel.UPDATES_PER_SECOND;
@@ -85,6 +87,11 @@ public abstract class Fruit extends EdibleSprite {
 		myStrategy = strat;
 	}
 
+	/** Returns the given hash with this fruit's state folded into it. */
+	public long hashState(long hash) {
+		return StateHash.mix(super.hashState(hash), myUpdateCounter);
+	}
+
 	/** Resets this fruit's timer when a level is cleared. */
 	public void resetTimer() {
 		myUpdateCounter = 0;
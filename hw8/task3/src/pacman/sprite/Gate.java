@@ -4,6 +4,8 @@ import pacman.view.PacManColors;
 
 /** A gate, which ghosts may pass through but pac-man cannot. */
 public class Gate extends ObstacleSprite {
+	private static final long serialVersionUID = 0;
+
 	public static final int TYPE = GATE;
 
 	/** Constructs a new gate with the given x/y pixel coordinates. */
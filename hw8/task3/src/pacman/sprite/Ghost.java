@@ -8,6 +8,8 @@ import pacman.view.PacManColors;
 
 /** A Ghost, which is Pac-Man's main enemy in the game. */
 public class Ghost extends EdibleSprite {
+	private static final long serialVersionUID = 0;
+
 	public static final int TYPE = GHOST;
 
 	/** The speed of a normal ghost. */
@@ -25,36 +27,10 @@ public class Ghost extends EdibleSprite {
 	/** The speed of a ghost who has been eaten and is running back to his hive. */
 	public static final int EATEN_GHOST_SPEED       = GHOST_SPEED * 2;
 
-	/** Counters for the numbers of instances of various types of ghosts. */
-	public static int ourScaredCount = 0;
-	public static int ourEatenCount  = 0;
-	public static int ourGhostCount  = 0;
-	public static int ourCagedCount  = 0;
-
-	/** Returns true if there are any instances of Ghosts who are chasing pac-man.
-	  * Used to know what sounds to play.
-	  */
-	public static boolean areAngryGhosts() {
-		return ourScaredCount + ourEatenCount < ourGhostCount;
-	}
-
-	/** Returns true if there are any instances of Ghosts who are eaten and dead.
-	  * Used to know what sounds to play.
-	  */
-	public static boolean areEatenGhosts() {
-		return ourEatenCount  > 0;
-	}
-
-	/** Returns true if there are any instances of Ghosts who are scared.
-	  * Used to know what sounds to play.
-	  */
-	public static boolean areScaredGhosts() { return ourScaredCount > 0; }
-
 	/** Returns a Blinky, the red ghost, at the given pixel coordinates. */
 	public static Ghost createBlinky(int x, int y) {
 		Ghost gh = new Ghost("blinky", x, y, PacManColors.RED);
 		gh.setNormalStrategy(new SmartStrategy(gh));
-		ourGhostCount++;
 		return gh;
 	}
 
@@ -63,7 +39,6 @@ public class Ghost extends EdibleSprite {
 		Ghost gh = new Ghost("clyde", x, y, PacManColors.ORANGE);
 		// gh.setNormalStrategy(new SmartAheadStrategy(gh));
 		gh.setNormalStrategy(new SmartStrategy(gh));
-		ourGhostCount++;
 		return gh;
 	}
 
@@ -71,7 +46,6 @@ public class Ghost extends EdibleSprite {
 	public static Ghost createInky(int x, int y) {
 		Ghost gh = new Ghost("inky", x, y, PacManColors.CYAN);
 		gh.setNormalStrategy(new TurnStrategy(gh));
-		ourGhostCount++;
 		return gh;
 	}
 
@@ -79,7 +53,6 @@ public class Ghost extends EdibleSprite {
 	public static Ghost createPinky(int x, int y) {
 		Ghost gh = new Ghost("pinky", x, y, PacManColors.PINK);
 		gh.setNormalStrategy(new LineOfSightStrategy(gh));
-		ourGhostCount++;
 		return gh;
 	}
 
@@ -87,7 +60,6 @@ public class Ghost extends EdibleSprite {
 	public static Ghost createSatan(int x, int y) {
 		Ghost gh = new Ghost("satan", x, y, PacManColors.GREEN);
 		gh.setNormalStrategy(new SuperSmartStrategy(gh));
-		ourGhostCount++;
 		return gh;
 	}
 
@@ -105,7 +77,6 @@ public class Ghost extends EdibleSprite {
 	private int myCageCounter = 0;
 	private int myScaredCounter = 0;
 	private boolean myShouldAnimate = true;
-	private boolean myIsCleanedUp = false;
 	private boolean myShouldConsultStrategy = true;
 
 	/** Constructs a new dummy ghost of the given name, coordinates, and color. */
@@ -165,20 +136,9 @@ public class Ghost extends EdibleSprite {
 			return Move.NEUTRAL;
 	}
 
-	/** Called when this ghost is no longer needed; used for sounds. */
+	/** Called when this ghost is no longer needed. */
 	public void cleanUp() {
-		// System.err.println("garbage collecting ghost " + dump());
 		revive();
-		ourGhostCount--;
-		// super.finalize();
-		myIsCleanedUp = true;
-	}
-
-	/** Called when this Ghost is garbage-collected. */
-	protected void finalize() throws Throwable {
-		if (!myIsCleanedUp)
-			cleanUp();
-		super.finalize();
 	}
 
 	/** Returns how long this ghost will still remain in his cage. */
@@ -317,6 +277,14 @@ public class Ghost extends EdibleSprite {
 		myNormalStrategy.setMoveAgainPercentage(n);
 	}
 
+	/** Sets whether this ghost starts out moving up (rather than down) while
+	  * he paces back and forth in his cage.
+	  */
+	public void setGoingUpInCage(boolean b) {
+		if (myCageStrategy instanceof CageStrategy)
+			((CageStrategy)myCageStrategy).setGoingUp(b);
+	}
+
 	/** Sets this ghost's normal strategy, the one he will use to chase pac-man,
 	  * to the given value.
 	  */
@@ -353,14 +321,6 @@ public class Ghost extends EdibleSprite {
 		Object oldStatus = getStatus();
 		super.setStatus(status);
 
-		// do tasks associated with leaving a particular status
-		if (oldStatus == STATUS_EATEN  &&  status != STATUS_EATEN)
-			synchronized (getClass()) { ourEatenCount--; }
-		else if (oldStatus == STATUS_SCARED  &&  status != STATUS_SCARED)
-			synchronized (getClass()) { ourScaredCount--; }
-		else if (oldStatus == STATUS_CAGED  &&  status != STATUS_CAGED)
-			synchronized (getClass()) { ourCagedCount--; }
-
 		// do tasks associated with going to a particular status
 		if (status == STATUS_NORMAL) {
 			setVisible(true);
@@ -369,18 +329,15 @@ public class Ghost extends EdibleSprite {
 			notifyOfPacManDeath();  // *** ? why
 		}
 		else if (status == STATUS_CAGED  ||  status == STATUS_LEAVING_CAGE) {
-			synchronized (getClass()) { ourCagedCount++; }
 			setSpeed(CAGED_GHOST_SPEED);
 			setStrategy(myCageStrategy);
 		}
 		else if (oldStatus != STATUS_EATEN  &&  status == STATUS_EATEN) {
-			synchronized (getClass()) { ourEatenCount++; }
 			setSpeed(EATEN_GHOST_SPEED);
 			setStrategy(myEatenStrategy);
 			myScaredCounter = 0;
 		}
 		else if (oldStatus != STATUS_SCARED  &&  status == STATUS_SCARED) {
-			synchronized (getClass()) { ourScaredCount++; }
 			setSpeed(SCARED_GHOST_SPEED);
 			setStrategy(myScaredStrategy);
 		}
@@ -450,6 +407,11 @@ public class Ghost extends EdibleSprite {
 		myShouldAnimate = false;
 	}
 
+	/** Returns the given hash with this ghost's state folded into it. */
+	public long hashState(long hash) {
+		return StateHash.mix(super.hashState(hash), myCageCounter, myScaredCounter);
+	}
+
 	/** Returns a detailed string representation of this ghost. */
 	public String dump() {
 		return super.dump() + ", Ccnt=" + myCageCounter + ", Scnt=" + myScaredCounter + ", strat=" + (myCurrentStrategy != null  ?  myCurrentStrategy.getName()  :  "null");
@@ -5,6 +5,8 @@ import java.awt.Color;
 
 /** A letter written on the map. */
 public class Letter extends EmptySquare {
+	private static final long serialVersionUID = 0;
+
 	public static final int TYPE = LETTER;
 
 	private String myLetter;
@@ -1,17 +1,22 @@
 package pacman.sprite;
 
 import pacman.model.GameModel;
+import pacman.model.GameRandom;
 import pacman.model.Move;
 import pacman.model.MoveList;
+import pacman.model.StateHash;
 import pacman.sprite.Sprite;
 
 /** A moving sprite that can change position over time. */
 public abstract class MovingSprite extends Sprite {
+	private static final long serialVersionUID = 0;
+
 	// protected int dx = 0, dy = 0, speed = 0;
 	protected int speed = 0;
 	protected Move myVelocity = Move.NEUTRAL;
 	protected Move myLastMove = Move.NEUTRAL;
 	protected MoveList myMoveList = null;
+	protected GameRandom myRandom = null;
 
 	/** Constructs a new moving sprite with the given name and x/y pixel position. */
 	public MovingSprite(String name, int x, int y) {
@@ -56,6 +61,20 @@ public abstract class MovingSprite extends Sprite {
 		return myVelocity;
 	}
 
+	/** Returns the random number generator this sprite's strategies use.  Its game
+	  * hands it one when it is put on a level; until then it gets its own.
+	  */
+	public final GameRandom getRandom() {
+		if (myRandom == null)
+			myRandom = new GameRandom();
+		return myRandom;
+	}
+
+	/** Sets the random number generator this sprite's strategies use. */
+	public final void setRandom(GameRandom random) {
+		myRandom = random;
+	}
+
 	/** Returns this sprite's last move that it has made. */
 	public final Move getLastMove() {
 		return myLastMove;
@@ -213,6 +232,16 @@ public abstract class MovingSprite extends Sprite {
 			rect.y = -rect.height + speed;
 	}
 
+	/** Returns the given hash with this sprite's position, velocity, status and
+	  * counters folded into it (see StateHash).  Subclasses with counters of their
+	  * own mix them in too.
+	  */
+	public long hashState(long hash) {
+		hash = StateHash.mix(hash, rect.x, rect.y);
+		hash = StateHash.mix(hash, myVelocity.dx, myVelocity.dy);
+		return StateHash.mix(hash, myStatus.hashCode(), isVisible  ?  speed  :  ~speed);
+	}
+
 	/** Returns a string representation of this sprite's move list. */
 	public String dumpMoves() {
 		return (myMoveList != null)  ?  myMoveList.toString()  :  "null";
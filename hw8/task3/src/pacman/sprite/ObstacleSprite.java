@@ -7,6 +7,8 @@ import java.awt.Color;
   * Ghosts may pass through gates while Pac-Man cannot.
   */
 public abstract class ObstacleSprite extends Sprite {
+	private static final long serialVersionUID = 0;
+
 	private int myHex = 15;
 
 	/** Constructs a new obstacle sprite with the given image name and color
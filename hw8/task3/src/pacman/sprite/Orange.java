@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** An orange, the fourth fruit in the game. */
 public class Orange extends Fruit {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new Orange at the given pixel coordinates. */
 	public Orange(int thex, int they) {
 		super("orange", thex, they);
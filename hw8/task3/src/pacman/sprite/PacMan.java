@@ -1,11 +1,14 @@
 package pacman.sprite;
 
 import pacman.model.GameModel;
+import pacman.model.StateHash;
 import pacman.view.PacManColors;
 import java.awt.Color;
 
 /** Represents Pac-Man himself, the character controlled by the player. */
 public class PacMan extends MovingSprite {
+	private static final long serialVersionUID = 0;
+
 	/** Pac-Man's speed of movement in pixels per update. */
 	public static final int PAC_SPEED   =  60 / GameModel.UPDATES_PER_SECOND;
 	// takes 3.8s to cross board at this speed
@@ -114,6 +117,12 @@ public class PacMan extends MovingSprite {
 		return isAlive  &&  myNumUpdatesSinceRevived < GameModel.UPDATES_PER_SECOND * 2;
 	}
 
+	/** Returns the given hash with this Pac-Man's state folded into it. */
+	public long hashState(long hash) {
+		hash = StateHash.mix(super.hashState(hash), myNumUpdatesSinceKilled, myNumUpdatesSinceRevived);
+		return StateHash.mix(hash, (isAlive ? 2 : 0) | (isInvincible ? 1 : 0));
+	}
+
 	/** Returns a String representation of this Pac-Man. */
 	public String toString() { return "P"; }
 }
\ No newline at end of file
@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** A power pellet that makes pac-man invincible. */
 public class PowerPellet extends EdibleSprite {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new power pellet at the given pixel coordinates. */
 	public PowerPellet(int thex, int they) {
 		super("pelletflesh", thex, they);
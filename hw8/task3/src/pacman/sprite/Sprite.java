@@ -2,11 +2,16 @@ package pacman.sprite;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.io.Serializable;
 import pacman.model.Level;
 import pacman.utility.Enum;
 
-/** A sprite, which means any significant object in the game: the player, enemies, walls, etc. */
-public abstract class Sprite {
+/** A sprite, which means any significant object in the game: the player, enemies, walls, etc.
+  * Sprites are serializable so that the state of a game can be saved (see Keyframe).
+  */
+public abstract class Sprite implements Serializable {
+	private static final long serialVersionUID = 0;
+
 	private static final int DEFAULT_SIZE = Level.GRID_SIZE;
 
 	/** Sprite status enumeration. */
@@ -41,12 +46,6 @@ public abstract class Sprite {
 	/** A global empty square that may be put into empty slots in levels. */
 	public static final Sprite EMPTY = new EmptySquare();
 
-	/** A global dummy sprite that may be used for collision detection. */
-	public static final DummySprite DUMMY = new DummySprite();
-
-	/** Number of instances of this class. */
-	public static int ourNumInstances = 0;
-
 	// INSTANCE VARIABLES
 	protected String img;
 	protected int initialX, initialY;
@@ -87,7 +86,6 @@ public abstract class Sprite {
 		rect = new Rectangle(thex, they, thewidth, theheight);
 		initialX = thex;  initialY = they;
 		myStatus = STATUS_NORMAL;
-		ourNumInstances++;
 	}
 
 	/** Constructs a new Sprite whose data is a copy of that in the given other Sprite. */
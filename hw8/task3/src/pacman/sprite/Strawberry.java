@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** A strawberry, the third fruit in the game. */
 public class Strawberry extends Fruit {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new strawberry at the given pixel coordinates. */
 	public Strawberry(int thex, int they) {
 		super("strawberry", thex, they);
@@ -5,6 +5,8 @@ import pacman.sprite.Sprite;
 
 /** A tunnel through which sprites may pass (ghosts at reduced speed). */
 public class Tunnel extends Sprite {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new tunnel at the given pixel coordinates. */
 	public Tunnel(int thex, int they) {
 		super(thex, they, Level.GRID_SIZE);
@@ -5,6 +5,8 @@ import pacman.view.PacManColors;
 
 /** A wall that may not be passed through by pac-man or ghosts. */
 public class Wall extends ObstacleSprite {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new Wall at the given pixel coordinates. */
 	public Wall(int thex, int they) {
 		super("wall", thex, they, PacManColors.BLUE);
@@ -0,0 +1,229 @@
+package pacman.strategy;
+
+import pacman.model.*;
+
+/** An A* search that allocates nothing once it has seen a grid of a given size.
+  *
+  * <p>Squares are numbered x * height + y instead of being wrapped in objects.
+  * The open list is a binary heap of square numbers kept in int arrays; a square
+  * may be on it more than once, and stale copies are skipped when popped.
+  * Costs, parents and the closed set live in arrays that are stamped with the
+  * number of the search that last wrote them, so nothing has to be cleared
+  * between searches.
+  *
+  * <p>A search cut short by setMaxExpansions() is left on its open list, and
+  * carries on from there if it is asked for the same path again before the
+  * level's walls change.
+  */
+public class AStarSearch implements AnytimeSearch {
+	/** The moves tried from each square, in order. */
+	private static final Move[] DIRECTIONS = {Move.LEFT, Move.UP, Move.DOWN, Move.RIGHT};
+
+	private int myWidth = 0;
+	private int myHeight = 0;
+	private int mySearchNumber = 0;
+
+	// per-square state, valid only where myStamp == mySearchNumber
+	private int[] myStamp = new int[0];
+	private int[] myCost = new int[0];
+	private byte[] myParentDir = new byte[0];
+	private boolean[] myIsClosed = new boolean[0];
+
+	// open list: a binary min-heap of squares ordered by f = cost + heuristic
+	private int[] myHeapSquares = new int[1];
+	private int[] myHeapF = new int[1];
+	private int myHeapSize = 0;
+
+	private Move[] myPath = new Move[0];
+	private int myPathLength = 0;
+
+	// the search last cut short, which may be carried on
+	private int myMaxExpansions = 0;
+	private boolean myIsComplete = true;
+	private Level mySuspendedLevel = null;
+	private int mySuspendedLayout, mySuspendedStart, mySuspendedGoal;
+	private Move mySuspendedMove;
+	private int myBestSquare, myBestHeuristic;
+
+	/** Searches the given level's grid for a shortest path from one square to another,
+	  * or carries on the search last cut short if it was for the same path.
+	  */
+	public int findPath(Level level, int fromX, int fromY, int toX, int toY, Move currentMove) {
+		int start = fromX * level.getGridHeight() + fromY;
+		int goal = toX * level.getGridHeight() + toY;
+		if (!isSuspended(level, start, goal, currentMove)) {
+			setSize(level.getGridWidth(), level.getGridHeight());
+			if (++mySearchNumber == Integer.MAX_VALUE) {
+				java.util.Arrays.fill(myStamp, 0);
+				mySearchNumber = 1;
+			}
+
+			myHeapSize = 0;
+			myBestSquare = start;
+			myBestHeuristic = heuristic(fromX, fromY, toX, toY);
+			visit(start, 0, -1, myBestHeuristic);
+		}
+		mySuspendedLevel = null;
+		myIsComplete = true;
+
+		int expansions = 0;
+		while (myHeapSize > 0) {
+			if (expansions == myMaxExpansions  &&  myMaxExpansions > 0) {
+				// out of time; go as far as the square that looks nearest the goal
+				mySuspendedLevel = level;
+				mySuspendedLayout = level.getNumLayoutChanges();
+				mySuspendedStart = start;
+				mySuspendedGoal = goal;
+				mySuspendedMove = currentMove;
+				myIsComplete = false;
+				return buildPath(start, myBestSquare);
+			}
+
+			int f = myHeapF[1];
+			int square = pop();
+			int h = heuristic(square / myHeight, square % myHeight, toX, toY);
+			if (myIsClosed[square]  ||  f > myCost[square] + h)
+				continue;  // a stale copy
+			if (square == goal)
+				return buildPath(start, goal);
+			myIsClosed[square] = true;
+			expansions++;
+			if (h < myBestHeuristic) {
+				myBestSquare = square;
+				myBestHeuristic = h;
+			}
+
+			int x = square / myHeight;
+			int y = square % myHeight;
+			int cost = myCost[square] + 1;
+			for (int dir = 0;  dir < DIRECTIONS.length;  dir++) {
+				if (square == start  &&  DIRECTIONS[dir].isOppositeDirectionTo(currentMove))
+					continue;
+
+				int childx = (x + DIRECTIONS[dir].dx + myWidth)  % myWidth;
+				int childy = (y + DIRECTIONS[dir].dy + myHeight) % myHeight;
+				if (level.isWall(childx, childy))
+					continue;
+
+				int child = childx * myHeight + childy;
+				if (myStamp[child] != mySearchNumber  ||  (!myIsClosed[child]  &&  cost < myCost[child]))
+					visit(child, cost, dir, cost + heuristic(childx, childy, toX, toY));
+			}
+		}
+
+		myPathLength = 0;
+		return -1;
+	}
+
+	/** Returns the given step of the path last found. */
+	public Move getStep(int i) {
+		return myPath[i];
+	}
+
+	/** Sets the most squares one call to findPath() may expand; 0 means no limit. */
+	public void setMaxExpansions(int max) {
+		myMaxExpansions = max;
+	}
+
+	/** Returns whether the last call to findPath() found the whole path, or that there is none. */
+	public boolean isComplete() {
+		return myIsComplete;
+	}
+
+	/** Forgets any search that was cut short. */
+	public void cancel() {
+		mySuspendedLevel = null;
+	}
+
+	/** Returns whether the search last cut short was for the given path on the level as it is now. */
+	private boolean isSuspended(Level level, int start, int goal, Move currentMove) {
+		return level == mySuspendedLevel  &&  level.getNumLayoutChanges() == mySuspendedLayout
+			&&  start == mySuspendedStart  &&  goal == mySuspendedGoal  &&  currentMove == mySuspendedMove;
+	}
+
+	/** Makes sure this search's arrays fit a grid of the given size. */
+	private void setSize(int width, int height) {
+		if (width == myWidth  &&  height == myHeight)
+			return;
+
+		myWidth = width;
+		myHeight = height;
+		int numSquares = width * height;
+		if (myStamp.length < numSquares) {
+			myStamp = new int[numSquares];
+			myCost = new int[numSquares];
+			myParentDir = new byte[numSquares];
+			myIsClosed = new boolean[numSquares];
+			myPath = new Move[numSquares];
+
+			// each square is pushed at most once per neighbor
+			myHeapSquares = new int[DIRECTIONS.length * numSquares + 2];
+			myHeapF = new int[myHeapSquares.length];
+		} else
+			java.util.Arrays.fill(myStamp, 0);
+		mySearchNumber = 0;
+	}
+
+	/** Returns the fewest steps between two squares, ignoring walls but allowing for
+	  * the way the board wraps around its edges.
+	  */
+	private int heuristic(int x, int y, int toX, int toY) {
+		int dx = Math.abs(toX - x);
+		int dy = Math.abs(toY - y);
+		return Math.min(dx, myWidth - dx) + Math.min(dy, myHeight - dy);
+	}
+
+	/** Records the given square as reached at the given cost by the given move, and puts it on the open list. */
+	private void visit(int square, int cost, int dir, int f) {
+		myStamp[square] = mySearchNumber;
+		myCost[square] = cost;
+		myParentDir[square] = (byte)dir;
+		myIsClosed[square] = false;
+
+		// sift up from the bottom of the heap
+		int i = ++myHeapSize;
+		while (i > 1  &&  myHeapF[i / 2] > f) {
+			myHeapSquares[i] = myHeapSquares[i / 2];
+			myHeapF[i] = myHeapF[i / 2];
+			i /= 2;
+		}
+		myHeapSquares[i] = square;
+		myHeapF[i] = f;
+	}
+
+	/** Removes and returns the square on top of the open list. */
+	private int pop() {
+		int best = myHeapSquares[1];
+		int last = myHeapSquares[myHeapSize];
+		int lastF = myHeapF[myHeapSize--];
+
+		// sift the last element down from the top of the heap
+		int i = 1, child;
+		while ((child = i * 2) <= myHeapSize) {
+			if (child < myHeapSize  &&  myHeapF[child + 1] < myHeapF[child])
+				child++;
+			if (myHeapF[child] >= lastF)
+				break;
+			myHeapSquares[i] = myHeapSquares[child];
+			myHeapF[i] = myHeapF[child];
+			i = child;
+		}
+		myHeapSquares[i] = last;
+		myHeapF[i] = lastF;
+		return best;
+	}
+
+	/** Follows parents back from the given end square to fill in the path. */
+	private int buildPath(int start, int end) {
+		myPathLength = myCost[end];
+		int square = end;
+		for (int i = myPathLength - 1;  i >= 0;  i--) {
+			Move step = DIRECTIONS[myParentDir[square]];
+			myPath[i] = step;
+			int x = (square / myHeight - step.dx + myWidth)  % myWidth;
+			int y = (square % myHeight - step.dy + myHeight) % myHeight;
+			square = x * myHeight + y;
+		}
+		return myPathLength;
+	}
+}
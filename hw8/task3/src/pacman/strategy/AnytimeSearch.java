@@ -0,0 +1,26 @@
+package pacman.strategy;
+
+/** A path search that can be told to give up after expanding so many squares, so
+  * that no one search can hold up a whole model update.  A search cut short this
+  * way returns the path to the square it has reached that looks nearest the goal,
+  * and picks up where it stopped the next time it is asked for the same path on
+  * the same walls.
+  *
+  * <p>The limit counts squares rather than time, so that a game plays out the same
+  * however fast the machine running it is.
+  */
+public interface AnytimeSearch extends PathSearch {
+	/** Sets the most squares one call to findPath() may expand; 0 means no limit. */
+	public void setMaxExpansions(int max);
+
+	/** Returns whether the last call to findPath() finished: found the whole path or
+	  * found that there is none.  If not, the path it returned is only the best
+	  * start found before it ran out of expansions.
+	  */
+	public boolean isComplete();
+
+	/** Forgets any search that was cut short, so that the next call to findPath()
+	  * starts afresh even if it asks for the same path.
+	  */
+	public void cancel();
+}
@@ -11,20 +11,19 @@ import pacman.sprite.*;
   * exit the cage once their cage counters expire.
   */
 public class CageStrategy extends Strategy {
-	private static int ourNumInstances = 0;
-	private boolean myIsGoingUp;
+	private static final long serialVersionUID = 0;
+
+	private boolean myIsGoingUp = true;
 	private List<Move> myMoveList = null;
 
 	/** Constructs a new strategy to move the given sprite. */
 	public CageStrategy(MovingSprite gh) {
 		super(gh);
-		ourNumInstances++;
-		myIsGoingUp = (ourNumInstances % 2 == 1);
 	}
 
-	/** Called when this strategy is garbage collected. */
-	protected void finalize() throws Throwable {
-		ourNumInstances--;
+	/** Sets whether this strategy's ghost is currently moving up (rather than down) in the cage. */
+	public void setGoingUp(boolean b) {
+		myIsGoingUp = b;
 	}
 
 	/** Returns this strategy's next move toward the given target. */
@@ -77,18 +76,18 @@ public class CageStrategy extends Strategy {
 	public boolean canMoveUp(Level level, MovingSprite gh) {
 		return level.canMoveUp(gh)
 				&&  level.isOnMap(gh.getGridX(), gh.getGridY() - 1)
-				&&  !(level.myMap[gh.getGridX()][gh.getGridY() - 1] instanceof ObstacleSprite);
+				&&  !level.isObstacle(gh.getGridX(), gh.getGridY() - 1);
 	}
 
 	/** Returns whether or not the given sprite can move down. */
 	public boolean canMoveDown(Level level, MovingSprite gh) {
 		return level.canMoveUp(gh)
 				&&  level.isOnMap(gh.getGridX(), gh.getGridY() + 1)
-				&&  !(level.myMap[gh.getGridX()][gh.getGridY() + 1] instanceof ObstacleSprite);
+				&&  !level.isObstacle(gh.getGridX(), gh.getGridY() + 1);
 	}
 
 	/** Constants used for weighing the map. */
-	private static final char UNTRIED = '?',
+	private static final char UNTRIED = '\0',
 			TRIED   = 'T',
 //			IN_CAGE = 'C',
 //			ON_GATE = 'G',
@@ -96,11 +95,9 @@ public class CageStrategy extends Strategy {
 
 	/** Returns a path from this ghost to the nearest square that is not in the cage. */
 	public List<Move> getMoveList(Level level) {
-		// all squares will be initialized to UNTRIED, 0, \0
+		// all squares start out UNTRIED; walls are checked as they are come to,
+		// rather than marked on the whole map, which can be very large
 		char[][] map = new char[level.getGridWidth()][level.getGridHeight()];
-		for (int r = 0;  r < map.length;  r++)
-			for (int c = 0;  c < map[0].length;  c++)
-				map[r][c] = (level.myMap[r][c].type == Sprite.WALL)  ?  TRIED  :  UNTRIED;
 
 		int gx = mySprite.getGridX();
 		int gy = mySprite.getGridY();
@@ -162,11 +159,11 @@ public class CageStrategy extends Strategy {
 
 	/** Checks the given grid square on the given map to find a path out of the cage. */
 	private boolean check(Level level, char[][] map, int gx, int gy, boolean money) {
-		if (!level.isOnMap(gx, gy)  ||  map[gx][gy] == TRIED)
+		if (!level.isOnMap(gx, gy)  ||  map[gx][gy] == TRIED  ||  level.isWall(gx, gy))
 			return false;
 
-		Sprite cell = level.myMap[gx][gy];
-		if (cell.type == Sprite.EMPTYSQUARE  &&  money) {
+		int cellType = level.getCellType(gx, gy);
+		if (cellType == Sprite.EMPTYSQUARE  &&  money) {
 			map[gx][gy] = OUT;
 			return true;
 		}
@@ -174,7 +171,7 @@ public class CageStrategy extends Strategy {
 		boolean gotOut = false;
 		map[gx][gy] = TRIED;
 
-		if (cell.type == Sprite.GATE  &&  !(cell.type == Sprite.WALL)) {
+		if (cellType == Sprite.GATE) {
 			// then this is a way out!  mark it
 			gotOut = check(level, map, gx, gy - 1, true)
 					||  check(level, map, gx + 1, gy, true)
@@ -0,0 +1,379 @@
+package pacman.strategy;
+
+import pacman.model.*;
+
+/** A path search for very large levels that plans from cluster to cluster over
+  * the level's ClusterMap, then works out square by square only the first leg of
+  * the plan: the way out of the cluster the search starts in.  The strategy
+  * using it searches again once that leg has been followed, so each search
+  * costs two small searches inside one cluster each plus a search over the
+  * entrances, rather than a search over the whole maze.
+  *
+  * <p>The paths it finds may be a few steps longer than the shortest ones, as
+  * they are held to the entrances between clusters.  On levels too small to
+  * have a cluster map it simply does an A* search.
+  *
+  * <p>When cut short by setMaxExpansions(), it counts the entrances it closes
+  * rather than squares, and returns the first leg toward the one it has reached
+  * that looks nearest the goal.
+  */
+public class ClusterSearch implements AnytimeSearch {
+	/** The moves tried from each square, in order. */
+	private static final Move[] DIRECTIONS = {Move.LEFT, Move.UP, Move.DOWN, Move.RIGHT};
+
+	/** The parent of the nodes reached straight from the starting square. */
+	private static final int START = -1;
+
+	private static final int CLUSTER_SQUARES = ClusterMap.CLUSTER_SIZE * ClusterMap.CLUSTER_SIZE;
+
+	private AStarSearch myFlatSearch = null;
+	private boolean myIsFlat = false;
+
+	// searches inside the starting and goal clusters, squares numbered (x - left) * height + (y - top)
+	private int[] myStartDistances = new int[CLUSTER_SQUARES];
+	private byte[] myStartDirs = new byte[CLUSTER_SQUARES];
+	private int[] myGoalDistances = new int[CLUSTER_SQUARES];
+	private int[] myQueue = new int[CLUSTER_SQUARES];
+
+	// search over the map's nodes, plus one more standing for the goal; valid only
+	// where myStamp == mySearchNumber
+	private int mySize = 0;
+	private int mySearchNumber = 0;
+	private int[] myStamp = new int[0];
+	private int[] myCost = new int[0];
+	private int[] myParent = new int[0];
+	private boolean[] myIsClosed = new boolean[0];
+
+	// open list: a binary min-heap of nodes ordered by f = cost + heuristic
+	private int[] myHeapNodes = new int[64];
+	private int[] myHeapF = new int[64];
+	private int myHeapSize = 0;
+
+	private ClusterMap myMap;
+	private int myGoalNode;
+	private int myTarget;
+	private Move[] myPath = new Move[CLUSTER_SQUARES + 1];
+	private int myPathLength = 0;
+
+	// the search last cut short, which may be carried on
+	private int myMaxExpansions = 0;
+	private boolean myIsComplete = true;
+	private Level mySuspendedLevel = null;
+	private int mySuspendedLayout, mySuspendedStart;
+	private Move mySuspendedMove;
+	private int myBestNode, myBestHeuristic;
+
+	/** Searches for a path from one square to another, and works out the steps of
+	  * its first leg.
+	  * @return the number of steps in the first leg, or -1 if there is no path.
+	  */
+	public int findPath(Level level, int fromX, int fromY, int toX, int toY, Move currentMove) {
+		ClusterMap map = level.getClusterMap();
+		myIsFlat = (map == null);
+		if (myIsFlat) {
+			if (myFlatSearch == null)
+				myFlatSearch = new AStarSearch();
+			myFlatSearch.setMaxExpansions(myMaxExpansions);
+			return myFlatSearch.findPath(level, fromX, fromY, toX, toY, currentMove);
+		}
+
+		int width = level.getGridWidth(), height = level.getGridHeight();
+		int start = fromX * height + fromY;
+		int startNode = map.getNode(start);
+		int startCluster = map.getClusterOf(fromX, fromY);
+		int goalCluster = map.getClusterOf(toX, toY);
+		myPathLength = 0;
+		myIsComplete = true;
+		boolean isResumed = isSuspended(level, map, start, toX * height + toY, currentMove);
+		mySuspendedLevel = null;
+		if (!isResumed) {
+			if (fromX == toX  &&  fromY == toY)
+				return 0;
+			if (level.isWall(toX, toY))
+				return -1;
+
+			myMap = map;
+			myGoalNode = map.getNumNodes();
+			setSize(myGoalNode + 1);
+			if (++mySearchNumber == Integer.MAX_VALUE) {
+				java.util.Arrays.fill(myStamp, 0);
+				mySearchNumber = 1;
+			}
+
+			myTarget = toX * height + toY;
+			searchCluster(level, map, startCluster, fromX, fromY, currentMove, myStartDistances, myStartDirs);
+			searchCluster(level, map, goalCluster, toX, toY, Move.NEUTRAL, myGoalDistances, null);
+
+			// the starting square leads to its cluster's nodes, and maybe to the goal
+			myHeapSize = 0;
+			myBestNode = -1;
+			myBestHeuristic = Integer.MAX_VALUE;
+			if (startCluster == goalCluster) {
+				int dist = myStartDistances[getLocal(map, startCluster, myTarget, height)];
+				if (dist != DistanceTable.UNREACHABLE)
+					visit(myGoalNode, dist, START, dist);
+			}
+			for (int node = map.getFirstNode(startCluster);  node < map.getFirstNode(startCluster + 1);  node++) {
+				int dist = myStartDistances[getLocal(map, startCluster, map.getSquare(node), height)];
+				if (dist != DistanceTable.UNREACHABLE)
+					visit(node, dist, START, dist + heuristic(node, toX, toY, width, height));
+			}
+		}
+
+		int expansions = 0;
+		while (myHeapSize > 0) {
+			if (expansions == myMaxExpansions  &&  myMaxExpansions > 0) {
+				// out of time; head for the node that looks nearest the goal
+				mySuspendedLevel = level;
+				mySuspendedLayout = level.getNumLayoutChanges();
+				mySuspendedStart = start;
+				mySuspendedMove = currentMove;
+				myIsComplete = false;
+				return (myBestNode < 0)  ?  0  :  buildLeg(map, start, myBestNode, width, height);
+			}
+
+			int f = myHeapF[1];
+			int node = pop();
+			int h = heuristic(node, toX, toY, width, height);
+			if (myIsClosed[node]  ||  f > myCost[node] + h)
+				continue;  // a stale copy
+			if (node == myGoalNode)
+				return buildLeg(map, start, myGoalNode, width, height);
+			myIsClosed[node] = true;
+			expansions++;
+			if (h < myBestHeuristic) {
+				myBestNode = node;
+				myBestHeuristic = h;
+			}
+
+			int cost = myCost[node];
+			int square = map.getSquare(node);
+
+			// the start's own search already reached everything in its cluster
+			// without turning back, so only its crossings are left to follow
+			boolean isStart = (node == startNode  &&  cost == 0);
+			if (!isStart)
+				for (int link = map.getFirstLink(node);  link < map.getFirstLink(node + 1);  link++)
+					relax(map.getLinkTo(link), cost + map.getLinkCost(link), node, toX, toY, width, height);
+
+			for (int k = map.getFirstCrossing(node);  k < map.getFirstCrossing(node + 1);  k++) {
+				int next = map.getCrossingTo(k);
+				if (isStart  &&  getStepBetween(square, map.getSquare(next), width, height).isOppositeDirectionTo(currentMove))
+					continue;
+				relax(next, cost + 1, node, toX, toY, width, height);
+			}
+
+			int cluster = map.getClusterOf(square / height, square % height);
+			if (cluster == goalCluster  &&  !isStart) {
+				int dist = myGoalDistances[getLocal(map, cluster, square, height)];
+				if (dist != DistanceTable.UNREACHABLE)
+					relax(myGoalNode, cost + dist, node, toX, toY, width, height);
+			}
+		}
+
+		return -1;
+	}
+
+	/** Returns the given step of the first leg of the path last found. */
+	public Move getStep(int i) {
+		return myIsFlat  ?  myFlatSearch.getStep(i)  :  myPath[i];
+	}
+
+	/** Sets the most nodes (or, on levels without clusters, squares) one call to
+	  * findPath() may expand; 0 means no limit.
+	  */
+	public void setMaxExpansions(int max) {
+		myMaxExpansions = max;
+	}
+
+	/** Returns whether the last call to findPath() found the whole path, or that there is none. */
+	public boolean isComplete() {
+		return myIsFlat  ?  myFlatSearch.isComplete()  :  myIsComplete;
+	}
+
+	/** Forgets any search that was cut short. */
+	public void cancel() {
+		mySuspendedLevel = null;
+		if (myFlatSearch != null)
+			myFlatSearch.cancel();
+	}
+
+	/** Returns whether the search last cut short was for the given path on the level as it is now. */
+	private boolean isSuspended(Level level, ClusterMap map, int start, int target, Move currentMove) {
+		return level == mySuspendedLevel  &&  map == myMap  &&  level.getNumLayoutChanges() == mySuspendedLayout
+			&&  start == mySuspendedStart  &&  target == myTarget  &&  currentMove == mySuspendedMove;
+	}
+
+	/** Makes sure the arrays for searching over nodes hold the given number of them. */
+	private void setSize(int size) {
+		if (size == mySize)
+			return;
+
+		mySize = size;
+		if (myStamp.length < size) {
+			myStamp = new int[size];
+			myCost = new int[size];
+			myParent = new int[size];
+			myIsClosed = new boolean[size];
+		} else
+			java.util.Arrays.fill(myStamp, 0);
+		mySearchNumber = 0;
+	}
+
+	/** Breadth-first searches the given cluster, without leaving it, from the given
+	  * square, filling in the distance to (and, if dirs is not null, the move last
+	  * made to reach) each of its squares.  The first step does not turn straight
+	  * back from the given move.
+	  */
+	private void searchCluster(Level level, ClusterMap map, int cluster, int fromX, int fromY, Move currentMove,
+			int[] distances, byte[] dirs) {
+		int cx = map.getColumn(cluster), cy = map.getRow(cluster);
+		int left = map.getLeft(cx), top = map.getTop(cy);
+		int width = map.getWidth(cx), height = map.getHeight(cy);
+		java.util.Arrays.fill(distances, 0, width * height, DistanceTable.UNREACHABLE);
+
+		int reverse = -1;
+		for (int dir = 0;  dir < DIRECTIONS.length;  dir++)
+			if (DIRECTIONS[dir].isOppositeDirectionTo(currentMove))
+				reverse = dir;
+
+		int start = (fromX - left) * height + fromY - top;
+		int head = 0, tail = 0;
+		myQueue[tail++] = start;
+		distances[start] = 0;
+
+		while (head < tail) {
+			int curr = myQueue[head++];
+			int x = curr / height, y = curr % height;
+			for (int dir = 0;  dir < DIRECTIONS.length;  dir++) {
+				if (curr == start  &&  dir == reverse)
+					continue;
+				int nx = x + DIRECTIONS[dir].dx, ny = y + DIRECTIONS[dir].dy;
+				if (nx < 0  ||  nx >= width  ||  ny < 0  ||  ny >= height  ||  level.isWall(left + nx, top + ny))
+					continue;
+				int next = nx * height + ny;
+				if (distances[next] == DistanceTable.UNREACHABLE) {
+					distances[next] = distances[curr] + 1;
+					if (dirs != null)
+						dirs[next] = (byte)dir;
+					myQueue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/** Returns the number, inside the given cluster, of the given grid square. */
+	private static int getLocal(ClusterMap map, int cluster, int square, int gridHeight) {
+		int cx = map.getColumn(cluster), cy = map.getRow(cluster);
+		return (square / gridHeight - map.getLeft(cx)) * map.getHeight(cy) + square % gridHeight - map.getTop(cy);
+	}
+
+	/** Returns the fewest steps from a node to the goal, ignoring walls. */
+	private int heuristic(int node, int toX, int toY, int width, int height) {
+		if (node == myGoalNode)
+			return 0;
+		int square = myMap.getSquare(node);
+		int dx = Math.abs(toX - square / height);
+		int dy = Math.abs(toY - square % height);
+		return Math.min(dx, width - dx) + Math.min(dy, height - dy);
+	}
+
+	/** Returns the move from one grid square to the one next to it, wrapping around the board. */
+	private static Move getStepBetween(int from, int to, int width, int height) {
+		int dx = (to / height - from / height + width) % width;
+		int dy = (to % height - from % height + height) % height;
+		return (dx == 1)  ?  Move.RIGHT  :  (dx == width - 1)  ?  Move.LEFT
+			:  (dy == 1)  ?  Move.DOWN  :  (dy == height - 1)  ?  Move.UP  :  Move.NEUTRAL;
+	}
+
+	/** Puts the given node on the open list if the given cost is the best found for it. */
+	private void relax(int node, int cost, int parent, int toX, int toY, int width, int height) {
+		if (myStamp[node] != mySearchNumber  ||  (!myIsClosed[node]  &&  cost < myCost[node]))
+			visit(node, cost, parent, cost + heuristic(node, toX, toY, width, height));
+	}
+
+	/** Records the given node as reached at the given cost from the given parent,
+	  * and puts it on the open list.
+	  */
+	private void visit(int node, int cost, int parent, int f) {
+		myStamp[node] = mySearchNumber;
+		myCost[node] = cost;
+		myParent[node] = parent;
+		myIsClosed[node] = false;
+
+		if (myHeapSize + 1 == myHeapNodes.length) {
+			int[] squares = new int[myHeapNodes.length * 2];
+			int[] fs = new int[squares.length];
+			System.arraycopy(myHeapNodes, 0, squares, 0, myHeapNodes.length);
+			System.arraycopy(myHeapF, 0, fs, 0, myHeapF.length);
+			myHeapNodes = squares;
+			myHeapF = fs;
+		}
+
+		// sift up from the bottom of the heap
+		int i = ++myHeapSize;
+		while (i > 1  &&  myHeapF[i / 2] > f) {
+			myHeapNodes[i] = myHeapNodes[i / 2];
+			myHeapF[i] = myHeapF[i / 2];
+			i /= 2;
+		}
+		myHeapNodes[i] = node;
+		myHeapF[i] = f;
+	}
+
+	/** Removes and returns the node on top of the open list. */
+	private int pop() {
+		int best = myHeapNodes[1];
+		int last = myHeapNodes[myHeapSize];
+		int lastF = myHeapF[myHeapSize--];
+
+		// sift the last element down from the top of the heap
+		int i = 1, child;
+		while ((child = i * 2) <= myHeapSize) {
+			if (child < myHeapSize  &&  myHeapF[child + 1] < myHeapF[child])
+				child++;
+			if (myHeapF[child] >= lastF)
+				break;
+			myHeapNodes[i] = myHeapNodes[child];
+			myHeapF[i] = myHeapF[child];
+			i = child;
+		}
+		myHeapNodes[i] = last;
+		myHeapF[i] = lastF;
+		return best;
+	}
+
+	/** Fills in the steps from the start to the first node on the path found to the
+	  * given node (or straight to the goal, if that is the path), plus the step
+	  * out of it.
+	  * @return the number of steps filled in.
+	  */
+	private int buildLeg(ClusterMap map, int start, int last, int width, int height) {
+		// walk back to the first node reached from the start
+		int first = last, second = -1;
+		while (myParent[first] != START) {
+			second = first;
+			first = myParent[first];
+		}
+
+		int startCluster = map.getClusterOf(start / height, start % height);
+		int clusterHeight = map.getHeight(map.getRow(startCluster));
+		int end = (first == myGoalNode)  ?  myTarget  :  map.getSquare(first);
+
+		// follow the moves back from the end of the leg to the start
+		int local = getLocal(map, startCluster, end, height);
+		myPathLength = myStartDistances[local];
+		for (int i = myPathLength - 1;  i >= 0;  i--) {
+			Move step = DIRECTIONS[myStartDirs[local]];
+			myPath[i] = step;
+			local = (local / clusterHeight - step.dx) * clusterHeight + local % clusterHeight - step.dy;
+		}
+
+		if (first != myGoalNode  &&  second >= 0  &&  second != myGoalNode) {
+			Move step = getStepBetween(map.getSquare(first), map.getSquare(second), width, height);
+			if (step != Move.NEUTRAL)
+				myPath[myPathLength++] = step;
+		}
+		return myPathLength;
+	}
+}
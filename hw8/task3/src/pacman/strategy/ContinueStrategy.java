@@ -5,6 +5,8 @@ import pacman.sprite.*;
 
 /** A dumb strategy that just continues going in its current direction. */
 public class ContinueStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new strategy to move the given sprite. */
 	public ContinueStrategy(MovingSprite gh) { super(gh); }
 
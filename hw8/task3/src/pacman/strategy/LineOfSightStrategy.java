@@ -7,6 +7,8 @@ import pacman.sprite.*;
   * in which case it chases him using the seeker strategy's algorithm.
   */
 public class LineOfSightStrategy extends TurnStrategy {
+	private static final long serialVersionUID = 0;
+
 	private Strategy mySeeker;
 
 	/** Constructs a new strategy to move the given sprite. */
@@ -0,0 +1,25 @@
+package pacman.strategy;
+
+import pacman.model.*;
+
+/** Finds shortest paths between squares of a level's grid for the strategies
+  * that search.  Paths go up, down, left and right only, wrap around the edges
+  * of the grid, and pass through anything but walls.
+  *
+  * <p>A search may keep its working storage between calls, so each strategy
+  * should have its own.
+  */
+public interface PathSearch {
+	/** Searches the given level's grid for a shortest path from one square to another.
+	  * The path's first step will not turn straight back from the given move,
+	  * normally the one the sprite is already making; pass Move.NEUTRAL to allow
+	  * any first step.
+	  * @return the number of steps in the path, or -1 if there is no path.
+	  */
+	public int findPath(Level level, int fromX, int fromY, int toX, int toY, Move currentMove);
+
+	/** Returns the given step of the path last found, numbered from 0, as one of
+	  * Move.UP, DOWN, LEFT or RIGHT.
+	  */
+	public Move getStep(int i);
+}
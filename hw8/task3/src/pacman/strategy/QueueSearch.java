@@ -0,0 +1,120 @@
+package pacman.strategy;
+
+import java.util.Stack;
+
+import pacman.model.*;
+import pacman.utility.PriorityQueue;
+import pacman.utility.PriorityQueue.Location;
+
+/** The original A* search used by the smart strategy, with a Location object per
+  * square tried, a PriorityQueue open list and a Stack closed list.  Kept so the
+  * path benchmark has something to compare AStarSearch against.
+  */
+public class QueueSearch implements PathSearch {
+	private Move[] myPath = new Move[0];
+
+	/** Searches the given level's grid for a shortest path from one square to another. */
+	public int findPath(Level level, int x, int y, int targetx, int targety, Move currentMove) {
+		int gridWidth = level.getGridWidth(),
+			gridHeight = level.getGridHeight();
+
+		// (the open list used to hold 300 squares, which bigger maps overflowed)
+		PriorityQueue openList = new PriorityQueue(Math.max(300, 4 * gridWidth * gridHeight), PriorityQueue.ASCENDING, 0);  // size, type, min_weight
+		Stack<Location> closedList  = new Stack<Location>();
+
+		Location curr = new Location(null, x, y, 0,
+				Math.min(Math.abs(targetx - x), Math.abs(targetx - x + ((targetx > x)  ?  gridWidth  :  -gridWidth)))
+				+ Math.min(Math.abs(targety - y), Math.abs(targety - y + ((targety > x)  ?  gridHeight  :  -gridHeight))));
+		Location child  = null;
+		Location other  = null;
+		int i = 0;
+		int openindex, closedindex;
+		int childx, childy;
+
+		openList.push(curr);
+
+		while (!openList.isEmpty()) {
+			// pluck off best element in open list
+			curr = openList.pop();
+
+			// check if current node is the "goal" node
+			if (curr.x == targetx  &&  curr.y == targety) {
+				// reconstruct path back
+				myPath = new Move[curr.cost];
+				while (curr.parent != null) {
+					myPath[curr.cost - 1] = (curr.parent.x == (curr.x - 1 + gridWidth)  % gridWidth)   ?  Move.RIGHT
+						: (curr.parent.x == (curr.x + 1 + gridWidth)  % gridWidth)   ?  Move.LEFT
+						: (curr.parent.y == (curr.y - 1 + gridHeight) % gridHeight)  ?  Move.DOWN
+						: (curr.parent.y == (curr.y + 1 + gridHeight) % gridHeight)  ?  Move.UP
+						:  Move.NEUTRAL;
+					curr = curr.parent;
+				}
+				return myPath.length;
+			}
+
+			// not at the goal, so must see which ways we can go from this node
+			int[] xPoints = new int[] {(curr.x - 1 + gridWidth)   % gridWidth,  curr.x, (curr.x + 1 + gridWidth)   % gridWidth};
+			int[] yPoints = new int[] {(curr.y - 1 + gridHeight)  % gridHeight, curr.y, (curr.y + 1 + gridHeight)  % gridHeight};
+			for (i = 0;  i < xPoints.length;  i++)
+			for (int j = 0;  j < yPoints.length;  j++) {
+				childx = xPoints[i];
+				childy = yPoints[j];
+
+				// exclude diagonals and current square itself
+				if ( (childx != curr.x  &&  childy != curr.y)
+						||  (childx == curr.x  &&  childy == curr.y) )
+					continue;
+
+				// for each valid move direction, push node onto open list
+				// (if it's not already reachable in less moves)
+				if (!level.isWall(childx, childy)) {
+					child = new Location(curr, childx, childy, 1 + curr.cost,
+							Math.min(Math.abs(targetx - childx), Math.abs(targetx - childx + ((targetx > childx)  ?  -gridWidth  :  gridWidth)))
+							+ Math.min(Math.abs(targety - childy), Math.abs(targety - childy + ((targety > childx)  ?  -gridHeight  :  gridHeight))));
+
+					// check if this location is already on the CLOSED list but in less moves
+					closedindex = closedList.indexOf(child);
+					if (closedindex != -1) {
+						other = closedList.elementAt(closedindex);
+						if (other.f < child.f)
+							continue;
+					}
+
+					// check if this location is already on the OPEN list but in less moves
+					openindex = openList.indexOf(child, child.f);
+					if (openindex != -1) {
+						other = openList.elementAt(openindex);
+						if (other.f < child.f)
+							continue;
+					}
+
+					// don't allow ghost to do a 180-deg turn from the start (kludge?) (but it works!)
+					if (child.parent != null  &&  child.parent.x == x  &&  child.parent.y == y
+							&&  Move.newMove(child.x - child.parent.x, child.y - child.parent.y).isOppositeDirectionTo(currentMove))
+						continue;
+
+					// if we got this far, we haven't already gotten here in less
+					// moves, so remove new node from open/closed list, if it's on them
+					if (openindex != -1)
+						openList.removeElementAt(openindex);
+
+					if (closedindex != -1)
+						closedList.removeElementAt(closedindex);
+
+					// put new node on list of nodes to visit
+					openList.push(child);
+				}
+			}
+
+			// done pushing successors; mark this node as CLOSED
+			closedList.push(curr);
+		}
+
+		return -1;
+	}
+
+	/** Returns the given step of the path last found. */
+	public Move getStep(int i) {
+		return myPath[i];
+	}
+}
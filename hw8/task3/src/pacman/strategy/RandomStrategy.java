@@ -5,6 +5,8 @@ import pacman.sprite.*;
 
 /** A random strategy that moves in a completely arbitrary direction. */
 public class RandomStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new strategy to move the given sprite. */
 	public RandomStrategy(MovingSprite gh) { super(gh); }
 
@@ -19,7 +21,7 @@ public class RandomStrategy extends Strategy {
 
 			int index = 0;
 			while (true) {
-				index = (int)(Math.random() * possibleMoves.length);
+				index = getRandom().nextInt(possibleMoves.length);
 				if (isLegalMove[index]) {
 					mov = possibleMoves[index];
 					break;
@@ -4,9 +4,13 @@ import pacman.model.*;
 import pacman.sprite.*;
 
 /** Revival strategy used by dead ghosts to return to their hive.
-  * Uses smart strategy's algorithm.
+  * Uses smart strategy's algorithm; since the way home from any square never
+  * changes, whatever it has to search for comes out of the level's path cache
+  * the next time.
   */
 public class ReviveStrategy extends SmartStrategy {
+	private static final long serialVersionUID = 0;
+
 	private MovingSprite myTarget = null;
 
 	/** Constructs a new strategy to move the given sprite. */
@@ -17,7 +21,7 @@ public class ReviveStrategy extends SmartStrategy {
 
 	/** Returns this strategy's next move toward the given target. */
 	public Move getMove(Level level, MovingSprite target) {
-		// figure out how to get back home, only calculate this info once
+		// head back home; the way there is looked up or cached, not worked out anew
 		myTarget.setX(((Ghost)mySprite).getRespawnX());
 		myTarget.setY(((Ghost)mySprite).getRespawnY());
 		return super.getMove(level, myTarget);
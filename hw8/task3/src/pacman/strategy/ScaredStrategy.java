@@ -5,6 +5,8 @@ import pacman.sprite.*;
 
 /** A scared strategy that runs away from pac-man. */
 public class ScaredStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
 	private Strategy myTurn;
 	private Strategy mySeeker;
 	private Strategy myRandom;
@@ -5,6 +5,8 @@ import pacman.sprite.*;
 
 /** Seeks directly after pac-man, even if walls are in the way.  Can get stuck because of this. */
 public class SeekerStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new seeker strategy to move the given sprite. */
 	public SeekerStrategy(MovingSprite gh) { super(gh); }
 
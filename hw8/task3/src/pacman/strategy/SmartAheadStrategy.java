@@ -8,6 +8,8 @@ import pacman.view.*;
   * of pac-man, in an attempt to go around and sandwich him.
   */
 public class SmartAheadStrategy extends SmartStrategy {
+	private static final long serialVersionUID = 0;
+
 	private static final int MAX_SQUARES_AHEAD = 8;
 
 	/** Constructs a new smart ahead strategy to move the given sprite. */
@@ -1,219 +1,337 @@
 package pacman.strategy;
 
-import java.util.Stack;
-
 import pacman.model.*;
 import pacman.sprite.*;
 import pacman.strategy.Strategy;
-import pacman.utility.PriorityQueue;
-import pacman.utility.PriorityQueue.Location;
 
 
-/** A smart strategy that uses the A* shortest path algorithm to find the best way to
-  * go to catch Pac-Man.
+/** A smart strategy that finds the shortest way to go to catch Pac-Man.  It looks up
+  * its next square in the level's distance table when it can, or in the level's flow
+  * field toward its target when the level is too large for a table.  On very large
+  * levels, and whenever neither has a way, it searches: a leg at a time over the
+  * level's clusters if it has them, and otherwise with the A* shortest path algorithm.
+  *
+  * <p>A search that runs past the strategy's work budget is cut short; the sprite
+  * sets off along the best start it found, and the search carries on over the
+  * following moves until it finishes or turns out to want a different start.
+  * Where the search had got to is saved along with the strategy; the search's own
+  * scratch space is not, so a restored strategy first does the search over again
+  * up to that point, which gives it the same open list as before.
   */
 public class SmartStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
+	private static final int INITIAL_STACK_SIZE = 64;
+
 	protected int[][] myWeightMap = null;
-	protected Stack<Move> myMoveStack;
+	protected Move[] myMoveStack = new Move[INITIAL_STACK_SIZE];  // next move on top
+	protected int myNumMoves = 0;
 	protected int mySpeedUsed = 0;
+	protected transient PathSearch mySearch = new ClusterSearch();  // scratch space; not saved
+
+	// a search cut short by the work budget, and the steps made along it so far
+	private boolean myIsSearching = false;
+	private int mySearchFromX, mySearchFromY, mySearchToX, mySearchToY, mySearchAtX, mySearchAtY;
+	private Move mySearchMove;
+	private int mySearchExpansions = 0;  // that it has made so far: every budget it has used up
+	private Move[] myStepsTaken = null;
+	private int myNumStepsTaken = 0;
 
 	/** Constructs a new smart strategy to move the given sprite. */
 	public SmartStrategy(MovingSprite gh) {
 		super(gh);
-		myMoveStack = new Stack<Move>();
+	}
+
+	/** Sets the path search this strategy uses when it cannot look up its moves. */
+	public void setPathSearch(PathSearch search) {
+		mySearch = search;
 	}
 
 	/** Notifies this strategy of pac-man's death. */
 	public void notifyOfPacManDeath() {
-		if (myMoveStack != null)
-			myMoveStack.removeAllElements();
+		myNumMoves = 0;
+		myIsSearching = false;
 	}
 
 	/** Returns true if there are no moves left in this strategy's move list. */
 	protected boolean noMovesLeft() {
-		return myMoveStack == null  ||  myMoveStack.isEmpty();
+		return myNumMoves == 0;
 	}
 
 	/** Returns this strategy's next move toward the given target. */
 	public Move getMove(Level level, MovingSprite target) {
 		//System.out.println("smart-strat targeting " + target.dump());
 
-		if (myMoveStack == null)
-			myMoveStack = new Stack<Move>();
-
-		if (myMoveStack.isEmpty()  ||  mySprite.getSpeed() != mySpeedUsed) {
-//			System.out.println("Recalculating path");
-			Sprite[][] map = level.getGrid();
-			int x = mySprite.getGridX(),
-				y = mySprite.getGridY(),
-				targetx = target.getGridX(),
-				targety = target.getGridY(),
-				gridWidth = map.length,
-				gridHeight = map[0].length;
-
-			// weigh the map using A* shortest-path algorithm!
-			myMoveStack.removeAllElements();
+		if (myNumMoves == 0  ||  mySpeedUsed != mySprite.getSpeed()) {
+			if (mySpeedUsed != mySprite.getSpeed())
+				myIsSearching = false;
+			myNumMoves = 0;
 			mySpeedUsed = mySprite.getSpeed();
+			if (!myIsSearching  ||  !continueSearch(level)) {
+				if (pushNextSquare(level, target)) {
+					Metrics metrics = level.getMetrics();
+					if (metrics != null)
+						metrics.count(Metrics.Counter.PATH_LOOKUPS);
+				} else
+					findPath(level, target);
+			}
+		} else if (myIsSearching)
+			continueSearch(level);
+
+		// pull first move off the list and go there
+		return (myNumMoves > 0)  ?  myMoveStack[--myNumMoves]  :  Move.NEUTRAL;
+	}
+
+	/** Returns whether this strategy's sprite is kept out by ghost gates right now. */
+	protected boolean isBlockedByGates() {
+		if (mySprite.type == Sprite.GHOST) {
+			Ghost gh = (Ghost)mySprite;
+			return !(gh.isEaten()  ||  gh.isInCage());
+		}
+		return true;
+	}
+
+	/** Pushes the moves to go one square toward the given target, looked up in the level's
+	  * distance table or flow field, onto the move stack.
+	  * @return false if neither has a path to the target, so the moves must be found by search.
+	  */
+	protected boolean pushNextSquare(Level level, MovingSprite target) {
+		boolean gatesBlock = isBlockedByGates();
+		DistanceTable table = level.getDistanceTable(gatesBlock);
+		int x = mySprite.getGridX(),
+			y = mySprite.getGridY(),
+			targetx = target.getGridX(),
+			targety = target.getGridY();
+		Move mov;
+		if (table != null) {
+			if (table.getDistance(x, y, targetx, targety) == DistanceTable.UNREACHABLE)
+				return false;
+			mov = table.getNextMove(x, y, targetx, targety, mySprite.getCurrentMove());
+		} else {
+			// a field over a very large level costs too much to rebuild each time
+			// the target moves; search over the level's clusters instead
+			if (level.getClusterMap() != null)
+				return false;
+
+			FlowField field = level.getFlowField(targetx, targety, gatesBlock);
+			if (field == null  ||  field.getDistance(x, y) == DistanceTable.UNREACHABLE)
+				return false;
+			mov = field.getNextMove(x, y, mySprite.getCurrentMove());
+		}
+
+		mov = mov.times(mySpeedUsed);
+		if (mov != Move.NEUTRAL)
+			for (int i = 0;  i < Level.GRID_SIZE / mySpeedUsed;  i++)
+				push(mov);
 
-			PriorityQueue openList = new PriorityQueue(300, PriorityQueue.ASCENDING, 0);  // size, type, min_weight
-			Stack<Location> closedList  = new Stack<Location>();
-
-			Location curr = new Location(null, x, y, 0,
-					Math.min(Math.abs(targetx - x), Math.abs(targetx - x + ((targetx > x)  ?  gridWidth  :  -gridWidth)))
-					+ Math.min(Math.abs(targety - y), Math.abs(targety - y + ((targety > x)  ?  gridHeight  :  -gridHeight))));
-			Location child  = null;
-			Location other  = null;
-			Move mov = null;
-			int i = 0;
-			int openindex, closedindex;
-			int movesPerSquare = Level.GRID_SIZE / mySpeedUsed;
-			int childx, childy;
-
-			// System.out.println("moving from grid " + x + "," + y + " to " + targetx + "," + targety);
-
-			openList.push(curr);
-
-			while (!openList.isEmpty()) {
-				// System.out.println("A* non-empty open list; looping");
-				// pluck off best element in open list
-				// (priority queue rapes all, because it puts best first every time)
-				curr = openList.pop();
-				// System.out.println("trying best of " + curr);
-
-				// check if current node is the "goal" node
-				if (curr.x == targetx  &&  curr.y == targety) {
-					// we found pac-man!  reconstruct path back
-					// myMoveStack.removeAllElements();
-
-					// add the moves generated by A*
-					while (curr.parent != null) {
-						mov = (curr.parent.x == (curr.x - 1 + gridWidth)  % gridWidth)   ?  Move.RIGHT
-							: (curr.parent.x == (curr.x + 1 + gridWidth)  % gridWidth)   ?  Move.LEFT
-							: (curr.parent.y == (curr.y - 1 + gridHeight) % gridHeight)  ?  Move.DOWN
-							: (curr.parent.y == (curr.y + 1 + gridHeight) % gridHeight)  ?  Move.UP
-							:  Move.NEUTRAL;
-
-						mov = mov.times(mySprite.getSpeed());
-						for (i = 0;  i < movesPerSquare;  i++)
-							myMoveStack.push(mov);
-
-						curr = curr.parent;
-					}
-
-					// last moves to be pushed (first moves to be made) are moves
-					// to get ghost to nearest square
-					int toX = x * Level.GRID_SIZE;
-					int toY = y * Level.GRID_SIZE;
-					int fromX = mySprite.getX();
-					int fromY = mySprite.getY();
-					int deltax = toX - fromX;
-					int deltay = toY - fromY;
-					int dx, dy;
-					Move top = null;
-
-					// while looping, we'll also check for and remove redundant moves!
-					while (deltax != 0  ||  deltay != 0) {
-						dx = (deltax < 0)  ?  (int)Math.max(-mySprite.getSpeed(), deltax)
-								:  (deltax > 0)  ?  (int)Math.min(mySprite.getSpeed(), deltax)  :  0;
-						dy = (deltay < 0)  ?  (int)Math.max(-mySprite.getSpeed(), deltay)
-								:  (deltay > 0)  ?  (int)Math.min(mySprite.getSpeed(), deltay)  :  0;
-						deltax -= dx;
-						deltay -= dy;
-						mov = Move.newMove(dx, dy);
-
-						if (!myMoveStack.isEmpty()) {
-							top = (Move)myMoveStack.peek();
-							if (top.isOppositeOf(mov))
-								// contradictory moves; pull them off
-								myMoveStack.pop();
-							else
-								myMoveStack.push(mov);
-						}
-						else
-							myMoveStack.push(mov);
-					}
-
-					// successfully regenerated path, so exit
-					break;
-				}
-
-				else {
-					// not at pac-man, so must see which ways we can go from this node
-					int[] xPoints = new int[] {(curr.x - 1 + gridWidth)   % gridWidth,  curr.x, (curr.x + 1 + gridWidth)   % gridWidth};
-					int[] yPoints = new int[] {(curr.y - 1 + gridHeight)  % gridHeight, curr.y, (curr.y + 1 + gridHeight)  % gridHeight};
-					for (i = 0;  i < xPoints.length;  i++)
-					for (int j = 0;  j < yPoints.length;  j++) {
-						childx = xPoints[i];
-						childy = yPoints[j];
-
-					// for (childx = curr.x - 1;  childx <= curr.x + 1;  childx++)
-					// for (childy = curr.y - 1;  childy <= curr.y + 1;  childy++) {
-						// exclude diagonals and current square itself
-						if ( (childx != curr.x  &&  childy != curr.y)
-								||  (childx == curr.x  &&  childy == curr.y) )
-							continue;
-
-						// System.out.println("(" + curr.x + ", " + curr.y + ") has child of (" + childx + ", " + childy + ")");
-
-						// for each valid move direction, push node onto open list
-						// (if it's not already reachable in less moves)
-						if (0 <= childx  &&  childx < map.length  &&  0 <= childy  &&  childy < map[0].length
-								&&  !(map[childx][childy].type == Sprite.WALL)) {  // ObstacleSprite
-							// child = new Location(curr, childx, childy, 1 + curr.cost, Math.abs(targetx - childx) + Math.abs(targety - childy));
-							child = new Location(curr, childx, childy, 1 + curr.cost,
-									Math.min(Math.abs(targetx - childx), Math.abs(targetx - childx + ((targetx > childx)  ?  -gridWidth  :  gridWidth)))
-									+ Math.min(Math.abs(targety - childy), Math.abs(targety - childy + ((targety > childx)  ?  -gridHeight  :  gridHeight))));
-
-							// System.out.println("(" + curr.x + ", " + curr.y + ")'s child (" + childx + ", " + childy + "): heur=" + child.heuristic + ", f=" + child.f);
-
-							// check if this location is already on the CLOSED list but in less moves
-							closedindex = closedList.indexOf(child);
-							if (closedindex != -1) {
-								other = (Location)closedList.elementAt(closedindex);
-								if (other.f < child.f)
-									continue;
-							}
-
-							// check if this location is already on the OPEN list but in less moves
-							openindex = openList.indexOf(child, child.f);
-							if (openindex != -1) {
-								other = (Location)openList.elementAt(openindex);
-								if (other.f < child.f)
-									continue;
-							}
-
-							// don't allow ghost to do a 180-deg turn from the start (kludge?) (but it works!)
-							if (child.parent != null  &&  child.parent.x == x  &&  child.parent.y == y
-									&&  Move.newMove(child.x - child.parent.x, child.y - child.parent.y).times(mySprite.getSpeed()).isOppositeOf(mySprite.getCurrentMove())) {
-								// System.out.println("throwing away " + child + " because opposite of " + mySprite.move());
-								continue;
-							}
-
-							// if we got this far, we haven't already gotten here in less
-							// moves, so remove new node from open/closed list, if it's on them
-							if (openindex != -1)
-								openList.removeElementAt(openindex);
-
-							if (closedindex != -1)
-								closedList.removeElementAt(closedindex);
-
-							// put new node on list of nodes to visit
-							openList.push(child);
-						}
-					}
-
-					// done pushing successors; mark this node as CLOSED
-					closedList.push(curr);
-				}
+		pushMovesToSquare(x, y);
+		return true;
+	}
+
+	/** Pushes the moves to get this strategy's sprite exactly onto the given grid square
+	  * onto the move stack, so that they are the first ones made.
+	  */
+	protected void pushMovesToSquare(int x, int y) {
+		int toX = x * Level.GRID_SIZE;
+		int toY = y * Level.GRID_SIZE;
+		int fromX = mySprite.getX();
+		int fromY = mySprite.getY();
+		int deltax = toX - fromX;
+		int deltay = toY - fromY;
+		int dx, dy;
+		Move mov = null;
+		Move top = null;
+
+		// while looping, we'll also check for and remove redundant moves!
+		while (deltax != 0  ||  deltay != 0) {
+			dx = (deltax < 0)  ?  (int)Math.max(-mySprite.getSpeed(), deltax)
+					:  (deltax > 0)  ?  (int)Math.min(mySprite.getSpeed(), deltax)  :  0;
+			dy = (deltay < 0)  ?  (int)Math.max(-mySprite.getSpeed(), deltay)
+					:  (deltay > 0)  ?  (int)Math.min(mySprite.getSpeed(), deltay)  :  0;
+			deltax -= dx;
+			deltay -= dy;
+			mov = Move.newMove(dx, dy);
+
+			if (myNumMoves > 0) {
+				top = myMoveStack[myNumMoves - 1];
+				if (top.isOppositeOf(mov))
+					// contradictory moves; pull them off
+					myNumMoves--;
+				else
+					push(mov);
 			}
+			else
+				push(mov);
 		}
-		Move mov = Move.NEUTRAL;
+	}
 
-		if (myMoveStack != null  &&  !myMoveStack.isEmpty()) {
-			// pull first move off the list and go there
-			mov = (Move)myMoveStack.pop();
+	/** Searches for a path to the given target, or takes it from the level's path cache
+	  * if the same search has been made before, and pushes the moves to follow it onto
+	  * the move stack.
+	  */
+	protected void findPath(Level level, MovingSprite target) {
+		int x = mySprite.getGridX(),
+			y = mySprite.getGridY(),
+			targetx = target.getGridX(),
+			targety = target.getGridY();
+		if (!level.isOnMap(x, y)  ||  !level.isOnMap(targetx, targety))
+			return;
+		if (mySearch == null)
+			mySearch = new ClusterSearch();
+
+		PathCache cache = level.getPathCache();
+		Move current = mySprite.getCurrentMove();
+		int from = x * level.getGridHeight() + y;
+		int to = targetx * level.getGridHeight() + targety;
+		Move[] path = cache.get(mySearch, from, to, current);
+		Metrics metrics = level.getMetrics();
+		myIsSearching = false;
+		if (path == null) {
+			if (mySearch instanceof AnytimeSearch) {
+				// a search given up earlier must not be picked up again here; a
+				// strategy restored from a keyframe has no such search to pick up
+				((AnytimeSearch)mySearch).cancel();
+				((AnytimeSearch)mySearch).setMaxExpansions(myWorkBudget);
+			}
+			int length = mySearch.findPath(level, x, y, targetx, targety, current);
+			if (metrics != null)
+				metrics.count(Metrics.Counter.PATH_SEARCHES);
+
+			if (mySearch instanceof AnytimeSearch  &&  !((AnytimeSearch)mySearch).isComplete()) {
+				// out of budget; make the first step of the best start found, and
+				// carry on the search while making it
+				myIsSearching = true;
+				mySearchFromX = x;
+				mySearchFromY = y;
+				mySearchToX = targetx;
+				mySearchToY = targety;
+				mySearchMove = current;
+				mySearchAtX = x;
+				mySearchAtY = y;
+				mySearchExpansions = myWorkBudget;
+				myNumStepsTaken = 0;
+				if (length > 0)
+					pushStep(level, mySearch.getStep(0));
+				pushMovesToSquare(x, y);
+				if (metrics != null)
+					metrics.count(Metrics.Counter.SEARCHES_CUT_SHORT);
+				return;
+			}
+
+			path = new Move[Math.max(length, 0)];
+			for (int step = 0;  step < path.length;  step++)
+				path[step] = mySearch.getStep(step);
+			cache.put(mySearch, from, to, current, path);
+		} else if (metrics != null)
+			metrics.count(Metrics.Counter.PATH_CACHE_HITS);
+
+		pushPath(path, 0);
+
+		// last moves to be pushed (first moves to be made) are moves
+		// to get ghost to nearest square
+		pushMovesToSquare(x, y);
+	}
+
+	/** Carries on the search that was cut short, for up to another work budget's worth
+	  * of squares.  If it finishes on a path that begins with the steps already made,
+	  * the rest of the path goes in under the moves on the move stack; if it runs out
+	  * again and the move stack is empty, the next step of the best start found is
+	  * pushed.
+	  * @return false if the search has to be given up, because it found no path or
+	  *         one that does not go the way the sprite went.
+	  */
+	private boolean continueSearch(Level level) {
+		// the sprite may have been sent somewhere else since it last made a step
+		boolean isBetweenSteps = (myNumMoves == 0);
+		if (isBetweenSteps  &&  (mySprite.getGridX() != mySearchAtX  ||  mySprite.getGridY() != mySearchAtY)) {
+			myIsSearching = false;
+			return false;
 		}
 
-		return mov;
+		if (mySearch == null) {
+			// restored from a keyframe; get the search back to where it was cut short
+			mySearch = new ClusterSearch();
+			((AnytimeSearch)mySearch).setMaxExpansions(mySearchExpansions);
+			mySearch.findPath(level, mySearchFromX, mySearchFromY, mySearchToX, mySearchToY, mySearchMove);
+		}
+
+		AnytimeSearch search = (AnytimeSearch)mySearch;
+		search.setMaxExpansions(myWorkBudget);
+		int length = mySearch.findPath(level, mySearchFromX, mySearchFromY, mySearchToX, mySearchToY, mySearchMove);
+		boolean isComplete = search.isComplete();
+		mySearchExpansions += myWorkBudget;
+		Metrics metrics = level.getMetrics();
+		if (!isComplete  &&  metrics != null)
+			metrics.count(Metrics.Counter.SEARCHES_CUT_SHORT);
+
+		boolean isOnPath = (length >= myNumStepsTaken);
+		for (int step = 0;  isOnPath  &&  step < myNumStepsTaken;  step++)
+			isOnPath = (mySearch.getStep(step) == myStepsTaken[step]);
+		if (!isOnPath  ||  (!isComplete  &&  isBetweenSteps  &&  length == myNumStepsTaken)) {
+			myIsSearching = false;
+			return false;
+		}
+
+		if (isComplete) {
+			myIsSearching = false;
+			Move[] path = new Move[length];
+			for (int step = 0;  step < length;  step++)
+				path[step] = mySearch.getStep(step);
+			int height = level.getGridHeight();
+			level.getPathCache().put(mySearch, mySearchFromX * height + mySearchFromY,
+					mySearchToX * height + mySearchToY, mySearchMove, path);
+
+			// keep the moves left to finish the step being made on top
+			int numLeft = myNumMoves;
+			Move[] left = new Move[numLeft];
+			System.arraycopy(myMoveStack, 0, left, 0, numLeft);
+			myNumMoves = 0;
+			pushPath(path, myNumStepsTaken);
+			for (int i = 0;  i < numLeft;  i++)
+				push(left[i]);
+		} else if (isBetweenSteps)
+			pushStep(level, mySearch.getStep(myNumStepsTaken));
+
+		if (isBetweenSteps)
+			pushMovesToSquare(mySprite.getGridX(), mySprite.getGridY());
+		return true;
+	}
+
+	/** Pushes the moves to make the given step of a path cut short, and notes it as made. */
+	private void pushStep(Level level, Move step) {
+		if (myStepsTaken == null)
+			myStepsTaken = new Move[INITIAL_STACK_SIZE];
+		else if (myNumStepsTaken == myStepsTaken.length) {
+			Move[] bigger = new Move[myStepsTaken.length * 2];
+			System.arraycopy(myStepsTaken, 0, bigger, 0, myNumStepsTaken);
+			myStepsTaken = bigger;
+		}
+		myStepsTaken[myNumStepsTaken++] = step;
+		mySearchAtX = (mySearchAtX + step.dx + level.getGridWidth())  % level.getGridWidth();
+		mySearchAtY = (mySearchAtY + step.dy + level.getGridHeight()) % level.getGridHeight();
+
+		Move mov = step.times(mySpeedUsed);
+		for (int i = 0;  i < Level.GRID_SIZE / mySpeedUsed;  i++)
+			push(mov);
+	}
+
+	/** Pushes the moves to follow the given path, from the given step on, onto the move stack. */
+	private void pushPath(Move[] path, int first) {
+		// push the path's last steps first, so that its first steps are made first
+		for (int step = path.length - 1;  step >= first;  step--) {
+			Move mov = path[step].times(mySpeedUsed);
+			for (int i = 0;  i < Level.GRID_SIZE / mySpeedUsed;  i++)
+				push(mov);
+		}
+	}
+
+	/** Pushes the given move onto the move stack. */
+	protected final void push(Move mov) {
+		if (myNumMoves == myMoveStack.length) {
+			Move[] bigger = new Move[myMoveStack.length * 2];
+			System.arraycopy(myMoveStack, 0, bigger, 0, myNumMoves);
+			myMoveStack = bigger;
+		}
+		myMoveStack[myNumMoves++] = mov;
 	}
 }
\ No newline at end of file
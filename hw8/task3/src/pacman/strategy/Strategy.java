@@ -4,13 +4,22 @@ import pacman.model.*;
 import pacman.sprite.*;
 import pacman.utility.*;
 
+import java.io.Serializable;
 import java.util.*;
 
 /** Superclass for all strategies for moving enemy sprites. */
-public abstract class Strategy {
+public abstract class Strategy implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	/** The most squares a strategy may search through in one call to getMove(),
+	  * by default; far more than any maze of ordinary size needs.
+	  */
+	public static final int DEFAULT_WORK_BUDGET = 20000;
+
 	protected MovingSprite mySprite = null;
 	protected int myMovePercentage      = 100;
 	protected int myMoveAgainPercentage =   0;
+	protected int myWorkBudget = DEFAULT_WORK_BUDGET;
 
 	/** Constructs a new strategy to move the given sprite. */
 	public Strategy(MovingSprite spr) {
@@ -37,16 +46,47 @@ public abstract class Strategy {
 		myMoveAgainPercentage = pct;
 	}
 
+	/** Returns the most squares this strategy may search through in one call to getMove(). */
+	public int getWorkBudget() {
+		return myWorkBudget;
+	}
+
+	/** Sets the most squares this strategy may search through in one call to getMove();
+	  * a strategy that runs out makes a start toward its target and carries on the
+	  * search on its next move.  The budget is counted in squares rather than time so
+	  * that games play out the same on any machine; 0 means no limit.
+	  */
+	public void setWorkBudget(int budget) {
+		myWorkBudget = budget;
+	}
+
 	/** Returns true if this strategy should move now. */
 	public boolean shouldMove() {
-		int roll = (int)(Math.random() * 100) + 1;  // random # between 0--100 inclusive
-		return roll <= myMovePercentage;
+		return roll(myMovePercentage);
 	}
 
 	/** Returns true if this strategy should move again now. */
 	public boolean shouldMoveAgain() {
-		int roll = (int)(Math.random() * 100) + 1;  // random # between 0--100 inclusive
-		return roll <= myMoveAgainPercentage;
+		return roll(myMoveAgainPercentage);
+	}
+
+	/** Returns true the given percentage of the time; doesn't bother rolling at 0 or 100. */
+	private boolean roll(int percentage) {
+		if (percentage >= 100)
+			return true;
+		else if (percentage <= 0)
+			return false;
+
+		int roll = getRandom().nextInt(100) + 1;  // random # between 1--100 inclusive
+		return roll <= percentage;
+	}
+
+	/** Returns the random number generator of the sprite this strategy moves,
+	  * which comes from its game; strategies must use it rather than Math.random()
+	  * so that games can be played again exactly.
+	  */
+	protected GameRandom getRandom() {
+		return mySprite.getRandom();
 	}
 
 	/** Notifies this strategy of pac-man's death. */
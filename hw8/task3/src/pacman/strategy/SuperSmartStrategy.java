@@ -6,6 +6,8 @@ import pacman.sprite.*;
   * path each time.
   */
 public class SuperSmartStrategy extends SmartStrategy {
+	private static final long serialVersionUID = 0;
+
 	/** Constructs a new Super smart strategy to move the given sprite. */
 	public SuperSmartStrategy(MovingSprite gh) {
 		super(gh);
@@ -9,6 +9,8 @@ import java.util.*;
   * back the way it came; can only make 90-degree turns, unless absolutely necessary to do otherwise.
   */
 public class TurnStrategy extends Strategy {
+	private static final long serialVersionUID = 0;
+
 	List<Move> possibleMoves = new ArrayList<Move>();
 
 	/** Constructs a new Turn strategy to move the given sprite. */
@@ -76,6 +78,6 @@ public class TurnStrategy extends Strategy {
 			return Move.NEUTRAL;
 
 		// pick a move at random from our list
-		return possibleMoves.get((int)(Math.random() * possibleMoves.size()));
+		return possibleMoves.get(getRandom().nextInt(possibleMoves.size()));
 	}
 }
\ No newline at end of file
@@ -1,8 +1,34 @@
 package pacman.utility;
 
+import java.io.Serializable;
+import java.util.*;
+
 /** Class workaround for Java's lack of printable enumerated types. */
-public class Enum {
+public class Enum implements Serializable {
+	private static final long serialVersionUID = 0;
+
+	private static final Map<String, Enum> ourInstances = new HashMap<String, Enum>();
+
 	private String myName;
-	public Enum(String name) { myName = name; }
+	public Enum(String name) {
+		myName = name;
+		synchronized (ourInstances) {
+			if (!ourInstances.containsKey(name))
+				ourInstances.put(name, this);
+		}
+	}
 	public String toString() { return myName; }
+
+	/** Returns a hash code of this Enum's name, which is the same in every run. */
+	public int hashCode() { return myName.hashCode(); }
+
+	/** Replaces an Enum read back in from a stream with the original one of the same
+	  * name, so that Enums can still be compared with ==.
+	  */
+	protected Object readResolve() {
+		synchronized (ourInstances) {
+			Enum original = ourInstances.get(myName);
+			return (original != null)  ?  original  :  this;
+		}
+	}
 }
\ No newline at end of file
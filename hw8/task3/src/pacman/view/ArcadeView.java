@@ -116,10 +116,12 @@ public class ArcadeView extends View {
         myClipTable.put("angry", getSound("angry1"));
     }
 
-    /** Called to notify this view of an event in its model. */
-    public void gameUpdated(Listenable origin, Object source, Object eventType) {
+    /** Called to notify this view of an event in its model, along with the model's
+      * sound state when the event was raised.
+      */
+    public void gameUpdated(Listenable origin, Object source, Object eventType, Object state) {
         // turn on/off appropriate sounds
-        doSounds(eventType);
+        doSounds(eventType, getSoundState(state));
 
         if (eventType == GameModel.Event.NEW_LEVEL
                 ||  eventType == GameModel.Event.NEW_GAME) {
@@ -308,10 +310,9 @@ public class ArcadeView extends View {
         g.drawImage(getImage(level.getName()), 0, 0, this);
 
         // draw dots, pellets, fruit (and walls, if we have no map image file)
-        Sprite[][] map = level.getGrid();
         for (int x = 0;  x < level.getGridWidth();  x++)
         for (int y = 0;  y < level.getGridHeight();  y++) {
-            Sprite spr = map[x][y];
+            Sprite spr = level.getGridCell(x, y);
             if (spr.isVisible) {
                 // don't draw walls unless we have to because of missing map image
                 if (!(spr.type == Sprite.WALL  ||  spr.type == Sprite.GATE))
@@ -488,12 +489,11 @@ public class ArcadeView extends View {
         board_g.fillRect(0, 0, level.getWidth(), level.getHeight());
 
         // look through grid to find each wall, so we can draw it
-        Sprite[][] map = level.getGrid();
         int gridWidth = level.getGridWidth();
         int gridHeight = level.getGridHeight();
         for (int x = 0;  x < gridWidth;   x++)
         for (int y = 0;  y < gridHeight;  y++) {
-            Sprite spr = map[x][y];
+            Sprite spr = level.getGridCell(x, y);
             if (spr instanceof ObstacleSprite) {
                 Image wallImage = null;
                 String preferredImageName = level.getName() + spr.getImageName();
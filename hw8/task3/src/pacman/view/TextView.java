@@ -70,10 +70,9 @@ public class TextView extends View implements ComponentListener {
 		// draw grid
 		int gridWidth = level.getGridWidth();
 		int gridHeight = level.getGridHeight();
-		Sprite[][] map = level.getGrid();
 		for (int y = 0;  y < gridHeight;  y++)
 		for (int x = 0;  x < gridWidth;  x++)
-			if (!drawOneSprite(g, map[x][y]))
+			if (!drawOneSprite(g, level.getGridCell(x, y)))
 				System.out.println("null square at (" + x + ", " + y + ")");
 
 		// draw fruit on bottom
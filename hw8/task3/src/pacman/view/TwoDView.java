@@ -92,10 +92,9 @@ public class TwoDView extends View {
 		int frY = 0;
 
 		// draw the level map (walls/dots/pellets/fruit)
-		Sprite[][] map = level.getGrid();
 		for (int y = 0;  y < gridHeight;  y++)
 		for (int x = 0;  x < gridWidth;  x++) {
-			spr = map[x][y];
+			spr = level.getGridCell(x, y);
 			if (!spr.isVisible)
 				continue;
 
@@ -457,11 +456,10 @@ public class TwoDView extends View {
 
 		int gridWidth  = level.getGridWidth();
 		int gridHeight = level.getGridHeight();
-		Sprite[][] map = level.getGrid();
 
 		for (int x = 0;  x < gridWidth;  x++)
 		for (int y = 0;  y < gridHeight;  y++) {
-			Sprite spr = map[x][y];
+			Sprite spr = level.getGridCell(x, y);
 
 			if (!(spr instanceof ObstacleSprite))
 				continue;
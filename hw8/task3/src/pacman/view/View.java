@@ -11,7 +11,7 @@ import java.util.*;
 /** The superclass for all game views.  It is responsible for playing sounds
   * and updating its size accordingly as the game progresses.
   */
-public abstract class View extends DoubleBufferedPanel implements Listener {
+public abstract class View extends DoubleBufferedPanel implements SnapshotListener {
     protected GameModel myModel;
     protected ResourceFetcher myFetcher;
     protected Object myType;
@@ -36,8 +36,16 @@ public abstract class View extends DoubleBufferedPanel implements Listener {
 
     /** Called when this view is notified of an event by its model. */
     public void gameUpdated(Listenable origin, Object source, Object eventType) {
+        gameUpdated(origin, source, eventType, myModel.getSoundState());
+    }
+
+    /** Called when this view is notified of an event by its model, along with the
+      * model's sound state when the event was raised.  The view may hear of the event
+      * well after the model has moved on, so it goes by that rather than the model.
+      */
+    public void gameUpdated(Listenable origin, Object source, Object eventType, Object state) {
         // turn on/off appropriate sounds
-        doSounds(eventType);
+        doSounds(eventType, getSoundState(state));
         requestFocus();
 
         if (eventType == GameModel.Event.NEW_LEVEL
@@ -74,42 +82,35 @@ public abstract class View extends DoubleBufferedPanel implements Listener {
         return new TimedAudioClip(clip, duration);
     }
 
-    /** Plays sounds at the appropriate times. */
-    protected void doSounds(Object eventType) {
-        // System.out.println("in progress? " + myModel.isInProgress());
-        // System.out.println(Ghost.ourGhostCount + " total ghosts; are there angry ghosts? " + Ghost.areAngryGhosts());
-        // System.out.println(Ghost.ourScaredCount + " scared; are there scared ghosts? " + Ghost.areScaredGhosts());
-        // System.out.println(Ghost.ourEatenCount + " eaten; are there eaten ghosts? " + Ghost.areEatenGhosts() + "\n");
-
-        PacMan pac = myModel.getPacMan();
-        boolean pacJustKilled = pac != null  &&  pac.wasJustKilled();
-        boolean ghostJustEaten = false;
-
-        for (MovingSprite spr : myModel.getMovingSprites()) {
-            if (spr.type == Sprite.GHOST) {
-                Ghost gh = (Ghost)spr;
-                if (gh.wasJustEaten()) {
-                    ghostJustEaten = true;
-                    break;
-                }
-            }
-        }
+    /** Returns the given event state as a sound state, or the model's sound state now
+      * if it is not one.
+      */
+    protected GameModel.SoundState getSoundState(Object state) {
+        return (state instanceof GameModel.SoundState)  ?  (GameModel.SoundState)state  :  myModel.getSoundState();
+    }
+
+    /** Plays sounds at the appropriate times, going by the given sound state of the model. */
+    protected void doSounds(Object eventType, GameModel.SoundState sounds) {
+        // System.out.println("in progress? " + sounds.isInProgress());
+
+        boolean pacJustKilled = sounds.wasPacManJustKilled();
+        boolean ghostJustEaten = sounds.wasGhostJustEaten();
 
         // stop incorrectly looping background noises
-        if (getSound("pacchomp").isPlaying()  &&  ((pac != null  &&  !pac.isEating())  ||  pacJustKilled))
+        if (getSound("pacchomp").isPlaying()  &&  ((sounds.hasPacMan()  &&  !sounds.isPacManEating())  ||  pacJustKilled))
             getSound("pacchomp").stop();
 
-        if (getSound("angry").isPlaying()  &&  (!Ghost.areAngryGhosts()  ||  !myModel.isDoingGhostSounds()  ||  pacJustKilled)) {
+        if (getSound("angry").isPlaying()  &&  (!sounds.areAngryGhosts()  ||  !sounds.isDoingGhostSounds()  ||  pacJustKilled)) {
             getSound("angry").stop();
             getSound("angry1").stop();
             getSound("angry2").stop();
             getSound("angry3").stop();
         }
 
-        if (getSound("pellet").isPlaying()  &&  (!Ghost.areScaredGhosts()  ||  pacJustKilled))
+        if (getSound("pellet").isPlaying()  &&  (!sounds.areScaredGhosts()  ||  pacJustKilled))
             getSound("pellet").stop();
 
-        if (getSound("eyesrun").isPlaying()  &&  (!Ghost.areEatenGhosts()  ||  pacJustKilled))
+        if (getSound("eyesrun").isPlaying()  &&  (!sounds.areEatenGhosts()  ||  pacJustKilled))
             getSound("eyesrun").stop();
 
 
@@ -138,16 +139,16 @@ public abstract class View extends DoubleBufferedPanel implements Listener {
         else if (eventType == GameModel.Event.THREE_QUARTERS_DOTS_EATEN)
             setAngry(getSound("angry3"));
 
-        if (myModel.isInProgress()) {
+        if (sounds.isInProgress()) {
             // play looping background noises that should be played
-            if (!myModel.justStarted()  &&  myModel.isDoingGhostSounds()) {
-                if (myModel.getPacMan().isEating()  &&  !getSound("pacchomp").isPlaying())
+            if (!sounds.justStarted()  &&  sounds.isDoingGhostSounds()) {
+                if (sounds.isPacManEating()  &&  !getSound("pacchomp").isPlaying())
                     getSound("pacchomp").loop();
-                if (Ghost.areScaredGhosts()  &&  !pacJustKilled  &&  !getSound("pellet").isPlaying())
+                if (sounds.areScaredGhosts()  &&  !pacJustKilled  &&  !getSound("pellet").isPlaying())
                     getSound("pellet").loop();
-                if (Ghost.areAngryGhosts()   &&  myModel.isDoingGhostSounds()  &&  !getSound("angry").isPlaying())
+                if (sounds.areAngryGhosts()   &&  sounds.isDoingGhostSounds()  &&  !getSound("angry").isPlaying())
                     getSound("angry").loop();
-                if (Ghost.areEatenGhosts()   &&  myModel.isDoingGhostSounds()  &&  !ghostJustEaten  &&  !getSound("eyesrun").isPlaying())
+                if (sounds.areEatenGhosts()   &&  sounds.isDoingGhostSounds()  &&  !ghostJustEaten  &&  !getSound("eyesrun").isPlaying())
                     getSound("eyesrun").loop();
             }
 